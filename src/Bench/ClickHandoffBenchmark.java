@@ -0,0 +1,99 @@
+package Bench;
+
+import core.Histogram;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * Measures click to send latency in core.Connect4Client without JavaFX. A
+ * stand-in for the FX thread clicks at random moments while the game
+ * thread waits for a move, once with the old hand-off, a flag the game
+ * thread polls every 100 ms, and once with the SynchronousQueue the client
+ * uses now. The flag is volatile here; in the old client it was not, so it
+ * could be even slower to be seen. Run the main method with the number of
+ * clicks as an optional argument.
+ */
+public class ClickHandoffBenchmark {
+
+    private static final int POLL_MILLIS = 100;
+
+    public static void main(String[] args) throws Exception {
+        int clicks = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        System.out.printf("%-10s %10s %10s %10s %10s%n", "hand-off", "p50 us", "p99 us", "max us", "mean us");
+        report("polling", polled(clicks));
+        report("queue", queued(clicks));
+    }
+
+    private static void report(String name, Histogram histogram) {
+        System.out.printf("%-10s %10d %10d %10d %10.0f%n", name, histogram.getPercentile(50) / 1000,
+                histogram.getPercentile(99) / 1000, histogram.getMax() / 1000,
+                histogram.getMean() / 1000);
+    }
+
+    // ----- the old client -----
+
+    private static volatile boolean waiting = true;
+    private static volatile long clickNanos;
+
+    private static Histogram polled(int clicks) throws InterruptedException {
+        Histogram latency = new Histogram();
+        Semaphore sent = new Semaphore(0);
+        Thread game = new Thread(() -> {
+            try {
+                for (int i = 0; i < clicks; i++) {
+                    while (waiting) {
+                        Thread.sleep(POLL_MILLIS);
+                    }
+                    waiting = true;
+                    latency.record(System.nanoTime() - clickNanos);
+                    sent.release();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        game.start();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < clicks; i++) {
+            Thread.sleep(random.nextInt(5, 50));
+            clickNanos = System.nanoTime();
+            waiting = false;
+            sent.acquire();
+        }
+        game.join();
+        return latency;
+    }
+
+    // ----- the client now -----
+
+    private static Histogram queued(int clicks) throws InterruptedException {
+        Histogram latency = new Histogram();
+        SynchronousQueue<Long> handoff = new SynchronousQueue<>();
+        Semaphore sent = new Semaphore(0);
+        Thread game = new Thread(() -> {
+            try {
+                for (int i = 0; i < clicks; i++) {
+                    long nanos = handoff.take();
+                    latency.record(System.nanoTime() - nanos);
+                    sent.release();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        game.start();
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < clicks; i++) {
+            Thread.sleep(random.nextInt(5, 50));
+            // the mouse handler never blocks; the game thread is waiting in take
+            while (!handoff.offer(System.nanoTime())) {
+                Thread.yield();
+            }
+            sent.acquire();
+        }
+        game.join();
+        return latency;
+    }
+}
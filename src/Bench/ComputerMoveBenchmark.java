@@ -0,0 +1,75 @@
+package Bench;
+
+import core.ComputerOpponent;
+import core.ComputerPlayer;
+import core.Connect4Board;
+import core.Difficulty;
+import core.SearchTables;
+import core.ServerConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark for the computer's move in a one player session, the path
+ * takeComputerTurn in core.GameServer takes. Every call gets a new computer
+ * player with empty tables, like the first computer move of a server,
+ * built from the default server settings without an opening book, for
+ * each engine ai.engine can choose. The tables are kept to 4 MB so
+ * building them does not swamp the move. Run through JmhSuite to get the GC
+ * profiler as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ComputerMoveBenchmark {
+
+    @Param({"EASY", "MEDIUM", "HARD"})
+    public Difficulty difficulty;
+
+    @Param({"empty", "midgame", "nearlyFull"})
+    public String position;
+
+    @Param({"search", "mcts"})
+    public String engine;
+
+    private ServerConfig config;
+
+    private Connect4Board board;
+    private ComputerPlayer computer;
+
+    @Setup
+    public void setUp() {
+        Properties properties = new Properties();
+        properties.setProperty("ai.engine", engine);
+        properties.setProperty("ai.tableKilobytes", "4096");
+        config = new ServerConfig(properties);
+        board = SolverBenchmark.fromMoves(RulesBenchmark.moves(position));
+    }
+
+    @Setup(Level.Invocation)
+    public void newSession() {
+        computer = ComputerOpponent.create(difficulty, config, null, null,
+                new SearchTables(config), null);
+    }
+
+    @Benchmark
+    public int computerMove() {
+        return computer.bestMove(board);
+    }
+}
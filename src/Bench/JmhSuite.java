@@ -0,0 +1,24 @@
+package Bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs every JMH benchmark with the GC profiler, which adds the bytes
+ * allocated per operation (gc.alloc.rate.norm) to each result. Pass a
+ * regular expression to run only the matching benchmarks, for example
+ * RulesBenchmark.playout.
+ */
+public class JmhSuite {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0]
+                : "Bench\\.(RulesBenchmark|ComputerMoveBenchmark|VariantBenchmark)\\.";
+        new Runner(new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
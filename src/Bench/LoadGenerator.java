@@ -0,0 +1,296 @@
+package Bench;
+
+import core.Connect4Board;
+import core.Connect4Constants;
+import core.GameStream;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays many games against a running server at once to find how much load
+ * it takes. Each bot holds one connection at a time and plays game after
+ * game on it, through the same handshake, retries and status updates as
+ * core.Connect4Client. Two player bots are matched with each other by the
+ * server's lobby.
+ *
+ * Run the main method with key=value options, for example
+ * connections=1000 game=two rate=2 seconds=60:
+ *   host, port          server to load (localhost, 8000)
+ *   connections         bots playing at once (100)
+ *   game                one, two or mix (one)
+ *   choice              game choice of one player bots (ONE_PLAYER_GAME)
+ *   rate                moves per second per bot, 0 for no pause (2)
+ *   seconds             how long to run (30)
+ *   script              columns to play by move number counting both
+ *                       players, like 4455; random when empty, past its
+ *                       end or when the scripted column is full
+ *   protocol            framed or legacy (framed)
+ */
+public class LoadGenerator implements Connect4Constants {
+
+    private static final int REPORT_SECONDS = 5;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final String game;
+    private final int choice;
+    private final double rate;
+    private final int seconds;
+    private final String script;
+    private final boolean framed;
+
+    private final AtomicLong games = new AtomicLong();
+    private final AtomicLong moves = new AtomicLong();
+    private final AtomicLong invalidMoves = new AtomicLong();
+    private final Map<String, AtomicLong> errors = new HashMap<>();
+    private final List<Bot> bots = new ArrayList<>();
+
+    private volatile long deadline;
+
+    private LoadGenerator(Map<String, String> options) {
+        host = options.getOrDefault("host", "localhost");
+        port = Integer.parseInt(options.getOrDefault("port", "8000"));
+        connections = Integer.parseInt(options.getOrDefault("connections", "100"));
+        game = options.getOrDefault("game", "one");
+        choice = Integer.parseInt(options.getOrDefault("choice", Integer.toString(ONE_PLAYER_GAME)));
+        rate = Double.parseDouble(options.getOrDefault("rate", "2"));
+        seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        script = options.getOrDefault("script", "");
+        framed = !options.getOrDefault("protocol", "framed").equals("legacy");
+        for (String kind : new String[] {"connect", "busy", "io", "protocol"}) {
+            errors.put(kind, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new LoadGenerator(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        System.out.println("Loading " + host + ":" + port + " with " + connections + " "
+                + game + " player bots for " + seconds + " s");
+        long start = System.nanoTime();
+        deadline = start + TimeUnit.SECONDS.toNanos(seconds);
+
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            boolean twoPlayer = game.equals("two") || (game.equals("mix") && i % 2 == 1);
+            Bot bot = new Bot(twoPlayer, new SplittableRandom(i));
+            bots.add(bot);
+            threads[i] = new Thread(bot, "bot-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        long lastGames = 0;
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(TimeUnit.SECONDS.toMillis(REPORT_SECONDS));
+            long gamesNow = games.get();
+            System.out.printf("%6.0f s  games/s %8.1f  moves %10d  errors %s%n",
+                    (System.nanoTime() - start) / 1e9,
+                    (gamesNow - lastGames) / (double) REPORT_SECONDS, moves.get(), errors);
+            lastGames = gamesNow;
+        }
+        // let bots finish the move in flight, then report whatever is done
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(REPORT_SECONDS));
+        }
+        report((System.nanoTime() - start) / 1e9);
+    }
+
+    private void report(double elapsedSeconds) {
+        long[] all = bots.stream().flatMapToLong(bot -> Arrays.stream(bot.samples())).toArray();
+        Arrays.sort(all);
+        System.out.printf("games %d (%.1f/s), moves %d (%.1f/s), invalid moves retried %d%n",
+                games.get(), games.get() / elapsedSeconds, moves.get(), moves.get() / elapsedSeconds,
+                invalidMoves.get());
+        System.out.printf("move round trip ms: p50 %.2f  p90 %.2f  p99 %.2f  p99.9 %.2f  max %.2f%n",
+                percentile(all, 50), percentile(all, 90), percentile(all, 99),
+                percentile(all, 99.9), all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+        System.out.println("errors " + errors);
+    }
+
+    private static double percentile(long[] sorted, double percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private void error(String kind) {
+        errors.get(kind).incrementAndGet();
+    }
+
+    /**
+     * Nested class for one simulated player, playing games until the deadline
+     */
+    private class Bot implements Runnable {
+
+        private final boolean twoPlayer;
+        private final SplittableRandom random;
+
+        // round trips of this bot's moves in nanoseconds
+        private long[] samples = new long[64];
+        private int sampleCount;
+
+        private Bot(boolean twoPlayer, SplittableRandom random) {
+            this.twoPlayer = twoPlayer;
+            this.random = random;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() < deadline) {
+                try (Socket socket = new Socket(host, port)) {
+                    if (playGame(new GameStream(socket))) {
+                        games.incrementAndGet();
+                    }
+                } catch (ConnectException ex) {
+                    error("connect");
+                    pause(1000);
+                } catch (IOException ex) {
+                    error("io");
+                }
+            }
+        }
+
+        /**
+         * Plays one game on a new connection
+         * @return true if the game was played to the end
+         */
+        private boolean playGame(GameStream server) throws IOException {
+            if (framed) {
+                server.writeHello();
+            }
+            char token = server.readToken(framed);
+            Connect4Board board = new Connect4Board();
+
+            if (token == PLAYER_1) {
+                server.writeChoice(twoPlayer ? TWO_PLAYER_GAME : choice);
+                if (server.readStart() == SERVER_BUSY) {
+                    error("busy");
+                    return false;
+                }
+            } else if (token == PLAYER_2) {
+                // player 2 sees player 1's move first
+                int status = receiveTurn(server, board);
+                if (status == SERVER_BUSY) {
+                    error("busy");
+                    return false;
+                }
+                if (status != CONTINUE) {
+                    return true;
+                }
+            } else {
+                error("protocol");
+                return false;
+            }
+
+            while (true) {
+                int status = move(server, board);
+                if (status == CONTINUE) {
+                    status = receiveTurn(server, board);
+                }
+                if (status < TIE || status > P2_WINNER) {
+                    error("protocol");
+                    return false;
+                }
+                if (status != CONTINUE) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Plays one move, retrying while the server calls it invalid
+         * @return the status after the move
+         */
+        private int move(GameStream server, Connect4Board board) throws IOException {
+            if (rate > 0) {
+                pause((long) (1000 / rate));
+            }
+            long start = System.nanoTime();
+            server.writeMove(pickColumn(board) + 1);
+            while (server.readMoveResult() == INVALID_TURN) {
+                invalidMoves.incrementAndGet();
+                server.writeMove(random.nextInt(Connect4Board.COLUMNS) + 1);
+            }
+            int status = receiveTurn(server, board);
+            record(System.nanoTime() - start);
+            moves.incrementAndGet();
+            return status;
+        }
+
+        /**
+         * Reads the status and move of a turn and plays the move on the
+         * local board
+         * @return the status after the turn
+         */
+        private int receiveTurn(GameStream server, Connect4Board board) throws IOException {
+            int status = server.readStatus();
+            if (status == SERVER_BUSY) {
+                return status;
+            }
+            server.readRow();
+            int column = server.readColumn();
+            if (board.canPlay(column)) {
+                board.play(column);
+            }
+            return status;
+        }
+
+        private int pickColumn(Connect4Board board) {
+            int moveNumber = board.getMoves();
+            if (moveNumber < script.length()) {
+                int column = script.charAt(moveNumber) - '1';
+                if (column >= 0 && column < Connect4Board.COLUMNS && board.canPlay(column)) {
+                    return column;
+                }
+            }
+            int column;
+            do {
+                column = random.nextInt(Connect4Board.COLUMNS);
+            } while (!board.canPlay(column));
+            return column;
+        }
+
+        private synchronized void record(long nanos) {
+            if (sampleCount == samples.length) {
+                samples = Arrays.copyOf(samples, samples.length * 2);
+            }
+            samples[sampleCount++] = nanos;
+        }
+
+        /**
+         * @return round trips recorded so far, read by the reporting thread
+         */
+        private synchronized long[] samples() {
+            return Arrays.copyOf(samples, sampleCount);
+        }
+
+        private void pause(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Bench;
+
+import core.Connect4Board;
+import core.ParallelSolver;
+import core.TranspositionTable;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how the wall-clock time of a deep search scales with the number
+ * of threads given to core.ParallelSolver. Run the main method with the
+ * search depth as an optional argument.
+ */
+public class ParallelSearchBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    private static final String[] POSITIONS = {"", "4453", "44536251"};
+
+    private static final int ROUNDS = 3;
+
+    private static final long NO_TIME_LIMIT = 3600000L;
+
+    private static final long TABLE_BYTES = 16L << 20;
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 14;
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-8s %-12s %12s %10s %14s%n", "threads", "position", "ms/move", "speedup", "positions/s");
+
+        for (String moves : POSITIONS) {
+            Connect4Board board = SolverBenchmark.fromMoves(moves);
+            double baseline = 0;
+            for (int threads : THREADS) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                TranspositionTable table = new TranspositionTable(TABLE_BYTES);
+                // warm up
+                new ParallelSolver(depth, NO_TIME_LIMIT, table, pool).bestMove(board);
+
+                long elapsed = 0;
+                long nodes = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    table.clear();
+                    ParallelSolver solver = new ParallelSolver(depth, NO_TIME_LIMIT, table, pool);
+                    long start = System.nanoTime();
+                    solver.bestMove(board);
+                    elapsed += System.nanoTime() - start;
+                    nodes += solver.getNodes();
+                }
+                pool.shutdown();
+
+                double ms = elapsed / 1e6 / ROUNDS;
+                if (threads == 1) {
+                    baseline = ms;
+                }
+                System.out.printf("%-8d %-12s %12.2f %10.2f %14.0f%n", threads,
+                        moves.isEmpty() ? "(empty)" : moves, ms, baseline / ms, nodes * 1e9 / elapsed);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package Bench;
+
+import core.Connect4Constants;
+import core.GameStream;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * Measures the round trip of one turn over loopback with the original
+ * unbuffered int writes and with core.GameStream, and counts the socket
+ * writes each needs per turn. Run the main method with the number of turns
+ * as an optional argument.
+ */
+public class ProtocolBenchmark implements Connect4Constants {
+
+    private static final int WARMUP_TURNS = 20;
+
+    private static final int COLUMNS = 7;
+
+    public static void main(String[] args) throws Exception {
+        int turns = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        System.out.printf("%-10s %12s %12s %14s%n", "protocol", "us/turn", "turns/s", "writes/turn");
+        run("legacy", false, turns);
+        run("framed", true, turns);
+    }
+
+    private static void run(String name, boolean framed, int turns) throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            long[] writes = new long[1];
+            Thread session = new Thread(() -> serve(server, framed, WARMUP_TURNS + turns, writes));
+            session.start();
+
+            try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+                GameStream client = new GameStream(socket);
+                if (framed) {
+                    client.writeHello();
+                }
+                client.readToken(framed);
+                client.writeChoice(ONE_PLAYER_GAME);
+
+                playTurns(client, WARMUP_TURNS);
+                long writesBefore;
+                synchronized (writes) {
+                    writesBefore = writes[0];
+                }
+                long start = System.nanoTime();
+                playTurns(client, turns);
+                long elapsed = System.nanoTime() - start;
+                session.join();
+
+                System.out.printf("%-10s %12.1f %12.0f %14.1f%n", name, elapsed / 1e3 / turns,
+                        turns * 1e9 / elapsed, (double) (writes[0] - writesBefore) / turns);
+            }
+        }
+    }
+
+    private static void playTurns(GameStream client, int turns) throws IOException {
+        for (int i = 0; i < turns; i++) {
+            client.writeMove(i % COLUMNS + 1);
+            client.readMoveResult();
+            client.readStatus();
+            client.readRow();
+            client.readColumn();
+        }
+    }
+
+    /**
+     * Answers every move like a session does, the legacy way with one
+     * unbuffered write per int on a socket left as the server made it
+     */
+    private static void serve(ServerSocket server, boolean framed, int turns, long[] writes) {
+        try (Socket socket = server.accept()) {
+            if (framed) {
+                GameStream player = new GameStream(new CountingSocket(socket, writes));
+                player.writeToken(PLAYER_1);
+                player.readHandshakeInt();
+                for (int i = 0; i < turns; i++) {
+                    int column = player.readMove();
+                    player.writeTurn(true, CONTINUE, 0, column - 1);
+                }
+            } else {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                DataOutputStream out = new DataOutputStream(
+                        new CountingStream(socket.getOutputStream(), writes));
+                out.writeChar(PLAYER_1);
+                in.readInt();
+                for (int i = 0; i < turns; i++) {
+                    int column = in.readInt();
+                    out.writeInt(VALID_TURN);
+                    out.writeInt(CONTINUE);
+                    out.writeInt(0);
+                    out.writeInt(column - 1);
+                }
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Counts the writes that reach the socket
+     */
+    private static class CountingStream extends FilterOutputStream {
+
+        private final long[] writes;
+
+        private CountingStream(OutputStream out, long[] writes) {
+            super(out);
+            this.writes = writes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            count();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count();
+            out.write(b, off, len);
+        }
+
+        private void count() {
+            synchronized (writes) {
+                writes[0]++;
+            }
+        }
+    }
+
+    /**
+     * Socket whose output stream counts its writes
+     */
+    private static class CountingSocket extends Socket {
+
+        private final Socket socket;
+        private final OutputStream out;
+
+        private CountingSocket(Socket socket, long[] writes) throws IOException {
+            this.socket = socket;
+            out = new CountingStream(socket.getOutputStream(), writes);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return socket.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return out;
+        }
+
+        @Override
+        public void setTcpNoDelay(boolean on) throws SocketException {
+            socket.setTcpNoDelay(on);
+        }
+
+        @Override
+        public void setSoTimeout(int timeout) throws SocketException {
+            socket.setSoTimeout(timeout);
+        }
+    }
+}
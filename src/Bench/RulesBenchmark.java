@@ -0,0 +1,115 @@
+package Bench;
+
+import core.Connect4Board;
+import core.Connect4Constants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the rule checks a session makes on every turn, and for
+ * whole random games. validTurn, takeTurn and checkForWin in
+ * core.GameServer are one line wrappers, so the board calls they make are
+ * measured directly. Run through JmhSuite to get the GC profiler as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RulesBenchmark implements Connect4Constants {
+
+    // moves played from an empty board, as the columns a user would click
+    static final String EMPTY = "";
+    static final String MIDGAME = "23226363321371125754567565";
+    static final String NEARLY_FULL = "57131637565553176524424224432461261173";
+
+    @Param({"empty", "midgame", "nearlyFull"})
+    public String position;
+
+    private Connect4Board board;
+    private int column;
+    private SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+        board = SolverBenchmark.fromMoves(moves(position));
+        // the first open column from the left, as a player might click it
+        column = 0;
+        while (!board.canPlay(column)) {
+            column++;
+        }
+        random = new SplittableRandom(42);
+    }
+
+    static String moves(String position) {
+        switch (position) {
+            case "midgame":
+                return MIDGAME;
+            case "nearlyFull":
+                return NEARLY_FULL;
+            default:
+                return EMPTY;
+        }
+    }
+
+    /**
+     * What validTurn does for every move a client sends
+     */
+    @Benchmark
+    public boolean validTurn() {
+        return board.canPlay(column);
+    }
+
+    /**
+     * What takeTurn does for a valid move, undone so every call sees the
+     * same position
+     */
+    @Benchmark
+    public int takeTurn() {
+        int row = board.play(column);
+        board.undo(column);
+        return row;
+    }
+
+    /**
+     * What checkForWin does after every move
+     */
+    @Benchmark
+    public int checkForWin() {
+        return board.status();
+    }
+
+    /**
+     * Plays random moves from the position until the game ends, checking
+     * for a win after every move as a session does
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @BenchmarkMode(Mode.Throughput)
+    public int playout() {
+        Connect4Board game = new Connect4Board(board);
+        int status;
+        do {
+            int col;
+            do {
+                col = random.nextInt(Connect4Board.COLUMNS);
+            } while (!game.canPlay(col));
+            game.play(col);
+            status = game.status();
+        } while (status == CONTINUE);
+        return status;
+    }
+}
@@ -0,0 +1,294 @@
+package Bench;
+
+import core.ComputerOpponent;
+import core.ComputerPlayer;
+import core.Connect4Board;
+import core.Connect4Constants;
+import core.Difficulty;
+import core.Histogram;
+import core.MonteCarloPlayer;
+import core.OpeningBook;
+import core.SearchTables;
+import core.ServerConfig;
+import core.Tablebase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Plays the computer players against each other, without a server, to
+ * measure how fast and how well they play. Every pairing of players is
+ * played from both sides, on all cores, through core.Connect4Board and the
+ * same core.ComputerOpponent a one player session gets. The first plies of
+ * each game are random, so the searches do not play the same game over and
+ * over. It reports games per second, plies per game, how each pairing
+ * ended and how long each player thought.
+ *
+ * Run the main method with key=value options, for example
+ * players=easy,medium games=1000:
+ *   players             random, easy, medium, hard or mcts followed by
+ *                       the playouts per move like mcts5000, separated
+ *                       by commas (random,easy,medium)
+ *   games               games per pairing and side (100)
+ *   openings            random plies before the players take over (2)
+ *   threads             games played at once (available processors)
+ *   seed                seed of the random plies (1)
+ * Options with a dot, like ai.timeLimitMillis=200, are server settings. An
+ * opening book is used if book.path names one, by the players that play
+ * the book like HARD, which the mcts players count as, and a tablebase if
+ * tablebase.path names one. HARD searches on its game's thread, since
+ * every core already plays a game.
+ */
+public class SelfPlayTournament implements Connect4Constants {
+
+    private static final int REPORT_SECONDS = 5;
+
+    private final List<String> players = new ArrayList<>();
+    private final int gamesPerPairing;
+    private final int openings;
+    private final int threads;
+    private final long seed;
+    private final ServerConfig config;
+    private final OpeningBook openingBook;
+    private final Tablebase tablebase;
+    private final SearchTables searchTables;
+
+    // games handed out so far, over all pairings in order
+    private final AtomicLong nextGame = new AtomicLong();
+    private final AtomicLong gamesPlayed = new AtomicLong();
+    private final Pairing[] pairings;
+    private final Histogram[] thinkTimes;
+
+    private SelfPlayTournament(Map<String, String> options) throws IOException {
+        for (String player : options.getOrDefault("players", "random,easy,medium").split(",")) {
+            // fail here rather than on a game thread
+            if (player.toLowerCase().startsWith("mcts")) {
+                Integer.parseInt(player.substring(4));
+            } else if (!player.equalsIgnoreCase("random")) {
+                Difficulty.valueOf(player.toUpperCase());
+            }
+            players.add(player.toLowerCase());
+        }
+        gamesPerPairing = Integer.parseInt(options.getOrDefault("games", "100"));
+        openings = Integer.parseInt(options.getOrDefault("openings", "2"));
+        threads = Integer.parseInt(options.getOrDefault("threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+        seed = Long.parseLong(options.getOrDefault("seed", "1"));
+
+        Properties properties = new Properties();
+        properties.setProperty("book.path", "");
+        properties.setProperty("tablebase.path", "");
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            if (option.getKey().contains(".")) {
+                properties.setProperty(option.getKey(), option.getValue());
+            }
+        }
+        config = new ServerConfig(properties);
+        openingBook = config.getOpeningBookPath().isEmpty() ? null
+                : OpeningBook.openIfPresent(config);
+        tablebase = Tablebase.openIfPresent(config);
+        searchTables = new SearchTables(config);
+
+        pairings = new Pairing[players.size() * players.size()];
+        for (int i = 0; i < pairings.length; i++) {
+            pairings[i] = new Pairing(i / players.size(), i % players.size());
+        }
+        thinkTimes = new Histogram[players.size()];
+        for (int i = 0; i < thinkTimes.length; i++) {
+            thinkTimes[i] = new Histogram();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            options.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        new SelfPlayTournament(options).run();
+    }
+
+    private void run() throws InterruptedException {
+        long total = (long) pairings.length * gamesPerPairing;
+        System.out.println("Playing " + total + " games between " + players + ", "
+                + gamesPerPairing + " per pairing and side, " + openings
+                + " random plies first, on " + threads + " threads");
+        long start = System.nanoTime();
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(this::playGames, "tournament-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+
+        long lastGames = 0;
+        while (!finished(workers, TimeUnit.SECONDS.toMillis(REPORT_SECONDS))) {
+            long gamesNow = gamesPlayed.get();
+            System.out.printf("%6.0f s  games/s %10.1f  games %10d of %d%n",
+                    (System.nanoTime() - start) / 1e9,
+                    (gamesNow - lastGames) / (double) REPORT_SECONDS, gamesNow, total);
+            lastGames = gamesNow;
+        }
+        report((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Waits for every worker, up to the given time
+     * @return true if all of them are done
+     */
+    private static boolean finished(Thread[] workers, long millis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + millis;
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, deadline - System.currentTimeMillis()));
+            if (worker.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plays games on one worker thread until none are left
+     */
+    private void playGames() {
+        long game;
+        while ((game = nextGame.getAndIncrement()) < (long) pairings.length * gamesPerPairing) {
+            Pairing pairing = pairings[(int) (game / gamesPerPairing)];
+            // the same game number always starts with the same random plies
+            play(pairing, new SplittableRandom(seed * 31 + game), game);
+            gamesPlayed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Plays one game, each side with a new computer player like a new
+     * session gets
+     */
+    private void play(Pairing pairing, SplittableRandom random, long game) {
+        int[] sides = {pairing.first, pairing.second};
+        ComputerPlayer[] computers = {newPlayer(sides[0], game), newPlayer(sides[1], ~game)};
+        Connect4Board board = new Connect4Board();
+        int status = CONTINUE;
+        while (status == CONTINUE) {
+            int side = board.isPlayer1Turn() ? 0 : 1;
+            int col;
+            if (board.getMoves() < openings || computers[side] == null) {
+                col = randomMove(board, random);
+            } else {
+                long start = System.nanoTime();
+                col = computers[side].bestMove(board);
+                thinkTimes[sides[side]].record(System.nanoTime() - start);
+            }
+            board.play(col);
+            status = board.status();
+        }
+        pairing.record(status, board.getMoves());
+    }
+
+    /**
+     * @return the computer player for a new game, or null for random moves
+     */
+    private ComputerPlayer newPlayer(int player, long game) {
+        String name = players.get(player);
+        if (name.equals("random")) {
+            return null;
+        }
+        if (name.startsWith("mcts")) {
+            MonteCarloPlayer search = new MonteCarloPlayer(Integer.parseInt(name.substring(4)),
+                    config.getAiTimeLimitMillis(), seed * 31 + game);
+            // like a HARD mcts computer, it uses the whole tablebase
+            return new ComputerOpponent(Difficulty.HARD, openingBook, tablebase,
+                    Connect4Board.CELLS, search);
+        }
+        return ComputerOpponent.create(Difficulty.valueOf(name.toUpperCase()), config,
+                openingBook, tablebase, searchTables, null);
+    }
+
+    private static int randomMove(Connect4Board board, SplittableRandom random) {
+        int[] playable = new int[Connect4Board.COLUMNS];
+        int count = 0;
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            if (board.canPlay(col)) {
+                playable[count++] = col;
+            }
+        }
+        return playable[random.nextInt(count)];
+    }
+
+    private void report(double elapsedSeconds) {
+        long games = 0;
+        long plies = 0;
+        System.out.printf("%n%-8s %-8s %8s %8s %8s %8s %8s%n", "first", "second", "games",
+                "first %", "second %", "draw %", "plies");
+        for (Pairing pairing : pairings) {
+            long played = pairing.games.get();
+            games += played;
+            plies += pairing.plies.get();
+            System.out.printf("%-8s %-8s %8d %8.1f %8.1f %8.1f %8.1f%n",
+                    players.get(pairing.first), players.get(pairing.second), played,
+                    percent(pairing.firstWins.get(), played),
+                    percent(pairing.secondWins.get(), played),
+                    percent(pairing.draws.get(), played),
+                    played == 0 ? 0 : pairing.plies.get() / (double) played);
+        }
+        System.out.printf("%ngames %d in %.1f s (%.1f/s), plies per game %.1f%n", games,
+                elapsedSeconds, games / elapsedSeconds, games == 0 ? 0 : plies / (double) games);
+
+        System.out.printf("%n%-8s %10s %10s %10s %10s %10s%n", "thinking", "moves", "p50 us",
+                "p99 us", "max us", "mean us");
+        for (int i = 0; i < players.size(); i++) {
+            Histogram thinkTime = thinkTimes[i];
+            if (thinkTime.getCount() > 0) {
+                System.out.printf("%-8s %10d %10d %10d %10d %10.0f%n", players.get(i),
+                        thinkTime.getCount(), thinkTime.getPercentile(50) / 1000,
+                        thinkTime.getPercentile(99) / 1000, thinkTime.getMax() / 1000,
+                        thinkTime.getMean() / 1000);
+            }
+        }
+    }
+
+    private static double percent(long count, long games) {
+        return games == 0 ? 0 : 100.0 * count / games;
+    }
+
+    /**
+     * Nested class for the games between two players, with the first one
+     * moving first
+     */
+    private static class Pairing {
+
+        private final int first;
+        private final int second;
+
+        private final AtomicLong games = new AtomicLong();
+        private final AtomicLong firstWins = new AtomicLong();
+        private final AtomicLong secondWins = new AtomicLong();
+        private final AtomicLong draws = new AtomicLong();
+        private final AtomicLong plies = new AtomicLong();
+
+        private Pairing(int first, int second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        private void record(int status, int moves) {
+            if (status == P1_WINNER) {
+                firstWins.incrementAndGet();
+            } else if (status == P2_WINNER) {
+                secondWins.incrementAndGet();
+            } else {
+                draws.incrementAndGet();
+            }
+            plies.addAndGet(moves);
+            games.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package Bench;
+
+import core.Connect4Board;
+import core.Connect4Solver;
+import core.Difficulty;
+import core.TranspositionTable;
+
+/**
+ * Measures how many positions per second the computer player searches, for
+ * every difficulty on a few typical positions. Run the main method and read
+ * the table printed to the console.
+ */
+public class SolverBenchmark {
+
+    // moves played from an empty board, as the columns a user would click
+    private static final String[] POSITIONS = {
+            "",
+            "4453",
+            "44536251",
+            "23226363321371125754567565",
+    };
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // long enough that the search always reaches its full depth
+    private static final long NO_TIME_LIMIT = 3600000L;
+
+    private static final long TABLE_BYTES = 1 << 20;
+
+    public static void main(String[] args) {
+        System.out.printf("%-8s %-28s %12s %12s %14s%n",
+                "level", "position", "nodes/move", "ms/move", "positions/s");
+        for (Difficulty difficulty : Difficulty.values()) {
+            for (String moves : POSITIONS) {
+                run(difficulty, moves);
+            }
+        }
+    }
+
+    private static void run(Difficulty difficulty, String moves) {
+        Connect4Board board = fromMoves(moves);
+        TranspositionTable table = new TranspositionTable(TABLE_BYTES);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            table.clear();
+            new Connect4Solver(difficulty.getDepth(), NO_TIME_LIMIT, table).bestMove(board);
+        }
+
+        long nodes = 0;
+        long elapsed = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            // every round starts from an empty table, like a new session
+            table.clear();
+            Connect4Solver solver = new Connect4Solver(difficulty.getDepth(), NO_TIME_LIMIT, table);
+            long start = System.nanoTime();
+            solver.bestMove(board);
+            elapsed += System.nanoTime() - start;
+            nodes += solver.getNodes();
+        }
+
+        System.out.printf("%-8s %-28s %12d %12.2f %14.0f%n", difficulty,
+                moves.isEmpty() ? "(empty)" : moves, nodes / MEASURED_ROUNDS,
+                elapsed / 1e6 / MEASURED_ROUNDS, nodes * 1e9 / elapsed);
+    }
+
+    /**
+     * Builds a board by playing a sequence of columns numbered from 1
+     * @param moves the columns, one digit per move
+     * @return the board after the moves
+     */
+    static Connect4Board fromMoves(String moves) {
+        Connect4Board board = new Connect4Board();
+        for (char c : moves.toCharArray()) {
+            board.play(c - '1');
+        }
+        return board;
+    }
+}
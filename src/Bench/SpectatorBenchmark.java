@@ -0,0 +1,147 @@
+package Bench;
+
+import core.Connect4Constants;
+import core.GameServer;
+import core.GameStream;
+import core.Histogram;
+import core.ServerConfig;
+import core.Variant;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the move round trip players see while a session is watched.
+ * A GameServer runs in this JVM, and two players fill a 16 by 15 board
+ * that nobody can win on, so every game is 240 moves. Half the spectators
+ * read every update, the other half never read at all and are dropped once
+ * their writes block. Run the main method with the audience sizes to try
+ * as optional arguments.
+ */
+public class SpectatorBenchmark implements Connect4Constants {
+
+    private static final Variant BOARD = Variant.of(16, 15, 16);
+
+    private static int port;
+
+    public static void main(String[] args) throws Exception {
+        startServer();
+        int[] audiences = {0, 100, 500};
+        if (args.length > 0) {
+            audiences = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                audiences[i] = Integer.parseInt(args[i]);
+            }
+        }
+        // one game to warm up
+        play(0);
+        System.out.printf("%-10s %10s %10s %10s %10s%n", "watching", "p50 us", "p99 us",
+                "max us", "mean us");
+        for (int audience : audiences) {
+            Histogram roundTrip = play(audience);
+            System.out.printf("%-10d %10d %10d %10d %10.0f%n", audience,
+                    roundTrip.getPercentile(50) / 1000, roundTrip.getPercentile(99) / 1000,
+                    roundTrip.getMax() / 1000, roundTrip.getMean() / 1000);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Plays one game with the given number of spectators
+     * @return round trip of every move, in nanoseconds
+     */
+    private static Histogram play(int audience) throws Exception {
+        GameStream first = connect();
+        first.writeHello();
+        first.readToken(true);
+        first.writeChoice(BOARD);
+        // let the lobby queue player 1 before player 2 connects
+        Thread.sleep(200);
+        GameStream second = connect();
+        second.writeHello();
+        second.readToken(true);
+        first.readStart();
+
+        List<Socket> sockets = new ArrayList<>();
+        for (int i = 0; i < audience; i++) {
+            boolean reads = i % 2 == 0;
+            Socket socket = new Socket();
+            if (!reads) {
+                socket.setReceiveBufferSize(4096);
+            }
+            socket.connect(new InetSocketAddress("localhost", port));
+            sockets.add(socket);
+            GameStream spectator = new GameStream(socket);
+            spectator.writeWatch(first.getSession());
+            if (reads) {
+                Thread reader = new Thread(() -> {
+                    try {
+                        spectator.readToken(false);
+                        while (spectator.readWatched() != null) {
+                            // keep up with the game
+                        }
+                    } catch (IOException ex) {
+                        // the game is over
+                    }
+                });
+                reader.setDaemon(true);
+                reader.start();
+            }
+        }
+
+        Histogram roundTrip = new Histogram();
+        int status = CONTINUE;
+        for (int move = 0; status == CONTINUE; move++) {
+            GameStream mover = move % 2 == 0 ? first : second;
+            GameStream other = move % 2 == 0 ? second : first;
+            // fill the columns left to right, so every move is valid
+            int column = move / BOARD.getRows() + 1;
+            long start = System.nanoTime();
+            mover.writeMove(column);
+            mover.readMoveResult();
+            status = mover.readStatus();
+            roundTrip.record(System.nanoTime() - start);
+            other.readStatus();
+            other.readRow();
+            other.readColumn();
+        }
+        first.close();
+        second.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        return roundTrip;
+    }
+
+    private static void startServer() throws Exception {
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        Properties properties = new Properties();
+        properties.setProperty("server.port", Integer.toString(port));
+        properties.setProperty("log.path", "");
+        properties.setProperty("records.path", "");
+        properties.setProperty("spectators.maxPerSession", "1000");
+        properties.setProperty("spectators.writeTimeoutMillis", "1000");
+        GameServer server = new GameServer(new ServerConfig(properties));
+        Thread thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        Thread.sleep(1000);
+    }
+
+    private static GameStream connect() throws IOException {
+        return new GameStream(new Socket("localhost", port));
+    }
+}
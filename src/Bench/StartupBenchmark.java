@@ -0,0 +1,91 @@
+package Bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures how long each server mode takes to start listening and how much
+ * resident memory it holds once started. Each mode runs in a fresh JVM on
+ * this JVM's class path, so the GUI mode needs JavaFX on it. Resident
+ * memory is read from /proc and is only reported on Linux.
+ */
+public class StartupBenchmark {
+
+    private static final String[][] MODES = {
+            {"headless", "core.GameServer"},
+            {"gui", "core.Connect4Server"},
+    };
+
+    private static final int ROUNDS = 3;
+
+    private static final int PORT = 8099;
+
+    public static void main(String[] args) throws Exception {
+        System.out.printf("%-10s %14s %12s%n", "mode", "startup ms", "rss MB");
+        for (String[] mode : MODES) {
+            long totalMillis = 0;
+            long totalRss = 0;
+            int started = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                long[] result = start(mode[1]);
+                if (result != null) {
+                    totalMillis += result[0];
+                    totalRss += result[1];
+                    started++;
+                }
+            }
+            if (started == 0) {
+                System.out.printf("%-10s %14s %12s%n", mode[0], "failed", "-");
+            } else {
+                System.out.printf("%-10s %14d %12.1f%n", mode[0], totalMillis / started,
+                        totalRss / 1024.0 / started);
+            }
+        }
+    }
+
+    /**
+     * Starts a server and stops it again once it listens
+     * @param mainClass the server's main class
+     * @return startup time in milliseconds and resident memory in kilobytes,
+     *         or null if the server did not start
+     */
+    private static long[] start(String mainClass) throws IOException, InterruptedException {
+        long begin = System.nanoTime();
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                "-Dconnect4.server.port=" + PORT, mainClass)
+                .redirectErrorStream(true).start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(server.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.contains("Server started")) {
+                    long millis = (System.nanoTime() - begin) / 1000000;
+                    // let the server settle before reading its memory
+                    Thread.sleep(500);
+                    return new long[] {millis, residentKilobytes(server.pid())};
+                }
+            }
+            return null;
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    private static long residentKilobytes(long pid) throws IOException {
+        Path status = Paths.get("/proc", Long.toString(pid), "status");
+        if (!Files.isReadable(status)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", ""));
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,101 @@
+package Bench;
+
+import core.Connect4Constants;
+import core.GameBoard;
+import core.Variant;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the rule checks on other boards. checkForWin should
+ * cost about the same on a 16 by 15 board as on the standard one, and grow
+ * only with the tokens in a row that win. Variants are written rows x
+ * columns x connect.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariantBenchmark implements Connect4Constants {
+
+    @Param({"6x7x4", "6x7x5", "8x8x4", "16x15x4", "16x15x8"})
+    public String variant;
+
+    private Variant shape;
+    private GameBoard board;
+    private SplittableRandom random;
+
+    @Setup
+    public void setUp() {
+        shape = parse(variant);
+        random = new SplittableRandom(42);
+        // random moves up to half the board, stopping short of any win
+        int[] columns = new int[shape.getCells() / 2];
+        GameBoard game = GameBoard.create(shape);
+        int moves = 0;
+        while (moves < columns.length) {
+            columns[moves++] = playRandom(game);
+            if (game.status() != CONTINUE) {
+                moves--;
+                break;
+            }
+        }
+        board = GameBoard.create(shape);
+        for (int i = 0; i < moves; i++) {
+            board.play(columns[i]);
+        }
+    }
+
+    static Variant parse(String variant) {
+        String[] sizes = variant.split("x");
+        return Variant.of(Integer.parseInt(sizes[0]), Integer.parseInt(sizes[1]),
+                Integer.parseInt(sizes[2]));
+    }
+
+    /**
+     * What checkForWin does after every move
+     */
+    @Benchmark
+    public int checkForWin() {
+        return board.status();
+    }
+
+    /**
+     * Plays a random game from an empty board, checking for a win after
+     * every move as a session does
+     * @return number of moves, to turn the time of a game into time per move
+     */
+    @Benchmark
+    public int playout() {
+        GameBoard game = GameBoard.create(shape);
+        while (true) {
+            playRandom(game);
+            if (game.status() != CONTINUE) {
+                return game.getMoves();
+            }
+        }
+    }
+
+    private int playRandom(GameBoard game) {
+        int col;
+        do {
+            col = random.nextInt(shape.getColumns());
+        } while (!game.canPlay(col));
+        game.play(col);
+        return col;
+    }
+}
@@ -0,0 +1,59 @@
+package Test;
+
+import core.ComputerPlayer;
+import core.Connect4Board;
+
+/**
+ * Positions and players shared by the tests of the computer's strategies.
+ * Games are written as the columns played, counting from 1.
+ */
+final class Boards {
+
+    // a game with ten empty cells left and no win in one for either player
+    static final String ENDGAME = "65132232255566437577643332526671";
+
+    private Boards() {
+    }
+
+    /**
+     * @param moves columns played, counting from 1
+     * @return a standard board with the moves played
+     */
+    static Connect4Board fromMoves(String moves) {
+        Connect4Board board = new Connect4Board();
+        for (char c : moves.toCharArray()) {
+            board.play(c - '1');
+        }
+        return board;
+    }
+
+    /**
+     * @param moves columns played, counting from 1
+     * @return the columns counting from 0, as a recorded game holds them
+     */
+    static byte[] columns(String moves) {
+        byte[] columns = new byte[Connect4Board.CELLS];
+        for (int i = 0; i < moves.length(); i++) {
+            columns[i] = (byte) (moves.charAt(i) - '1');
+        }
+        return columns;
+    }
+
+    /**
+     * @param col column to answer with
+     * @return a player that answers every position with the column
+     */
+    static ComputerPlayer always(int col) {
+        return new ComputerPlayer() {
+            @Override
+            public int bestMove(Connect4Board board) {
+                return col;
+            }
+
+            @Override
+            public int bestMove(Connect4Board board, long deadline) {
+                return col;
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package Test;
+
+import core.Connect4Board;
+import core.Connect4Constants;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Property test comparing the last-move win detection in core.Connect4Board
+ * against the original full-board scan the server used before it.
+ */
+public class Connect4BoardTest implements Connect4Constants {
+
+    // number of random games, raise with -Dconnect4.propertyGames=...
+    private static final int GAMES = Integer.getInteger("connect4.propertyGames", 1000000);
+    private static final long SEED = Long.getLong("connect4.propertySeed", 42L);
+
+    @Test
+    public void statusMatchesFullScanOnRandomGames() {
+        Random random = new Random(SEED);
+        for (int game = 0; game < GAMES; game++) {
+            Connect4Board board = new Connect4Board();
+            char[][] reference = newReferenceBoard();
+            int status = CONTINUE;
+
+            while (status == CONTINUE) {
+                int col = random.nextInt(Connect4Board.COLUMNS);
+                if (!board.canPlay(col)) {
+                    assertTrue(reference[0][col] != BLANK);
+                    continue;
+                }
+                char token = board.isPlayer1Turn() ? PLAYER_1 : PLAYER_2;
+                int row = board.play(col);
+                assertEquals(BLANK, reference[row][col]);
+                reference[row][col] = token;
+
+                status = board.status();
+                assertEquals("game " + game + " seed " + SEED,
+                        referenceCheckForWin(reference), status);
+            }
+        }
+    }
+
+    @Test
+    public void tokensLandInLowestOpenRow() {
+        Connect4Board board = new Connect4Board();
+        assertEquals(5, board.play(3));
+        assertEquals(4, board.play(3));
+        assertEquals(PLAYER_1, board.getToken(5, 3));
+        assertEquals(PLAYER_2, board.getToken(4, 3));
+        assertEquals(BLANK, board.getToken(3, 3));
+        for (int i = 0; i < 4; i++) {
+            board.play(3);
+        }
+        assertFalse(board.canPlay(3));
+        assertFalse(board.canPlay(-1));
+        assertFalse(board.canPlay(Connect4Board.COLUMNS));
+    }
+
+    private static char[][] newReferenceBoard() {
+        char[][] board = new char[Connect4Board.ROWS][Connect4Board.COLUMNS];
+        for (char[] row : board) {
+            Arrays.fill(row, BLANK);
+        }
+        return board;
+    }
+
+    /**
+     * The server's original checkForWin, scanning every window on the board
+     */
+    private static int referenceCheckForWin(char[][] board) {
+        // horizontal
+        for (int i = 0; i < board.length; i++) {
+            for (int j = 0; j < board[i].length - 3; j++) {
+                if (board[i][j] != BLANK && board[i][j] == board[i][j + 1]
+                        && board[i][j] == board[i][j + 2] && board[i][j] == board[i][j + 3]) {
+                    return board[i][j] == PLAYER_1 ? P1_WINNER : P2_WINNER;
+                }
+            }
+        }
+        // vertical
+        for (int i = 0; i < board.length - 3; i++) {
+            for (int j = 0; j < board[i].length; j++) {
+                if (board[i][j] != BLANK && board[i][j] == board[i + 1][j]
+                        && board[i][j] == board[i + 2][j] && board[i][j] == board[i + 3][j]) {
+                    return board[i][j] == PLAYER_1 ? P1_WINNER : P2_WINNER;
+                }
+            }
+        }
+        // right diagonal (\)
+        for (int i = 0; i < board.length - 3; i++) {
+            for (int j = 0; j < board[i].length - 3; j++) {
+                if (board[i][j] != BLANK && board[i][j] == board[i + 1][j + 1]
+                        && board[i][j] == board[i + 2][j + 2] && board[i][j] == board[i + 3][j + 3]) {
+                    return board[i][j] == PLAYER_1 ? P1_WINNER : P2_WINNER;
+                }
+            }
+        }
+        // left diagonal (/)
+        for (int i = 0; i < board.length - 3; i++) {
+            for (int j = 3; j < board[i].length; j++) {
+                if (board[i][j] != BLANK && board[i][j] == board[i + 1][j - 1]
+                        && board[i][j] == board[i + 2][j - 2] && board[i][j] == board[i + 3][j - 3]) {
+                    return board[i][j] == PLAYER_1 ? P1_WINNER : P2_WINNER;
+                }
+            }
+        }
+        for (char[] row : board) {
+            for (char cell : row) {
+                if (cell == BLANK) {
+                    return CONTINUE;
+                }
+            }
+        }
+        return TIE;
+    }
+}
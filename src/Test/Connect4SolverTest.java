@@ -0,0 +1,77 @@
+package Test;
+
+import core.Connect4Board;
+import core.Connect4Solver;
+import core.ParallelSolver;
+import core.TranspositionTable;
+import org.junit.Test;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static Test.Boards.*;
+import static org.junit.Assert.*;
+
+public class Connect4SolverTest {
+
+    @Test
+    public void takesImmediateWin() {
+        // player 1 has three in column 1, player 2 three in column 2
+        Connect4Board board = fromMoves("121212");
+        assertEquals(0, new Connect4Solver(6, 1000).bestMove(board));
+    }
+
+    @Test
+    public void blocksOpponentWin() {
+        // player 1 threatens four along the bottom row
+        Connect4Board board = fromMoves("17273");
+        assertEquals(3, new Connect4Solver(6, 1000).bestMove(board));
+    }
+
+    @Test
+    public void leavesBoardUnchanged() {
+        Connect4Board board = fromMoves("4453");
+        new Connect4Solver(8, 1000).bestMove(board);
+        assertEquals(4, board.getMoves());
+        assertTrue(board.isPlayer1Turn());
+    }
+
+    @Test
+    public void parallelSolverBlocksOpponentWin() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelSolver solver = new ParallelSolver(8, 5000, new TranspositionTable(1 << 16), pool);
+            assertEquals(3, solver.bestMove(fromMoves("17273")));
+            assertEquals(0, solver.bestMove(fromMoves("121212")));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void returnsLegalMoveWhenOutOfTime() {
+        Connect4Board board = fromMoves("");
+        int col = new Connect4Solver(40, 0).bestMove(board);
+        assertTrue(board.canPlay(col));
+    }
+
+    @Test
+    public void answersByTheDeadline() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            Connect4Board board = fromMoves("44");
+            long start = System.nanoTime();
+            int col = new Connect4Solver(40, 60000).bestMove(board, start + 20000000L);
+            assertTrue(board.canPlay(col));
+            assertTrue(System.nanoTime() - start < 200000000L);
+
+            ParallelSolver solver = new ParallelSolver(40, 60000, new TranspositionTable(1 << 16),
+                    pool);
+            start = System.nanoTime();
+            col = solver.bestMove(board, start + 20000000L);
+            assertTrue(board.canPlay(col));
+            assertTrue(System.nanoTime() - start < 200000000L);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package Test;
+
+import core.EventLog;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EventLogTest {
+
+    @Test
+    public void dropsAndCountsWhenFull() {
+        StringBuilder out = new StringBuilder();
+        EventLog log = newLog(4, null);
+        log.addListener(out::append);
+
+        for (int i = 0; i < 6; i++) {
+            log.record(EventLog.Event.SESSION_ENDED, i, 1);
+        }
+        assertEquals(2, log.getDropped());
+
+        log.drain();
+        String lines = out.toString();
+        assertTrue(lines.contains("Session 0 ended with status 1"));
+        assertTrue(lines.contains("Session 3 ended with status 1"));
+        assertFalse(lines.contains("Session 4 ended"));
+        assertTrue(lines.contains("2 events dropped"));
+
+        // drained slots are free again
+        assertTrue(log.record(EventLog.Event.SESSION_ENDED, 9, 2, 0));
+    }
+
+    @Test
+    public void keepsEveryEventFromManyThreads() throws Exception {
+        EventLog log = newLog(1 << 16, null);
+        AtomicInteger lines = new AtomicInteger();
+        log.addListener(batch -> lines.addAndGet(batch.split("\n").length));
+
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    log.record(EventLog.Event.PLAYER_JOINED, i, thread);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        log.drain();
+        assertEquals(0, log.getDropped());
+        assertEquals(40000, lines.get());
+    }
+
+    @Test
+    public void rollsTheLogFile() throws Exception {
+        Path dir = Files.createTempDirectory("connect4-log");
+        Path file = dir.resolve("connect4.log");
+        EventLog log = newLog(16, file);
+        // about 200 bytes a round, so the 500 byte file rolls every third round
+        for (int round = 0; round < 8; round++) {
+            for (int i = 0; i < 3; i++) {
+                log.record(EventLog.Event.SERVER_BUSY, i);
+            }
+            log.drain();
+        }
+        assertTrue(Files.exists(dir.resolve("connect4.log.1")));
+        assertTrue(Files.exists(dir.resolve("connect4.log.2")));
+        assertFalse(Files.exists(dir.resolve("connect4.log.3")));
+        // files roll once they pass the limit, so by less than one batch
+        assertTrue(Files.size(dir.resolve("connect4.log.1")) < 800);
+        assertTrue(Files.size(file) < 500);
+    }
+
+    private static EventLog newLog(int capacity, Path file) {
+        return new EventLog(capacity, file, 500, 2, false);
+    }
+}
@@ -0,0 +1,151 @@
+package Test;
+
+import core.Connect4Constants;
+import core.GameBoard;
+import core.GameRecordStore;
+import core.Variant;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GameRecordStoreTest implements Connect4Constants {
+
+    // a full board, every column played
+    private static final String FULL_GAME = "57131637565553176524424224432461261173";
+
+    @Test
+    public void replaysGamesInOrder() throws Exception {
+        Path directory = Files.createTempDirectory("records");
+        try (GameRecordStore store = new GameRecordStore(directory, 1 << 20, 64)) {
+            for (int i = 0; i < 10; i++) {
+                assertTrue(store.append(game(i, FULL_GAME.substring(0, i * 3 + 1))));
+            }
+        }
+
+        List<GameRecordStore.Game> games = new ArrayList<>();
+        GameRecordStore.replayAll(directory, games::add);
+        assertEquals(10, games.size());
+        for (int i = 0; i < 10; i++) {
+            GameRecordStore.Game game = games.get(i);
+            String moves = FULL_GAME.substring(0, i * 3 + 1);
+            assertEquals(i, game.getSessionId());
+            assertEquals(1000L + i, game.getStartMillis());
+            assertEquals(TIE, game.getStatus());
+            assertEquals(moves.length(), game.getMoveCount());
+            for (int move = 0; move < moves.length(); move++) {
+                assertEquals(moves.charAt(move) - '1', game.getColumn(move));
+            }
+            assertEquals(moves.length(), game.toBoard().getMoves());
+        }
+    }
+
+    @Test
+    public void rollsSegmentsAndStopsAtTornGame() throws Exception {
+        Path directory = Files.createTempDirectory("records");
+        // small segments, so most batches start a new one
+        try (GameRecordStore store = new GameRecordStore(directory, 64, 64)) {
+            for (int i = 0; i < 5; i++) {
+                store.append(game(i, FULL_GAME));
+                Thread.sleep(20);
+            }
+        }
+        List<Path> segments = GameRecordStore.segments(directory);
+        assertTrue(segments.size() > 1);
+
+        // cut the last game short, as a crash mid write would
+        Path last = segments.get(segments.size() - 1);
+        try (RandomAccessFile file = new RandomAccessFile(last.toFile(), "rw")) {
+            file.setLength(file.length() - 5);
+        }
+        List<GameRecordStore.Game> games = new ArrayList<>();
+        GameRecordStore.replayAll(directory, games::add);
+        assertEquals(4, games.size());
+
+        // a new store writes to a new segment after the old ones
+        try (GameRecordStore store = new GameRecordStore(directory, 64, 64)) {
+            store.append(game(9, "4"));
+        }
+        games.clear();
+        GameRecordStore.replayAll(directory, games::add);
+        assertEquals(5, games.size());
+        assertEquals(9, games.get(4).getSessionId());
+    }
+
+    @Test
+    public void everyGameAppendedWhileClosingIsWrittenOrDropped() throws Exception {
+        Path directory = Files.createTempDirectory("records");
+        GameRecordStore store = new GameRecordStore(directory, 1 << 20, 64);
+        int perThread = 2000;
+        Thread[] appenders = new Thread[4];
+        for (int t = 0; t < appenders.length; t++) {
+            appenders[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    store.append(game(i, FULL_GAME.substring(0, 7)));
+                }
+            });
+            appenders[t].start();
+        }
+        Thread.sleep(5);
+        store.close();
+        for (Thread appender : appenders) {
+            appender.join();
+        }
+
+        List<GameRecordStore.Game> games = new ArrayList<>();
+        GameRecordStore.replayAll(directory, games::add);
+        assertEquals(store.getWritten(), games.size());
+        assertEquals(appenders.length * perThread, store.getWritten() + store.getDropped());
+    }
+
+    @Test
+    public void keepsTheBoardOfEachGame() throws Exception {
+        Path directory = Files.createTempDirectory("records");
+        Variant large = Variant.of(16, 15, 6);
+        byte[] columns = new byte[large.getCells()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = (byte) (i / 16 % 15);
+        }
+        try (GameRecordStore store = new GameRecordStore(directory, 1 << 20, 64)) {
+            store.append(new GameRecordStore.Game(1, 1000L, 50, TIE, large, columns,
+                    columns.length));
+            store.append(game(2, "4"));
+        }
+
+        List<GameRecordStore.Game> games = new ArrayList<>();
+        GameRecordStore.replayAll(directory, games::add);
+        assertEquals(2, games.size());
+        assertEquals(large, games.get(0).getVariant());
+        assertEquals(columns.length, games.get(0).getMoveCount());
+        GameBoard board = games.get(0).toBoard();
+        assertEquals(large, board.getVariant());
+        assertFalse(board.canPlay(14));
+        assertEquals(Variant.STANDARD, games.get(1).getVariant());
+    }
+
+    @Test
+    public void rejectsSegmentsOfAnotherVersion() throws Exception {
+        Path directory = Files.createTempDirectory("records");
+        ByteBuffer segment = ByteBuffer.allocate(16);
+        segment.putInt(0x43344752).putInt(1).putLong(0L);
+        Files.write(directory.resolve("games-000001.seg"), segment.array());
+        try {
+            GameRecordStore.replayAll(directory, game -> fail("read " + game));
+            fail("read a version 1 segment");
+        } catch (IOException expected) {
+            // only the current version is read
+        }
+    }
+
+    private static GameRecordStore.Game game(int id, String moves) {
+        return new GameRecordStore.Game(id, 1000L + id, 50, TIE, Boards.columns(moves),
+                moves.length());
+    }
+}
@@ -0,0 +1,261 @@
+package Test;
+
+import core.Connect4Board;
+import core.Connect4Constants;
+import core.GameBoard;
+import core.GameServer;
+import core.GameStream;
+import core.ServerConfig;
+import core.Variant;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class GameServerTest implements Connect4Constants {
+
+    private static int port;
+
+    @BeforeClass
+    public static void startServer() throws Exception {
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        Properties properties = new Properties();
+        properties.setProperty("server.port", Integer.toString(port));
+        properties.setProperty("server.resumeGraceMillis", "5000");
+        properties.setProperty("log.path", "");
+        properties.setProperty("records.path", "");
+        GameServer server = new GameServer(new ServerConfig(properties));
+        Thread thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        waitForPort();
+    }
+
+    @Test
+    public void resumesSeatAfterDisconnect() throws Exception {
+        GameStream first = connect();
+        first.writeHello();
+        assertEquals(PLAYER_1, first.readToken(true));
+        first.writeChoice(ONE_PLAYER_EASY);
+        assertEquals(1, first.readStart());
+        long id = first.getResumeId();
+        assertNotEquals(0, id);
+
+        // one move each, then the connection drops
+        first.writeMove(4);
+        assertEquals(VALID_TURN, first.readMoveResult());
+        assertEquals(CONTINUE, first.readStatus());
+        first.readRow();
+        first.readColumn();
+        assertEquals(CONTINUE, first.readStatus());
+        first.readRow();
+        int computerColumn = first.readColumn();
+        first.getSocket().close();
+
+        GameStream second = connect();
+        second.writeResume(id);
+        second.readToken(false);
+        GameBoard board = second.readResumed();
+        assertNotNull(board);
+        assertEquals(2, board.getMoves());
+        assertTrue(board.isPlayer1Turn());
+        assertEquals(PLAYER_1, board.getToken(Connect4Board.ROWS - 1, 3));
+        assertNotEquals(BLANK, board.getToken(computerColumn == 3 ? Connect4Board.ROWS - 2
+                : Connect4Board.ROWS - 1, computerColumn));
+
+        // the game carries on over the new connection
+        second.writeMove(1);
+        assertEquals(VALID_TURN, second.readMoveResult());
+        assertEquals(CONTINUE, second.readStatus());
+        second.getSocket().close();
+    }
+
+    @Test
+    public void answersHintsDuringTheTurn() throws Exception {
+        GameStream player = connect();
+        player.writeHello();
+        assertEquals(PLAYER_1, player.readToken(true));
+        player.writeChoice(ONE_PLAYER_EASY);
+        assertEquals(1, player.readStart());
+
+        player.writeHintRequest();
+        int[] scores = player.readHint();
+        assertEquals(Connect4Board.COLUMNS, scores.length);
+        // the center scores best on an empty board
+        for (int score : scores) {
+            assertTrue(score <= scores[3]);
+        }
+
+        // asking again is answered from the cache, and the game goes on
+        player.writeHintRequest();
+        assertArrayEquals(scores, player.readHint());
+        player.writeMove(4);
+        assertEquals(VALID_TURN, player.readMoveResult());
+        assertEquals(CONTINUE, player.readStatus());
+        player.getSocket().close();
+    }
+
+    @Test
+    public void badFrameDropsTheConnection() throws Exception {
+        GameStream player = connect();
+        player.writeHello();
+        assertEquals(PLAYER_1, player.readToken(true));
+        player.writeChoice(ONE_PLAYER_EASY);
+        assertEquals(1, player.readStart());
+
+        // a move frame claiming to be far shorter than a move
+        DataOutputStream out = new DataOutputStream(player.getSocket().getOutputStream());
+        out.writeInt(2);
+        out.writeByte(MSG_MOVE);
+        out.writeInt(4);
+        out.flush();
+        player.getSocket().setSoTimeout(5000);
+        assertEquals(-1, player.getSocket().getInputStream().read());
+        player.getSocket().close();
+    }
+
+    @Test
+    public void playsTheBoardPlayer1AskedFor() throws Exception {
+        Variant small = Variant.of(5, 5, 3);
+        GameStream first = connect();
+        first.writeHello();
+        assertEquals(PLAYER_1, first.readToken(true));
+        assertTrue(first.hasVariants());
+        first.writeChoice(small);
+        waitForLobby();
+        GameStream second = connect();
+        second.writeHello();
+        assertEquals(PLAYER_2, second.readToken(true));
+        assertEquals(1, first.readStart());
+        assertEquals(small, first.getVariant());
+
+        // three in a row along the bottom wins on this board
+        int[] moves = {1, 1, 2, 2, 3};
+        for (int i = 0; i < moves.length; i++) {
+            GameStream mover = i % 2 == 0 ? first : second;
+            GameStream other = i % 2 == 0 ? second : first;
+            mover.writeMove(moves[i]);
+            assertEquals(VALID_TURN, mover.readMoveResult());
+            int status = i == moves.length - 1 ? P1_WINNER : CONTINUE;
+            assertEquals(status, mover.readStatus());
+            assertEquals(status, other.readStatus());
+            assertEquals(small.getRows() - 1 - i % 2, other.readRow());
+            other.readColumn();
+        }
+        assertEquals(small, second.getVariant());
+        first.getSocket().close();
+        second.getSocket().close();
+    }
+
+    @Test
+    public void legacyPlayer2GetsTheStandardBoard() throws Exception {
+        GameStream first = connect();
+        first.writeHello();
+        assertEquals(PLAYER_1, first.readToken(true));
+        first.writeChoice(Variant.of(5, 5, 3));
+        waitForLobby();
+        GameStream second = connect();
+        assertEquals(PLAYER_2, second.readToken(false));
+        assertEquals(1, first.readStart());
+        assertEquals(Variant.STANDARD, first.getVariant());
+        first.getSocket().close();
+        second.getSocket().close();
+    }
+
+    @Test
+    public void spectatorSeesEveryMove() throws Exception {
+        GameStream first = connect();
+        first.writeHello();
+        assertEquals(PLAYER_1, first.readToken(true));
+        first.writeChoice(TWO_PLAYER_GAME);
+        waitForLobby();
+        GameStream second = connect();
+        second.writeHello();
+        assertEquals(PLAYER_2, second.readToken(true));
+        assertEquals(1, first.readStart());
+        int session = first.getSession();
+        assertNotEquals(0, session);
+
+        GameStream spectator = connect();
+        spectator.writeWatch(session);
+        spectator.readToken(false);
+        assertEquals(0, spectator.readWatched().getMoves());
+
+        // four in a column for player 1
+        int[] moves = {4, 1, 4, 1, 4, 1, 4};
+        GameBoard board = null;
+        for (int i = 0; i < moves.length; i++) {
+            GameStream mover = i % 2 == 0 ? first : second;
+            GameStream other = i % 2 == 0 ? second : first;
+            mover.writeMove(moves[i]);
+            assertEquals(VALID_TURN, mover.readMoveResult());
+            mover.readStatus();
+            other.readStatus();
+            board = spectator.readWatched();
+            assertEquals(i + 1, board.getMoves());
+        }
+        assertEquals(P1_WINNER, board.status());
+        assertEquals(session, second.getSession());
+        assertEquals(PLAYER_1, board.getToken(Connect4Board.ROWS - 4, 3));
+        first.getSocket().close();
+        second.getSocket().close();
+        spectator.getSocket().close();
+    }
+
+    @Test
+    public void unknownSessionCannotBeWatched() throws Exception {
+        GameStream spectator = connect();
+        spectator.writeWatch(123456);
+        spectator.readToken(false);
+        assertNull(spectator.readWatched());
+        spectator.getSocket().close();
+    }
+
+    @Test
+    public void unknownSeatIsRefused() throws Exception {
+        GameStream stream = connect();
+        stream.writeResume(12345);
+        stream.readToken(false);
+        assertNull(stream.readResumed());
+        stream.getSocket().close();
+    }
+
+    private static GameStream connect() throws IOException {
+        return new GameStream(new Socket("localhost", port));
+    }
+
+    /**
+     * Gives the lobby time to read player 1's choice and queue them, so the
+     * next connection is matched with them
+     */
+    private static void waitForLobby() throws InterruptedException {
+        Thread.sleep(200);
+    }
+
+    private static void waitForPort() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                new Socket("localhost", port).close();
+                return;
+            } catch (IOException ex) {
+                Thread.sleep(50);
+            }
+        }
+        fail("server did not start");
+    }
+}
@@ -0,0 +1,74 @@
+package Test;
+
+import core.Histogram;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 50; i++) {
+            histogram.record(i);
+        }
+        assertEquals(25, histogram.getPercentile(50));
+        assertEquals(50, histogram.getPercentile(100));
+        assertEquals(50, histogram.getMax());
+        assertEquals(25.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void percentilesWithinBucketWidth() {
+        Histogram histogram = new Histogram();
+        SplittableRandom random = new SplittableRandom(1);
+        long[] values = new long[100000];
+        for (int i = 0; i < values.length; i++) {
+            // spread over microseconds to seconds in nanoseconds
+            values[i] = (long) Math.pow(10, 3 + random.nextDouble() * 6);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double percent : new double[] {50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percent / 100 * values.length) - 1];
+            long estimate = histogram.getPercentile(percent);
+            assertTrue(percent + ": " + estimate + " vs " + exact, estimate >= exact);
+            assertTrue(percent + ": " + estimate + " vs " + exact, estimate <= exact * 1.04);
+        }
+        assertEquals(values[values.length - 1], histogram.getPercentile(100));
+    }
+
+    @Test
+    public void emptyAndNegative() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(99));
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void countsEveryRecordAcrossThreads() throws Exception {
+        Histogram histogram = new Histogram();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400000, histogram.getCount());
+        assertEquals(99999, histogram.getMax());
+    }
+}
@@ -0,0 +1,219 @@
+package Test;
+
+import core.Connect4Constants;
+import core.GameStream;
+import core.Lobby;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LobbyTest implements Connect4Constants {
+
+    private final BlockingQueue<String> started = new LinkedBlockingQueue<>();
+
+    private final Lobby.SessionStarter starter = new Lobby.SessionStarter() {
+        @Override
+        public void startTwoPlayer(GameStream player1, GameStream player2) {
+            started.add("two " + protocol(player1) + " " + protocol(player2));
+        }
+
+        @Override
+        public void startOnePlayer(GameStream player1, int choice) {
+            started.add("one " + choice);
+        }
+
+        @Override
+        public void resume(GameStream player) {
+            started.add("resume " + player.getResumeId());
+        }
+
+        @Override
+        public void watch(GameStream spectator) {
+            started.add("watch " + spectator.getWatchedSession());
+        }
+    };
+
+    @Test
+    public void idleClientDoesNotBlockOthers() throws Exception {
+        ExecutorService handshakes = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Lobby lobby = new Lobby(starter, handshakes, 5000, 250);
+
+            // never sends a game choice
+            Socket idle = connect(server, lobby);
+            assertEquals(PLAYER_1, new DataInputStream(idle.getInputStream()).readChar());
+
+            Socket player = connect(server, lobby);
+            assertEquals(PLAYER_1, new DataInputStream(player.getInputStream()).readChar());
+            new DataOutputStream(player.getOutputStream()).writeInt(ONE_PLAYER_HARD);
+            assertEquals("one " + ONE_PLAYER_HARD, started.poll(5, TimeUnit.SECONDS));
+
+            idle.close();
+            player.close();
+        } finally {
+            handshakes.shutdownNow();
+        }
+    }
+
+    @Test
+    public void pairsTwoPlayerRequestsInOrder() throws Exception {
+        ExecutorService handshakes = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Lobby lobby = new Lobby(starter, handshakes, 5000, 250);
+
+            Socket first = connect(server, lobby);
+            new DataInputStream(first.getInputStream()).readChar();
+            new DataOutputStream(first.getOutputStream()).writeInt(TWO_PLAYER_GAME);
+            waitForQueueDepth(lobby, 1);
+
+            Socket second = connect(server, lobby);
+            assertEquals(PLAYER_2, new DataInputStream(second.getInputStream()).readChar());
+            assertEquals("two legacy legacy", started.poll(5, TimeUnit.SECONDS));
+            assertEquals(0, lobby.getQueueDepth());
+            assertEquals(1, lobby.getMatches());
+            assertTrue(lobby.getMatchTime().getMax() > 0);
+
+            first.close();
+            second.close();
+        } finally {
+            handshakes.shutdownNow();
+        }
+    }
+
+    @Test
+    public void negotiatesFramedProtocol() throws Exception {
+        ExecutorService handshakes = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Lobby lobby = new Lobby(starter, handshakes, 5000, 250);
+
+            // player 1 asks for frames, player 2 is a legacy client
+            Socket first = connect(server, lobby);
+            new DataOutputStream(first.getOutputStream()).writeInt(PROTOCOL_HELLO);
+            DataInputStream fromFirst = new DataInputStream(first.getInputStream());
+            assertEquals(PLAYER_1, fromFirst.readChar());
+            assertEquals(PROTOCOL_HELLO, fromFirst.readInt());
+            new DataOutputStream(first.getOutputStream()).writeInt(TWO_PLAYER_GAME);
+            waitForQueueDepth(lobby, 1);
+
+            Socket second = connect(server, lobby);
+            assertEquals(PLAYER_2, new DataInputStream(second.getInputStream()).readChar());
+            assertEquals("two framed legacy", started.poll(5, TimeUnit.SECONDS));
+
+            // and the other way round
+            Socket third = connect(server, lobby);
+            new DataInputStream(third.getInputStream()).readChar();
+            new DataOutputStream(third.getOutputStream()).writeInt(TWO_PLAYER_GAME);
+            waitForQueueDepth(lobby, 1);
+
+            Socket fourth = connect(server, lobby);
+            new DataOutputStream(fourth.getOutputStream()).writeInt(PROTOCOL_HELLO);
+            DataInputStream fromFourth = new DataInputStream(fourth.getInputStream());
+            assertEquals(PLAYER_2, fromFourth.readChar());
+            assertEquals(PROTOCOL_HELLO, fromFourth.readInt());
+            assertEquals("two legacy framed", started.poll(5, TimeUnit.SECONDS));
+
+            first.close();
+            second.close();
+            third.close();
+            fourth.close();
+        } finally {
+            handshakes.shutdownNow();
+        }
+    }
+
+    @Test
+    public void resumingClientIsNotMatched() throws Exception {
+        ExecutorService handshakes = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Lobby lobby = new Lobby(starter, handshakes, 5000, 250);
+
+            Socket first = connect(server, lobby);
+            new DataInputStream(first.getInputStream()).readChar();
+            new DataOutputStream(first.getOutputStream()).writeInt(TWO_PLAYER_GAME);
+            waitForQueueDepth(lobby, 1);
+
+            // arrives while player 1 waits, so is given player 2's token at first
+            Socket resuming = connect(server, lobby);
+            DataOutputStream toResuming = new DataOutputStream(resuming.getOutputStream());
+            toResuming.writeInt(PROTOCOL_RESUME);
+            toResuming.writeLong(42);
+            assertEquals("resume 42", started.poll(5, TimeUnit.SECONDS));
+            waitForQueueDepth(lobby, 1);
+            assertEquals(0, lobby.getMatches());
+
+            // player 1 is still first in line
+            Socket second = connect(server, lobby);
+            assertEquals(PLAYER_2, new DataInputStream(second.getInputStream()).readChar());
+            assertEquals("two legacy legacy", started.poll(5, TimeUnit.SECONDS));
+
+            first.close();
+            resuming.close();
+            second.close();
+        } finally {
+            handshakes.shutdownNow();
+        }
+    }
+
+    @Test
+    public void spectatorIsNotMatched() throws Exception {
+        ExecutorService handshakes = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(0)) {
+            Lobby lobby = new Lobby(starter, handshakes, 5000, 250);
+
+            // first in line, so reads a watch request as player 1's choice
+            Socket early = connect(server, lobby);
+            DataOutputStream toEarly = new DataOutputStream(early.getOutputStream());
+            toEarly.writeInt(PROTOCOL_WATCH);
+            toEarly.writeInt(3);
+            assertEquals("watch 3", started.poll(5, TimeUnit.SECONDS));
+
+            Socket first = connect(server, lobby);
+            new DataInputStream(first.getInputStream()).readChar();
+            new DataOutputStream(first.getOutputStream()).writeInt(TWO_PLAYER_GAME);
+            waitForQueueDepth(lobby, 1);
+
+            Socket watching = connect(server, lobby);
+            DataOutputStream toWatching = new DataOutputStream(watching.getOutputStream());
+            toWatching.writeInt(PROTOCOL_WATCH);
+            toWatching.writeInt(7);
+            assertEquals("watch 7", started.poll(5, TimeUnit.SECONDS));
+            waitForQueueDepth(lobby, 1);
+            assertEquals(0, lobby.getMatches());
+
+            early.close();
+            first.close();
+            watching.close();
+        } finally {
+            handshakes.shutdownNow();
+        }
+    }
+
+    private static String protocol(GameStream player) {
+        return player.isFramed() ? "framed" : "legacy";
+    }
+
+    private static Socket connect(ServerSocket server, Lobby lobby) throws IOException {
+        Socket client = new Socket("localhost", server.getLocalPort());
+        lobby.arrived(server.accept());
+        return client;
+    }
+
+    private static void waitForQueueDepth(Lobby lobby, int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (lobby.getQueueDepth() != depth && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(depth, lobby.getQueueDepth());
+    }
+}
@@ -0,0 +1,73 @@
+package Test;
+
+import core.Connect4Board;
+import core.MonteCarloPlayer;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ForkJoinPool;
+
+import static Test.Boards.*;
+import static org.junit.Assert.*;
+
+public class MonteCarloPlayerTest {
+
+    @Test
+    public void takesImmediateWin() {
+        Connect4Board board = fromMoves("121212");
+        assertEquals(0, new MonteCarloPlayer(1000, 1000, 1).bestMove(board));
+    }
+
+    @Test
+    public void blocksOpponentWin() {
+        // player 1 threatens four along the bottom row
+        Connect4Board board = fromMoves("17273");
+        assertEquals(3, new MonteCarloPlayer(5000, 5000, 1).bestMove(board));
+    }
+
+    @Test
+    public void leavesBoardUnchanged() {
+        Connect4Board board = fromMoves("4453");
+        MonteCarloPlayer player = new MonteCarloPlayer(2000, 5000, 1);
+        player.bestMove(board);
+        assertEquals(4, board.getMoves());
+        assertTrue(board.isPlayer1Turn());
+        assertEquals(2000, player.getPlayouts());
+    }
+
+    @Test
+    public void returnsLegalMoveWhenOutOfTime() {
+        Connect4Board board = fromMoves("");
+        int col = new MonteCarloPlayer(100000, 0, 1).bestMove(board);
+        assertTrue(board.canPlay(col));
+    }
+
+    @Test
+    public void treesOnEveryPoolThreadBlockOpponentWin() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            MonteCarloPlayer player = new MonteCarloPlayer(20000, 5000, 1, pool);
+            assertEquals(3, player.bestMove(fromMoves("17273")));
+            assertEquals(20000, player.getPlayouts());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void playoutsDoNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Connect4Board board = fromMoves("4453");
+        MonteCarloPlayer player = new MonteCarloPlayer(20000, 60000, 1);
+        // warm up, so the measured move runs compiled code
+        for (int i = 0; i < 5; i++) {
+            player.bestMove(board);
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        player.bestMove(board);
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        // only the board the move is searched on
+        assertTrue(allocated + " bytes", allocated < 1024);
+    }
+}
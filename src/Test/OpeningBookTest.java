@@ -0,0 +1,65 @@
+package Test;
+
+import core.ComputerOpponent;
+import core.ComputerPlayer;
+import core.Connect4Board;
+import core.Connect4Solver;
+import core.Difficulty;
+import core.OpeningBook;
+import core.OpeningBookGenerator;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static Test.Boards.*;
+import static org.junit.Assert.*;
+
+public class OpeningBookTest {
+
+    @Test
+    public void bookMatchesSearchAndMirrors() throws Exception {
+        Path file = Files.createTempFile("connect4", ".book");
+        try {
+            int size = new OpeningBookGenerator(4, 6).generate(file);
+            OpeningBook book = OpeningBook.open(file);
+            assertEquals(size, book.size());
+            assertEquals(4, book.getPlies());
+
+            Connect4Board board = fromMoves("12");
+            int expected = new Connect4Solver(6, 60000).bestMove(board);
+            assertEquals(expected, book.lookup(board));
+
+            // the mirror image of the same game gets the mirrored move
+            assertEquals(Connect4Board.COLUMNS - 1 - expected, book.lookup(fromMoves("76")));
+
+            // past the end of the book
+            assertEquals(-1, book.lookup(fromMoves("1234")));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void easyComputerDoesNotPlayTheBook() throws Exception {
+        Path file = Files.createTempFile("connect4", ".book");
+        try {
+            new OpeningBookGenerator(4, 6).generate(file);
+            OpeningBook book = OpeningBook.open(file);
+            Connect4Board board = fromMoves("12");
+            int booked = book.lookup(board);
+            // a search that never agrees with the book
+            int searched = (booked + 1) % Connect4Board.COLUMNS;
+            ComputerPlayer search = always(searched);
+
+            assertEquals(searched,
+                    new ComputerOpponent(Difficulty.EASY, book, search).bestMove(board));
+            assertEquals(booked,
+                    new ComputerOpponent(Difficulty.MEDIUM, book, search).bestMove(board));
+            assertEquals(booked,
+                    new ComputerOpponent(Difficulty.HARD, book, search).bestMove(board));
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package Test;
+
+import core.Connect4Board;
+import core.Connect4Constants;
+import core.GameRecordStore;
+import core.PositionAnalyzer;
+import core.ServerMetrics;
+import core.Tablebase;
+import core.TablebaseGenerator;
+import core.TranspositionTable;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static Test.Boards.*;
+import static org.junit.Assert.*;
+
+public class PositionAnalyzerTest implements Connect4Constants {
+
+    private final ServerMetrics metrics = new ServerMetrics(() -> 0, () -> 0, () -> 0, () -> 0);
+
+    @Test
+    public void scoresEveryColumn() {
+        // column 1 is full, player 1 wins at once in column 4 and loses
+        // anywhere else
+        Connect4Board board = fromMoves("111111454545");
+        int[] scores = analyzer(8, 16).analyze(board, later());
+        assertEquals(Connect4Board.COLUMNS, scores.length);
+        assertEquals(PositionAnalyzer.UNPLAYABLE, scores[0]);
+        assertTrue(scores[3] > PositionAnalyzer.FORCED);
+        for (int col = 1; col < Connect4Board.COLUMNS; col++) {
+            if (col != 3) {
+                assertTrue(scores[col] < scores[3]);
+            }
+        }
+    }
+
+    @Test
+    public void mirroredPositionIsAnsweredFromTheCache() {
+        PositionAnalyzer analyzer = analyzer(6, 16);
+        int[] scores = analyzer.analyze(fromMoves("4312"), later());
+        int[] mirrored = analyzer.analyze(fromMoves("4576"), later());
+        assertEquals(1, metrics.getAnalysisMisses());
+        assertEquals(1, metrics.getAnalysisHits());
+        assertEquals(1, analyzer.size());
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            assertEquals(scores[col], mirrored[Connect4Board.COLUMNS - 1 - col]);
+        }
+    }
+
+    @Test
+    public void clockEvictsPositionsNotLookedUpAgain() {
+        PositionAnalyzer analyzer = analyzer(4, 2);
+        analyzer.analyze(fromMoves("1"), later());
+        analyzer.analyze(fromMoves("2"), later());
+        // the first is looked up again, so the second goes to make room
+        analyzer.analyze(fromMoves("1"), later());
+        analyzer.analyze(fromMoves("3"), later());
+        assertEquals(2, analyzer.size());
+        assertEquals(1, metrics.getAnalysisEvictions());
+
+        analyzer.analyze(fromMoves("1"), later());
+        assertEquals(2, metrics.getAnalysisHits());
+        analyzer.analyze(fromMoves("2"), later());
+        assertEquals(4, metrics.getAnalysisMisses());
+        assertEquals(2, metrics.getAnalysisEvictions());
+    }
+
+    @Test
+    public void analysisOutOfTimeIsNotCached() {
+        PositionAnalyzer analyzer = analyzer(20, 16);
+        int[] scores = analyzer.analyze(new Connect4Board(), System.nanoTime());
+        assertEquals(Connect4Board.COLUMNS, scores.length);
+        assertEquals(0, analyzer.size());
+    }
+
+    @Test
+    public void tablebaseScoresMatchASearchToTheEnd() throws Exception {
+        TablebaseGenerator generator = new TablebaseGenerator(10);
+        generator.addGame(new GameRecordStore.Game(1, 0L, 0, TIE, columns(ENDGAME),
+                ENDGAME.length()));
+        Path file = Files.createTempFile("endgame", ".tb");
+        generator.write(file);
+        Tablebase tablebase = Tablebase.open(file);
+
+        Connect4Board board = fromMoves(ENDGAME);
+        int empty = Connect4Board.CELLS - board.getMoves();
+        int[] searched = analyzer(empty, 16).analyze(board, later());
+        PositionAnalyzer fromTablebase = new PositionAnalyzer(1, 16,
+                new TranspositionTable(1 << 16), tablebase, metrics);
+        int[] probed = fromTablebase.analyze(board, later());
+        assertArrayEquals(searched, probed);
+    }
+
+    private PositionAnalyzer analyzer(int depth, int capacity) {
+        return new PositionAnalyzer(depth, capacity, new TranspositionTable(1 << 20), null,
+                metrics);
+    }
+
+    private static long later() {
+        return System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    }
+}
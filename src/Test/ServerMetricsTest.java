@@ -0,0 +1,48 @@
+package Test;
+
+import core.Histogram;
+import core.ServerMetrics;
+import org.junit.Test;
+
+import javax.management.openmbean.CompositeData;
+
+import static org.junit.Assert.*;
+
+public class ServerMetricsTest {
+
+    @Test
+    public void runningSessionsAreExportedUntilTheyEnd() {
+        ServerMetrics metrics = new ServerMetrics(() -> 1, () -> 0, () -> 0, () -> 0);
+        ServerMetrics.SessionStats stats = metrics.sessionStarted(7);
+        stats.moved(3);
+        stats.roundTrip(2000000);
+
+        String text = metrics.format();
+        assertTrue(text.contains("connect4_session_moves{session=\"7\"} 3\n"));
+        assertTrue(text.contains(
+                "connect4_session_last_move_round_trip_seconds{session=\"7\"} 0.002\n"));
+        CompositeData row = metrics.getSessions().get(new Object[] {7});
+        assertEquals(3, row.get("moves"));
+        assertEquals(2000L, row.get("lastMoveRoundTripMicros"));
+
+        metrics.sessionEnded(7);
+        assertFalse(metrics.format().contains("session=\"7\""));
+        assertTrue(metrics.getSessions().isEmpty());
+    }
+
+    @Test
+    public void lobbyNumbersAreExported() {
+        Histogram matchTime = new Histogram();
+        matchTime.record(1500000000L);
+        ServerMetrics metrics = new ServerMetrics(() -> 0, () -> 0, () -> 0, () -> 0,
+                matchTime, () -> 4);
+        assertEquals(1, metrics.getMatches());
+        assertEquals(4, metrics.getHandshakeTimeouts());
+        assertTrue(metrics.getTimeToMatchMaxMillis() >= 1450);
+
+        String text = metrics.format();
+        assertTrue(text.contains("connect4_matches_total 1\n"));
+        assertTrue(text.contains("connect4_handshake_timeouts_total 4\n"));
+        assertTrue(text.contains("connect4_time_to_match_seconds_count 1\n"));
+    }
+}
@@ -0,0 +1,39 @@
+package Test;
+
+import core.SessionExecutor;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class SessionExecutorTest {
+
+    @Test
+    public void queuesThenRejectsOverCap() throws Exception {
+        SessionExecutor sessions = new SessionExecutor(1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch queuedRan = new CountDownLatch(1);
+
+        assertTrue(sessions.submit(() -> awaitQuietly(release)));
+        assertTrue(sessions.submit(queuedRan::countDown));
+        assertFalse(sessions.submit(() -> { }));
+
+        assertEquals(1, sessions.getActive());
+        assertEquals(1, sessions.getQueued());
+        assertEquals(1, sessions.getRejected());
+
+        // finishing the first session starts the queued one
+        release.countDown();
+        assertTrue(queuedRan.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
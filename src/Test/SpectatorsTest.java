@@ -0,0 +1,108 @@
+package Test;
+
+import core.Connect4Constants;
+import core.GameBoard;
+import core.GameStream;
+import core.ServerMetrics;
+import core.Spectators;
+import core.Variant;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SpectatorsTest implements Connect4Constants {
+
+    private static final Variant LARGE = Variant.of(16, 15, 6);
+
+    @Test
+    public void slowSpectatorNeverHoldsUpTheGame() throws Exception {
+        ServerMetrics metrics = new ServerMetrics(() -> 0, () -> 0, () -> 0, () -> 0);
+        Spectators spectators = new Spectators(10, 200, 2, metrics);
+        byte[] columns = new byte[LARGE.getCells()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = (byte) (i / 16 % 15);
+        }
+        Spectators.Audience audience = spectators.newAudience(LARGE, columns);
+
+        try (ServerSocket server = new ServerSocket(0)) {
+            // never reads, with small buffers so its writes soon block
+            Socket stuck = new Socket();
+            stuck.setReceiveBufferSize(4096);
+            stuck.connect(new InetSocketAddress("localhost", server.getLocalPort()));
+            Socket toStuck = server.accept();
+            toStuck.setSendBufferSize(4096);
+            assertTrue(audience.subscribe(new GameStream(toStuck)));
+
+            Socket reader = new Socket("localhost", server.getLocalPort());
+            assertTrue(audience.subscribe(new GameStream(server.accept())));
+            GameStream fromServer = new GameStream(reader);
+            assertEquals(0, fromServer.readWatched().getMoves());
+            assertEquals(2, spectators.getWatching());
+            AtomicReference<GameBoard> last = new AtomicReference<>();
+            Thread reading = new Thread(() -> {
+                try {
+                    while (true) {
+                        last.set(fromServer.readWatched());
+                    }
+                } catch (IOException ex) {
+                    // closed once the game is over
+                }
+            });
+            reading.start();
+
+            // publish until the stuck spectator is dropped, which must never
+            // slow publishing down
+            long slowestNanos = 0;
+            long deadline = System.currentTimeMillis() + 10000;
+            for (int i = 0; metrics.getSpectatorsDropped() == 0
+                    && System.currentTimeMillis() < deadline; i++) {
+                long start = System.nanoTime();
+                audience.publish(i % (columns.length - 1) + 1);
+                slowestNanos = Math.max(slowestNanos, System.nanoTime() - start);
+            }
+            assertEquals(1, metrics.getSpectatorsDropped());
+            assertEquals(1, spectators.getWatching());
+            assertTrue(metrics.getSpectatorFramesSkipped() > 0);
+            assertTrue("publish took " + slowestNanos + " ns", slowestNanos < 100000000);
+
+            // the reader skips ahead to the last move, then is closed
+            audience.publish(columns.length);
+            audience.close();
+            reading.join(5000);
+            assertEquals(columns.length, last.get().getMoves());
+            assertEquals(LARGE, last.get().getVariant());
+            assertEquals(0, spectators.getWatching());
+            stuck.close();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void fullAudienceTurnsSpectatorsAway() throws Exception {
+        ServerMetrics metrics = new ServerMetrics(() -> 0, () -> 0, () -> 0, () -> 0);
+        Spectators spectators = new Spectators(1, 1000, 1, metrics);
+        Spectators.Audience audience = spectators.newAudience(Variant.STANDARD, new byte[42]);
+        try (ServerSocket server = new ServerSocket(0);
+             Socket first = new Socket("localhost", server.getLocalPort())) {
+            Socket second = new Socket("localhost", server.getLocalPort());
+            Socket third = new Socket("localhost", server.getLocalPort());
+            try {
+                assertTrue(audience.subscribe(new GameStream(server.accept())));
+                assertFalse(audience.subscribe(new GameStream(server.accept())));
+                audience.close();
+                assertFalse(audience.subscribe(new GameStream(server.accept())));
+                // only the spectator let in is sent the game
+                assertEquals(0, new GameStream(first).readWatched().getMoves());
+            } finally {
+                second.close();
+                third.close();
+            }
+        }
+    }
+}
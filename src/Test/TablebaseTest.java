@@ -0,0 +1,155 @@
+package Test;
+
+import core.ComputerOpponent;
+import core.ComputerPlayer;
+import core.Connect4Board;
+import core.Connect4Constants;
+import core.Difficulty;
+import core.GameRecordStore;
+import core.Tablebase;
+import core.TablebaseGenerator;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static Test.Boards.*;
+import static org.junit.Assert.*;
+
+public class TablebaseTest implements Connect4Constants {
+
+    private static final int MAX_EMPTY = 10;
+
+    private static Tablebase tablebase;
+
+    @BeforeClass
+    public static void generate() throws Exception {
+        TablebaseGenerator generator = new TablebaseGenerator(MAX_EMPTY);
+        generator.addGame(new GameRecordStore.Game(1, 0L, 0, TIE, columns(ENDGAME),
+                ENDGAME.length()));
+        generator.addSelfPlay(20, 1);
+        Path file = Files.createTempFile("endgame", ".tb");
+        generator.write(file);
+        tablebase = Tablebase.open(file);
+        assertEquals(generator.size(), tablebase.size());
+        assertEquals(MAX_EMPTY, tablebase.getMaxEmpty());
+    }
+
+    @Test
+    public void answersMatchAFullSearch() {
+        Connect4Board board = fromMoves(ENDGAME);
+        checkPositionAndReplies(board);
+        // and along the perfect game from there
+        while (board.status() == CONTINUE) {
+            int result = tablebase.probe(board);
+            check(board);
+            board.play(Tablebase.move(result));
+        }
+    }
+
+    @Test
+    public void mirroredPositionGetsMirroredMove() {
+        String moves = ENDGAME;
+        StringBuilder mirrored = new StringBuilder();
+        for (char c : moves.toCharArray()) {
+            mirrored.append((char) ('1' + '7' - c));
+        }
+        int result = tablebase.probe(fromMoves(moves));
+        int mirroredResult = tablebase.probe(fromMoves(mirrored.toString()));
+        assertNotEquals(Tablebase.NOT_FOUND, result);
+        assertEquals(Tablebase.outcome(result), Tablebase.outcome(mirroredResult));
+        assertEquals(Tablebase.distance(result), Tablebase.distance(mirroredResult));
+        assertEquals(Connect4Board.COLUMNS - 1 - Tablebase.move(result),
+                Tablebase.move(mirroredResult));
+    }
+
+    @Test
+    public void earlierPositionsAreNotInIt() {
+        assertEquals(Tablebase.NOT_FOUND, tablebase.probe(fromMoves("4444")));
+        assertEquals(Tablebase.NOT_FOUND, tablebase.probe(
+                fromMoves(ENDGAME.substring(0, ENDGAME.length() - 1))));
+    }
+
+    @Test
+    public void computerPlaysItOnlyWithinItsSearchDepth() {
+        // no column, so only the search answers it
+        int searched = Connect4Board.COLUMNS;
+        ComputerPlayer search = always(searched);
+        ComputerOpponent hard = new ComputerOpponent(Difficulty.HARD, null, tablebase, search);
+        ComputerOpponent medium = new ComputerOpponent(Difficulty.MEDIUM, null, tablebase, search);
+
+        Connect4Board board = fromMoves(ENDGAME);
+        assertEquals(Tablebase.move(tablebase.probe(board)), hard.bestMove(board));
+        assertEquals(searched, medium.bestMove(board));
+
+        while (Connect4Board.CELLS - board.getMoves() > Difficulty.MEDIUM.getDepth()) {
+            board.play(Tablebase.move(tablebase.probe(board)));
+        }
+        assertEquals(CONTINUE, board.status());
+        assertEquals(Tablebase.move(tablebase.probe(board)), medium.bestMove(board));
+        // a computer without a search depth can be kept out of it
+        ComputerOpponent never = new ComputerOpponent(Difficulty.MEDIUM, null, tablebase, 0,
+                search);
+        assertEquals(searched, never.bestMove(board));
+    }
+
+    /**
+     * Checks a position and every position one move after it against a
+     * search to the end of the game
+     */
+    private static void checkPositionAndReplies(Connect4Board board) {
+        check(board);
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            if (board.canPlay(col) && !board.isWinningMove(col)) {
+                board.play(col);
+                check(board);
+                board.undo(col);
+            }
+        }
+    }
+
+    private static void check(Connect4Board board) {
+        int result = tablebase.probe(board);
+        assertNotEquals(Tablebase.NOT_FOUND, result);
+        int score = solve(board);
+        int expected = score > 0 ? Tablebase.WIN : score < 0 ? Tablebase.LOSS : Tablebase.DRAW;
+        assertEquals(expected, Tablebase.outcome(result));
+        if (score != 0) {
+            assertEquals(100 - Math.abs(score), Tablebase.distance(result));
+        }
+        // the move keeps the result
+        int col = Tablebase.move(result);
+        assertTrue(board.canPlay(col));
+        if (!board.isWinningMove(col)) {
+            board.play(col);
+            int reply = solve(board);
+            board.undo(col);
+            assertEquals(score, reply > 0 ? 1 - reply : reply < 0 ? -reply - 1 : 0);
+        }
+    }
+
+    /**
+     * Plain minimax to the end of the game
+     * @return 100 - d for a win in d plies, d - 100 for a loss, 0 for a draw
+     */
+    private static int solve(Connect4Board board) {
+        if (board.getMoves() == Connect4Board.CELLS) {
+            return 0;
+        }
+        int best = Integer.MIN_VALUE;
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            if (!board.canPlay(col)) {
+                continue;
+            }
+            if (board.isWinningMove(col)) {
+                return 99;
+            }
+            board.play(col);
+            int reply = solve(board);
+            board.undo(col);
+            best = Math.max(best, reply > 0 ? 1 - reply : reply < 0 ? -reply - 1 : 0);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,39 @@
+package Test;
+
+import core.ThinkBudget;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThinkBudgetTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void busyComputerGetsLessTime() throws Exception {
+        // half of one core, so a one second window allows 500 ms of thinking
+        ThinkBudget budget = new ThinkBudget(1000, 10, 50, 1);
+        assertEquals(1000 * MILLIS, budget.getMoveNanos());
+        budget.spent(4000 * MILLIS);
+        assertEquals(1000 * MILLIS, budget.getMoveNanos());
+
+        Thread.sleep(1050);
+        budget.spent(1000 * MILLIS);
+        long cut = budget.getMoveNanos();
+        assertTrue(cut < 200 * MILLIS);
+        assertTrue(cut >= 10 * MILLIS);
+
+        // an idle window gives a quarter back
+        Thread.sleep(1050);
+        budget.spent(0);
+        assertEquals(cut + cut / 4, budget.getMoveNanos());
+    }
+
+    @Test
+    public void neverBelowTheMinimum() throws Exception {
+        ThinkBudget budget = new ThinkBudget(1000, 10, 50, 1);
+        Thread.sleep(1050);
+        budget.spent(1000000 * MILLIS);
+        assertEquals(10 * MILLIS, budget.getMoveNanos());
+    }
+}
@@ -0,0 +1,54 @@
+package Test;
+
+import core.Connect4Board;
+import core.TranspositionTable;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TranspositionTableTest {
+
+    @Test
+    public void storedEntryIsFound() {
+        TranspositionTable table = new TranspositionTable(1024);
+        Connect4Board board = new Connect4Board();
+        board.play(3);
+        long key = board.key();
+
+        assertEquals(TranspositionTable.NOT_FOUND, table.probe(key));
+        table.store(key, -957, 5, TranspositionTable.LOWER_BOUND, 2);
+        long entry = table.probe(key);
+
+        assertEquals(-957, TranspositionTable.score(entry));
+        assertEquals(5, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER_BOUND, TranspositionTable.flag(entry));
+        assertEquals(2, TranspositionTable.move(entry));
+        assertEquals(1, table.getHits());
+        assertEquals(1, table.getMisses());
+    }
+
+    @Test
+    public void deepEntrySurvivesShallowStores() {
+        // a single bucket, so every key collides
+        TranspositionTable table = new TranspositionTable(1);
+        table.store(1, 10, 9, TranspositionTable.EXACT, 3);
+        table.store(2, 20, 1, TranspositionTable.EXACT, 3);
+        table.store(3, 30, 1, TranspositionTable.EXACT, 3);
+
+        assertEquals(10, TranspositionTable.score(table.probe(1)));
+        assertEquals(TranspositionTable.NOT_FOUND, table.probe(2));
+        assertEquals(30, TranspositionTable.score(table.probe(3)));
+        assertEquals(1, table.getCollisions());
+    }
+
+    @Test
+    public void keysDifferForSideToMove() {
+        Connect4Board first = new Connect4Board();
+        first.play(0);
+        first.play(1);
+        Connect4Board second = new Connect4Board();
+        second.play(1);
+        second.play(0);
+        assertTrue(first.key() != second.key());
+    }
+}
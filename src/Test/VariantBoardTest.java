@@ -0,0 +1,131 @@
+package Test;
+
+import core.Connect4Board;
+import core.Connect4Constants;
+import core.GameBoard;
+import core.Variant;
+import core.VariantBoard;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Property test comparing core.VariantBoard against a full-board scan for
+ * connect N, on boards that fit in one long and boards that do not.
+ */
+public class VariantBoardTest implements Connect4Constants {
+
+    private static final int GAMES = Integer.getInteger("connect4.propertyGames", 1000000) / 100;
+    private static final long SEED = Long.getLong("connect4.propertySeed", 42L);
+
+    private static final Variant[] VARIANTS = {
+        Variant.of(6, 7, 4), Variant.of(4, 4, 3), Variant.of(7, 8, 5), Variant.of(3, 15, 3),
+        Variant.of(8, 8, 4), Variant.of(9, 10, 5), Variant.of(16, 15, 6), Variant.of(16, 2, 16),
+    };
+
+    @Test
+    public void statusMatchesFullScanOnRandomGames() {
+        Random random = new Random(SEED);
+        for (Variant variant : VARIANTS) {
+            for (int game = 0; game < GAMES; game++) {
+                GameBoard board = VariantBoard.create(variant);
+                char[][] reference = new char[variant.getRows()][variant.getColumns()];
+                for (char[] row : reference) {
+                    Arrays.fill(row, BLANK);
+                }
+                int status = CONTINUE;
+
+                while (status == CONTINUE) {
+                    int col = random.nextInt(variant.getColumns());
+                    if (!board.canPlay(col)) {
+                        assertTrue(reference[0][col] != BLANK);
+                        continue;
+                    }
+                    char token = board.isPlayer1Turn() ? PLAYER_1 : PLAYER_2;
+                    int row = board.play(col);
+                    assertEquals(BLANK, reference[row][col]);
+                    reference[row][col] = token;
+                    assertEquals(token, board.getToken(row, col));
+
+                    status = board.status();
+                    assertEquals(variant + " game " + game + " seed " + SEED,
+                            referenceStatus(reference, variant.getConnect()), status);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void standardVariantMatchesConnect4Board() {
+        Random random = new Random(SEED);
+        for (int game = 0; game < GAMES; game++) {
+            GameBoard variant = VariantBoard.create(Variant.STANDARD);
+            Connect4Board board = new Connect4Board();
+            while (board.status() == CONTINUE) {
+                int col = random.nextInt(Connect4Board.COLUMNS);
+                assertEquals(board.canPlay(col), variant.canPlay(col));
+                if (board.canPlay(col)) {
+                    assertEquals(board.play(col), variant.play(col));
+                    assertEquals(board.status(), variant.status());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void standardBoardIsConnect4Board() {
+        assertTrue(GameBoard.create(Variant.of(6, 7, 4)) instanceof Connect4Board);
+        assertEquals(Variant.STANDARD, GameBoard.create(Variant.STANDARD).getVariant());
+        assertTrue(GameBoard.create(Variant.of(6, 7, 5)) instanceof VariantBoard);
+    }
+
+    @Test
+    public void rejectsUnwinnableVariant() {
+        try {
+            Variant.of(4, 5, 6);
+            fail("connect 6 cannot be made on 4 by 5");
+        } catch (IllegalArgumentException expected) {
+            assertEquals(Variant.STANDARD, Variant.orStandard(4, 5, 6));
+        }
+    }
+
+    /**
+     * Scans every cell for connect tokens in a row in each direction
+     */
+    private static int referenceStatus(char[][] board, int connect) {
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+        for (int i = 0; i < board.length; i++) {
+            for (int j = 0; j < board[i].length; j++) {
+                if (board[i][j] == BLANK) {
+                    continue;
+                }
+                for (int[] direction : directions) {
+                    int length = 1;
+                    while (length < connect) {
+                        int row = i + direction[0] * length;
+                        int col = j + direction[1] * length;
+                        if (row >= board.length || col < 0 || col >= board[i].length
+                                || board[row][col] != board[i][j]) {
+                            break;
+                        }
+                        length++;
+                    }
+                    if (length == connect) {
+                        return board[i][j] == PLAYER_1 ? P1_WINNER : P2_WINNER;
+                    }
+                }
+            }
+        }
+        for (char[] row : board) {
+            for (char cell : row) {
+                if (cell == BLANK) {
+                    return CONTINUE;
+                }
+            }
+        }
+        return TIE;
+    }
+}
@@ -0,0 +1,155 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.ComputerOpponent class is the computer in a one player game. It
+ * plays opening moves from the shared core.OpeningBook at the difficulties
+ * that play the book, late moves from the shared core.Tablebase when the
+ * position is in it, and searches for every other move, with
+ * core.Connect4Solver or, when ai.engine is mcts, with
+ * core.MonteCarloPlayer.
+ *
+ * The tablebase plays perfectly, so it is only used where the computer's
+ * own play would be as good. A search sees the end of the game once the
+ * empty cells are within its difficulty's depth, so there the tablebase
+ * only saves time. A core.MonteCarloPlayer has no depth to compare with,
+ * so with mcts only HARD, which runs the most playouts, uses the tablebase
+ * and the easier difficulties never do.
+ *
+ */
+
+import java.util.concurrent.ForkJoinPool;
+
+public class ComputerOpponent implements ComputerPlayer {
+
+    private final Difficulty difficulty;
+    private final OpeningBook openingBook;
+    private final Tablebase tablebase;
+    // most empty cells at which the tablebase is used
+    private final int tablebaseEmpty;
+    private final ComputerPlayer search;
+
+    /**
+     * Constructor for a computer opponent without a tablebase
+     * @param difficulty strength of the computer
+     * @param openingBook book of opening moves, or null for none
+     * @param search strategy used once the game leaves the book
+     */
+    public ComputerOpponent(Difficulty difficulty, OpeningBook openingBook,
+                            ComputerPlayer search) {
+        this(difficulty, openingBook, null, search);
+    }
+
+    /**
+     * Constructor for a computer opponent that searches to the depth of its
+     * difficulty
+     * @param difficulty strength of the computer
+     * @param openingBook book of opening moves, or null for none
+     * @param tablebase solved endgames, used within the difficulty's depth
+     *                  of the end, or null for none
+     * @param search strategy used for positions in neither
+     */
+    public ComputerOpponent(Difficulty difficulty, OpeningBook openingBook, Tablebase tablebase,
+                            ComputerPlayer search) {
+        this(difficulty, openingBook, tablebase, difficulty.getDepth(), search);
+    }
+
+    /**
+     * Constructor for a computer opponent
+     * @param difficulty strength of the computer
+     * @param openingBook book of opening moves, or null for none
+     * @param tablebase solved endgames, or null for none
+     * @param tablebaseEmpty most empty cells at which the tablebase is
+     *                       used, 0 for never
+     * @param search strategy used for positions in neither
+     */
+    public ComputerOpponent(Difficulty difficulty, OpeningBook openingBook, Tablebase tablebase,
+                            int tablebaseEmpty, ComputerPlayer search) {
+        this.difficulty = difficulty;
+        this.openingBook = openingBook;
+        this.tablebase = tablebase;
+        this.tablebaseEmpty = tablebaseEmpty;
+        this.search = search;
+    }
+
+    /**
+     * Creates the computer opponent for a new one player session
+     * @param difficulty strength chosen by the player
+     * @param config server settings
+     * @param openingBook book of opening moves, or null for none
+     * @param tablebase solved endgames, or null for none
+     * @param tables tables of positions searched, shared by every session
+     * @param searchPool threads for HARD searches, or null to search on the
+     *                   calling thread
+     * @return the computer opponent
+     */
+    public static ComputerOpponent create(Difficulty difficulty, ServerConfig config,
+                                          OpeningBook openingBook, Tablebase tablebase,
+                                          SearchTables tables, ForkJoinPool searchPool) {
+        if (config.getAiEngine().equals("mcts")) {
+            // each step down in difficulty runs a quarter of the playouts
+            int steps = Difficulty.HARD.ordinal() - difficulty.ordinal();
+            int playouts = config.getAiPlayouts() >> (2 * steps);
+            int tablebaseEmpty = difficulty == Difficulty.HARD ? Connect4Board.CELLS : 0;
+            return new ComputerOpponent(difficulty, openingBook, tablebase, tablebaseEmpty,
+                    new MonteCarloPlayer(playouts, config.getAiTimeLimitMillis(),
+                            System.nanoTime(), difficulty == Difficulty.HARD ? searchPool : null));
+        }
+        TranspositionTable table = tables.get(difficulty);
+        ComputerPlayer search;
+        if (difficulty == Difficulty.HARD && searchPool != null) {
+            search = new ParallelSolver(difficulty.getDepth(), config.getAiTimeLimitMillis(),
+                    table, searchPool);
+        } else {
+            search = new Connect4Solver(difficulty.getDepth(), config.getAiTimeLimitMillis(), table);
+        }
+        return new ComputerOpponent(difficulty, openingBook, tablebase, search);
+    }
+
+    /**
+     * Chooses the computer's move, from the book or the tablebase if the
+     * position is in either
+     * @param board current game, left unchanged
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board) {
+        int col = knownMove(board);
+        return board.canPlay(col) ? col : search.bestMove(board);
+    }
+
+    /**
+     * Chooses the computer's move, from the book or the tablebase if the
+     * position is in either
+     * @param board current game, left unchanged
+     * @param deadline System.nanoTime() by which the move must be chosen
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board, long deadline) {
+        int col = knownMove(board);
+        return board.canPlay(col) ? col : search.bestMove(board, deadline);
+    }
+
+    /**
+     * @return the move from the book or the tablebase, or -1 if neither
+     *         has the position
+     */
+    private int knownMove(Connect4Board board) {
+        if (openingBook != null && difficulty.playsOpeningBook()) {
+            int col = openingBook.lookup(board);
+            if (col >= 0) {
+                return col;
+            }
+        }
+        if (tablebase != null && Connect4Board.CELLS - board.getMoves() <= tablebaseEmpty) {
+            int result = tablebase.probe(board);
+            if (result != Tablebase.NOT_FOUND) {
+                return Tablebase.move(result);
+            }
+        }
+        return -1;
+    }
+}
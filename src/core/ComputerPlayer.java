@@ -0,0 +1,29 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.ComputerPlayer interface is implemented by every strategy that
+ * can choose the computer's move in a one player game.
+ *
+ */
+
+public interface ComputerPlayer {
+
+    /**
+     * Chooses a move for the player whose turn it is
+     * @param board current game, left unchanged
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    int bestMove(Connect4Board board);
+
+    /**
+     * Chooses a move for the player whose turn it is, answering by the
+     * deadline with the best move found so far
+     * @param board current game, left unchanged
+     * @param deadline System.nanoTime() by which the move must be chosen
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    int bestMove(Connect4Board board, long deadline);
+}
@@ -0,0 +1,312 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Connect4Board class holds the state of a single Connect4 game as
+ * two bitboards (one per player) plus the height of every column.
+ *
+ * Each column uses HEIGHT + 1 bits, the extra bit on top of every column is
+ * always empty so that shifting a board never wraps a line from one column
+ * into the next. Bit (col * (HEIGHT + 1) + h) is the cell h spaces up from
+ * the bottom of column col.
+ *
+ */
+
+public class Connect4Board implements GameBoard {
+
+    public static final int ROWS = 6;
+    public static final int COLUMNS = 7;
+    public static final int CELLS = ROWS * COLUMNS;
+
+    // bits used by one column including the empty sentinel bit on top
+    private static final int COLUMN_BITS = ROWS + 1;
+
+    // shifts that move a cell to its neighbour along each line direction
+    private static final int VERTICAL = 1;
+    private static final int HORIZONTAL = COLUMN_BITS;
+    private static final int DIAGONAL_UP = COLUMN_BITS + 1;
+    private static final int DIAGONAL_DOWN = COLUMN_BITS - 1;
+
+    // one bit at the bottom of every column, and every playable cell
+    static final long BOTTOM_MASK = bottomMask();
+    static final long BOARD_MASK = BOTTOM_MASK * ((1L << ROWS) - 1);
+
+    private long p1Bits;
+    private long p2Bits;
+    private final byte[] heights;
+    private int moves;
+    private long lastMoveBit;
+
+    /**
+     * Constructor for an empty board, player 1 moves first
+     */
+    public Connect4Board() {
+        heights = new byte[COLUMNS];
+    }
+
+    /**
+     * Copy constructor, used to give the AI its own board to search on
+     * @param other board to copy
+     */
+    public Connect4Board(Connect4Board other) {
+        p1Bits = other.p1Bits;
+        p2Bits = other.p2Bits;
+        heights = other.heights.clone();
+        moves = other.moves;
+        lastMoveBit = other.lastMoveBit;
+    }
+
+    @Override
+    public Variant getVariant() {
+        return Variant.STANDARD;
+    }
+
+    /**
+     * Determines if the column specified is a valid move
+     * @param col the column, counting from 0
+     * @return true if the column is on the board and is not full
+     */
+    @Override
+    public boolean canPlay(int col) {
+        return col >= 0 && col < COLUMNS && heights[col] < ROWS;
+    }
+
+    /**
+     * Drops a token for the player whose turn it is into the column. The
+     * caller is expected to have checked canPlay first.
+     * @param col the column, counting from 0
+     * @return the row the token landed in, counting from 0 at the top
+     */
+    @Override
+    public int play(int col) {
+        long bit = 1L << (col * COLUMN_BITS + heights[col]);
+        if (isPlayer1Turn()) {
+            p1Bits |= bit;
+        } else {
+            p2Bits |= bit;
+        }
+        heights[col]++;
+        moves++;
+        lastMoveBit = bit;
+        return ROWS - heights[col];
+    }
+
+    /**
+     * Takes back the last token dropped into the column. Only used by the
+     * AI search, status() is not valid again until the next play.
+     * @param col the column, counting from 0
+     */
+    public void undo(int col) {
+        heights[col]--;
+        moves--;
+        long bit = ~(1L << (col * COLUMN_BITS + heights[col]));
+        if (isPlayer1Turn()) {
+            p1Bits &= bit;
+        } else {
+            p2Bits &= bit;
+        }
+    }
+
+    /**
+     * Determines if dropping a token into the column wins the game for the
+     * player whose turn it is
+     * @param col a playable column, counting from 0
+     * @return true if the move makes four in a row
+     */
+    public boolean isWinningMove(int col) {
+        long bit = 1L << (col * COLUMN_BITS + heights[col]);
+        return hasFour(currentBits() | bit);
+    }
+
+    /**
+     * @return bitboard of the player whose turn it is
+     */
+    long currentBits() {
+        return isPlayer1Turn() ? p1Bits : p2Bits;
+    }
+
+    /**
+     * @return bitboard of the player who moved last
+     */
+    long opponentBits() {
+        return isPlayer1Turn() ? p2Bits : p1Bits;
+    }
+
+    /**
+     * Gets a key that is different for every position. Adding the bottom
+     * row to the occupied cells marks the first empty cell of each column,
+     * and the tokens of the player to move fill in the rest.
+     * @return key of the position, never 0
+     */
+    public long key() {
+        return currentBits() + occupiedBits() + BOTTOM_MASK;
+    }
+
+    /**
+     * Gets the key of this position flipped left to right. A position and
+     * its mirror image have the same best moves, mirrored.
+     * @return key of the mirrored position
+     */
+    public long mirroredKey() {
+        return mirror(key());
+    }
+
+    /**
+     * Flips a bitboard left to right, one column at a time
+     * @param bits bitboard to flip
+     * @return the flipped bitboard
+     */
+    static long mirror(long bits) {
+        long column = (1L << COLUMN_BITS) - 1;
+        long mirrored = 0;
+        for (int col = 0; col < COLUMNS; col++) {
+            mirrored |= ((bits >>> (col * COLUMN_BITS)) & column) << ((COLUMNS - 1 - col) * COLUMN_BITS);
+        }
+        return mirrored;
+    }
+
+    /**
+     * @return bitboard of every token on the board
+     */
+    long occupiedBits() {
+        return p1Bits | p2Bits;
+    }
+
+    /**
+     * @return true if it is player 1's turn
+     */
+    @Override
+    public boolean isPlayer1Turn() {
+        return (moves & 1) == 0;
+    }
+
+    /**
+     * @return number of tokens on the board
+     */
+    @Override
+    public int getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gets the token in a cell
+     * @param row row counting from 0 at the top
+     * @param col column counting from 0
+     * @return PLAYER_1, PLAYER_2 or BLANK
+     */
+    @Override
+    public char getToken(int row, int col) {
+        long bit = 1L << (col * COLUMN_BITS + (ROWS - 1 - row));
+        if ((p1Bits & bit) != 0) {
+            return PLAYER_1;
+        }
+        if ((p2Bits & bit) != 0) {
+            return PLAYER_2;
+        }
+        return BLANK;
+    }
+
+    /**
+     * Checks if the last move won or filled the board. Only the lines
+     * through the last token are looked at, so this must be called after
+     * every move.
+     *
+     * @return P1_WINNER, P2_WINNER, CONTINUE if no winner yet, or TIE
+     */
+    @Override
+    public int status() {
+        if (moves > 0 && lastMoveWins()) {
+            // the turn has already switched to the other player
+            return isPlayer1Turn() ? P2_WINNER : P1_WINNER;
+        }
+        // no winner && no available moves so must be tie
+        return moves == CELLS ? TIE : CONTINUE;
+    }
+
+    /**
+     * Checks the four lines through the last token for four in a row
+     * @return true if the player who moved last has won
+     */
+    private boolean lastMoveWins() {
+        long bits = opponentBits();
+        return runLength(bits, VERTICAL) >= 4 || runLength(bits, HORIZONTAL) >= 4
+                || runLength(bits, DIAGONAL_UP) >= 4 || runLength(bits, DIAGONAL_DOWN) >= 4;
+    }
+
+    /**
+     * Counts the tokens in an unbroken run through the last move. The empty
+     * sentinel row stops a run from wrapping into the next column.
+     * @param bits bitboard of the player who moved last
+     * @param shift direction of the line
+     * @return length of the run, capped at 7
+     */
+    private int runLength(long bits, int shift) {
+        int count = 1;
+        long bit = lastMoveBit << shift;
+        for (int i = 0; i < 3 && (bits & bit) != 0; i++) {
+            count++;
+            bit <<= shift;
+        }
+        bit = lastMoveBit >>> shift;
+        for (int i = 0; i < 3 && (bits & bit) != 0; i++) {
+            count++;
+            bit >>>= shift;
+        }
+        return count;
+    }
+
+    /**
+     * Checks a single player's bitboard for four in a row. Each step
+     * ANDs the board with itself shifted along one direction, so after two
+     * steps a bit survives only where four tokens line up.
+     * @param bits bitboard of one player
+     * @return true if the bitboard contains four in a row
+     */
+    static boolean hasFour(long bits) {
+        return hasFour(bits, VERTICAL) || hasFour(bits, HORIZONTAL)
+                || hasFour(bits, DIAGONAL_UP) || hasFour(bits, DIAGONAL_DOWN);
+    }
+
+    private static boolean hasFour(long bits, int shift) {
+        long pairs = bits & (bits >>> shift);
+        return (pairs & (pairs >>> (2 * shift))) != 0;
+    }
+
+    /**
+     * Finds every empty cell that would complete four in a row for a player,
+     * whether or not the cell can be played yet
+     * @param bits bitboard of one player
+     * @param occupied bitboard of both players
+     * @return bitboard of the winning cells
+     */
+    static long winningCells(long bits, long occupied) {
+        // vertical, only upwards since tokens stack from the bottom
+        long cells = (bits << 1) & (bits << 2) & (bits << 3);
+        cells |= winningCells(bits, HORIZONTAL);
+        cells |= winningCells(bits, DIAGONAL_UP);
+        cells |= winningCells(bits, DIAGONAL_DOWN);
+        return cells & (BOARD_MASK ^ occupied);
+    }
+
+    private static long winningCells(long bits, int shift) {
+        long cells = 0;
+        // two tokens to one side, then one or none on the other
+        long pair = (bits << shift) & (bits << (2 * shift));
+        cells |= pair & (bits << (3 * shift));
+        cells |= pair & (bits >>> shift);
+        pair = (bits >>> shift) & (bits >>> (2 * shift));
+        cells |= pair & (bits << shift);
+        cells |= pair & (bits >>> (3 * shift));
+        return cells;
+    }
+
+    private static long bottomMask() {
+        long mask = 0;
+        for (int col = 0; col < COLUMNS; col++) {
+            mask |= 1L << (col * COLUMN_BITS);
+        }
+        return mask;
+    }
+}
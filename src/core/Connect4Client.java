@@ -7,15 +7,37 @@ package core;
  * The core.Connect4Client class is the client side to a Connect4 game.
  * 1 and 2 Player game play is supported with a Graphic User Interface
  *
+ * If the connection to the server fails mid-game, the client reconnects
+ * for up to RECONNECT_MILLIS and takes back its seat with the id the
+ * server sent at the start, then redraws the board from the moves so far.
+ *
+ * Clicks go straight to the game thread: the mouse handler hands the
+ * column over a SynchronousQueue that the game thread waits on during this
+ * player's turn, so a move is sent as soon as it is clicked, and clicks at
+ * any other time are dropped. Each update from the server is drawn with a
+ * single runLater. The time from click to send is printed when the game
+ * ends.
+ *
+ * A two player game can be asked for on another board. The grid is drawn
+ * for that board, and drawn again if the server starts the game on
+ * another one, as it does when the other player cannot play it.
+ *
+ * The client can also watch someone else's game by its session number,
+ * which players see in their title. A spectator is sent the whole game
+ * after every move and only draws it.
+ *
+ * Pressing H during this player's turn asks the server for a hint, and the
+ * prompt names the column that scored best.
+ *
  */
 
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
-import javafx.scene.Node;
 import javafx.scene.Scene;
 import javafx.scene.control.Label;
+import javafx.scene.input.KeyCode;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.VBox;
@@ -23,31 +45,52 @@ import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.stage.Stage;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
 import java.util.Scanner;
+import java.util.concurrent.SynchronousQueue;
 
 public class Connect4Client extends Application implements Connect4Constants {
 
+    // how long to keep trying to get back into a game after losing the connection
+    private static final int RECONNECT_MILLIS = 30000;
+    private static final int RECONNECT_PAUSE_MILLIS = 1000;
+
     private Scanner scan = new Scanner(System.in);
 
     private Label prompt = new Label();
     private GridPane grid;
+    // spaces of the board by row and column, row 0 at the top, only
+    // touched on the FX thread
+    private GameSpace[][] cells;
     private boolean twoPlayerGame;
+    // board asked for in a two player game
+    private Variant variant = Variant.STANDARD;
+    // board the grid is drawn for, only touched by the game thread once
+    // it starts
+    private Variant shownVariant;
+    // number of the session to watch, or 0 to play
+    private int watchedSession;
+    // true once the title shows the session number
+    private boolean sessionShown;
+    // game type sent to the server, including the computer's difficulty
+    private int gameChoice;
     private Label title = new Label();
     private char myToken;
     private char otherToken;
+    // only touched by the game thread
     private boolean myTurn;
-    private int selectedColumn;
-    private DataInputStream fromServer;
-    private DataOutputStream toServer;
+    // columns clicked, taken by the game thread while it waits for a move
+    private final SynchronousQueue<Click> clicks = new SynchronousQueue<>();
+    // nanoseconds from a click to its move being sent
+    private final Histogram clickToSend = new Histogram();
+    // framed connection to the server, legacy if the server is older
+    private GameStream server;
     private boolean continueToPlay = true;
-    // Wait for the player to mark a cell
-    private boolean waiting = true;
     // Host name or ip
     private String host = "localhost";
+    // Port of the server
+    private int port = 8000;
 
     /**
      * Main entry point
@@ -66,17 +109,16 @@ public class Connect4Client extends Application implements Connect4Constants {
     @Override
     public void start(Stage primaryStage) {
         pickNumPlayers();
-        // add correct styling to each gamespace in board
         grid = new GridPane();
-        for (int i = 0; i < 6; i++) {
-            for (int j = 0; j < 7; j++) {
-                grid.add(new GameSpace(j), j, i);
-            }
-        }
+        shownVariant = variant;
+        buildGrid(variant);
 
         //initialize title
 
-        if (twoPlayerGame) {
+        if (watchedSession != 0) {
+            title.setText("You are watching session " + watchedSession);
+        }
+        else if (twoPlayerGame) {
             title.setText("You are playing Connect4 - 2 player");
         }
         else {
@@ -99,6 +141,12 @@ public class Connect4Client extends Application implements Connect4Constants {
         root.getChildren().add(grid);
         root.setAlignment(Pos.CENTER);
         Scene scene = new Scene(root, 300, 250);
+        // a hint goes to the game thread the way a click does
+        scene.setOnKeyPressed(e -> {
+            if (e.getCode() == KeyCode.H) {
+                clicks.offer(new Click(HINT_REQUEST, System.nanoTime()));
+            }
+        });
         primaryStage.setScene(scene);
 
         primaryStage.show();
@@ -109,23 +157,97 @@ public class Connect4Client extends Application implements Connect4Constants {
     }
 
     /**
-     * Method that asks the user if they want to play a 1 or 2 player game
+     * Method that asks the user if they want to play a 1 or 2 player game,
+     * or watch one
      */
     private void pickNumPlayers() {
         String decision;
         System.out.println("Enter 'P' if you want to play against another player; " +
-                "Enter 'C' to play against computer.");
+                "Enter 'C' to play against computer; Enter 'W' to watch a game.");
         decision = scan.nextLine();
 
         // if invalid input
-        while (!decision.equals("P") && !decision.equals("C")) {
+        while (!decision.equals("P") && !decision.equals("C") && !decision.equals("W")) {
             System.out.println("Invalid input.\n" +
                     "Enter 'P' if you want to play against another player; " +
-                    "Enter 'C' to play against computer.");
+                    "Enter 'C' to play against computer; Enter 'W' to watch a game.");
             decision = scan.nextLine();
         }
 
+        if (decision.equals("W")) {
+            watchedSession = pickSession();
+            return;
+        }
         twoPlayerGame = !decision.equals("C");
+        if (twoPlayerGame) {
+            variant = pickVariant();
+        }
+        gameChoice = twoPlayerGame ? TWO_PLAYER_GAME : pickDifficulty();
+        System.out.println("Press H during your turn for a hint.");
+    }
+
+    /**
+     * Method that asks the user which game to watch
+     * @return number of the session
+     */
+    private int pickSession() {
+        while (true) {
+            System.out.println("Enter the number of the session to watch.");
+            try {
+                int session = Integer.parseInt(scan.nextLine().trim());
+                if (session > 0) {
+                    return session;
+                }
+            } catch (NumberFormatException ex) {
+                // asked again below
+            }
+            System.out.println("Invalid input.");
+        }
+    }
+
+    /**
+     * Method that asks the user which board to play a 2 player game on
+     * @return the board, standard Connect4 if the user just presses Enter
+     */
+    private Variant pickVariant() {
+        while (true) {
+            System.out.println("Enter rows, columns and tokens in a row to win, like '6 7 4'; " +
+                    "press Enter for standard Connect4.");
+            String[] decision = scan.nextLine().trim().split("\\s+");
+            if (decision.length == 1 && decision[0].isEmpty()) {
+                return Variant.STANDARD;
+            }
+            try {
+                if (decision.length == 3) {
+                    return Variant.of(Integer.parseInt(decision[0]),
+                            Integer.parseInt(decision[1]), Integer.parseInt(decision[2]));
+                }
+                System.out.println("Invalid input.");
+            } catch (IllegalArgumentException ex) {
+                // NumberFormatException is an IllegalArgumentException too
+                System.out.println("Invalid input. " + ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Method that asks the user how strong the computer should be
+     * @return the one player game type to send to the server
+     */
+    private int pickDifficulty() {
+        System.out.println("Enter 'E', 'M' or 'H' for an easy, medium or hard computer; " +
+                "press Enter to let the server choose.");
+        String decision = scan.nextLine().trim().toUpperCase();
+        switch (decision) {
+            case "E":
+                return ONE_PLAYER_EASY;
+            case "M":
+                return ONE_PLAYER_MEDIUM;
+            case "H":
+                return ONE_PLAYER_HARD;
+            default:
+                return ONE_PLAYER_GAME;
+        }
     }
 
     /**
@@ -133,11 +255,16 @@ public class Connect4Client extends Application implements Connect4Constants {
      */
     private void connectToServer() {
         try {
-            Socket socket = new Socket(host, 8000);
-
-            // create input and output streams to communicate with server
-            fromServer = new DataInputStream(socket.getInputStream());
-            toServer = new DataOutputStream(socket.getOutputStream());
+            Socket socket = new Socket(host, port);
+
+            // create a stream to communicate with server and ask for framed messages
+            server = new GameStream(socket);
+            if (watchedSession != 0) {
+                server.writeWatch(watchedSession);
+                new Thread(this::watchGame).start();
+                return;
+            }
+            server.writeHello();
 
         } catch (IOException ex) {
             ex.printStackTrace();
@@ -146,7 +273,7 @@ public class Connect4Client extends Application implements Connect4Constants {
         // control game on thread
         new Thread(() -> {
            try {
-               myToken = fromServer.readChar();
+               myToken = server.readToken(true);
 
                if (myToken == PLAYER_1) {
                    otherToken = PLAYER_2;
@@ -158,15 +285,18 @@ public class Connect4Client extends Application implements Connect4Constants {
                    });
 
                    if (twoPlayerGame) {
-                       toServer.writeInt(TWO_PLAYER_GAME);
-                   }
-                   else {
-                       toServer.writeInt(ONE_PLAYER_GAME);
-                       System.out.println("sent");
+                       server.writeChoice(variant);
+                   } else {
+                       server.writeChoice(gameChoice);
                    }
 
                    // Receive startup notification from the server
-                   fromServer.readInt(); // Whatever read is ignored
+                   if (server.readStart() == SERVER_BUSY) {
+                       showServerBusy();
+                       return;
+                   }
+                   showVariant(server.getVariant());
+                   showSession();
 
                    if (twoPlayerGame) {
                        // The other player has joined
@@ -191,17 +321,22 @@ public class Connect4Client extends Application implements Connect4Constants {
                }
 
                while (continueToPlay) {
-                   if (myToken == PLAYER_1) {
-                       waitForPlayerAction(); // Wait for player 1 to move
-                       sendMove(); // Send the move to the server
-                       receiveInfoFromServer(); // Receive info from the server
-                   }
-                   else if (myToken == PLAYER_2) {
-                       receiveInfoFromServer(); // Receive info from the server
-                       waitForPlayerAction(); // Wait for player 2 to move
-                       sendMove(); // Send player 2's move to the server
+                   try {
+                       if (myTurn) {
+                           sendMove(); // Send this player's next click to the server
+                       }
+                       else {
+                           receiveInfoFromServer(); // Receive the other player's move
+                       }
+                   } catch (IOException ex) {
+                       if (!reconnect()) {
+                           Platform.runLater(() ->
+                                   prompt.setText("Lost the connection to the server."));
+                           return;
+                       }
                    }
                }
+               reportClickToSend();
 
            } catch (Exception ex) {
                ex.printStackTrace();
@@ -210,118 +345,268 @@ public class Connect4Client extends Application implements Connect4Constants {
     }
 
     /**
-     * Waits for the player to click on a column
-     * @throws InterruptedException due to Thread class
+     * Draws the watched game after every move until it is over
      */
-    private void waitForPlayerAction() throws InterruptedException {
-        while (waiting) {
-            Thread.sleep(100);
+    private void watchGame() {
+        try {
+            // the token means nothing to a spectator
+            server.readToken(false);
+            GameBoard board;
+            while ((board = server.readWatched()) != null) {
+                int status = board.status();
+                String message;
+                if (status == P1_WINNER || status == P2_WINNER) {
+                    message = "Player " + status + " won!";
+                } else if (status == TIE) {
+                    message = "Tie game!";
+                } else {
+                    message = "Waiting for player " + (board.isPlayer1Turn() ? 1 : 2) +
+                            " to make a move...";
+                }
+                redraw(board, message);
+                if (status != CONTINUE) {
+                    return;
+                }
+            }
+            Platform.runLater(() -> prompt.setText("Session " + watchedSession +
+                    " is not being played."));
+        } catch (IOException ex) {
+            Platform.runLater(() -> prompt.setText("The game has ended."));
         }
-
-        waiting = true;
     }
 
     /**
-     * Sends move to server
-     * @throws IOException from server communication
+     * Adds the session number to the title once the server has sent it, so
+     * the player can tell others which game to watch
      */
-    private void sendMove() throws IOException {
-        toServer.writeInt(selectedColumn);
-        int valid = fromServer.readInt();
+    private void showSession() {
+        int session = server.getSession();
+        if (sessionShown || session == 0) {
+            return;
+        }
+        sessionShown = true;
+        Platform.runLater(() -> title.setText(title.getText() + " Session " + session + "."));
+    }
 
-        if (valid == INVALID_TURN) {
-            Platform.runLater(() -> prompt.setText("Invalid Move - Please try again."));
-            waiting = true; //new
+    /**
+     * Connects to the server again and takes back this player's seat,
+     * then redraws the board from the moves the server sends
+     * @return true if the game can carry on
+     * @throws InterruptedException due to Thread class
+     */
+    private boolean reconnect() throws InterruptedException {
+        long id = server.getResumeId();
+        if (id == 0) {
+            // the server did not offer to keep the seat
+            return false;
+        }
+        Platform.runLater(() -> prompt.setText("Connection lost, reconnecting..."));
+        long deadline = System.currentTimeMillis() + RECONNECT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
             try {
-                waitForPlayerAction();
-                sendMove();
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
+                GameStream stream = new GameStream(new Socket(host, port));
+                stream.writeResume(id);
+                // the token of a new connection means nothing here
+                stream.readToken(false);
+                GameBoard board = stream.readResumed();
+                if (board == null) {
+                    // the session is over or gave up waiting
+                    stream.close();
+                    return false;
+                }
+                server = stream;
+                myTurn = board.isPlayer1Turn() == (myToken == PLAYER_1);
+                redraw(board, myTurn
+                        ? "Reconnected. Your turn - please click on a column to make a move."
+                        : "Reconnected. Waiting for the other player to make a move...");
+                return true;
+            } catch (IOException ex) {
+                Thread.sleep(RECONNECT_PAUSE_MILLIS);
             }
-            return;
         }
+        return false;
+    }
+
+    /**
+     * Fills the grid with empty spaces for a board, called on the FX thread
+     * @param board rows and columns to draw
+     */
+    private void buildGrid(Variant board) {
+        grid.getChildren().clear();
+        cells = new GameSpace[board.getRows()][board.getColumns()];
+        // add correct styling to each gamespace in board
+        for (int i = 0; i < board.getRows(); i++) {
+            for (int j = 0; j < board.getColumns(); j++) {
+                cells[i][j] = new GameSpace(j);
+                grid.add(cells[i][j], j, i);
+            }
+        }
+    }
+
+    /**
+     * Draws the grid again if the game is on another board than the one
+     * shown. Updates queued after this see the new grid.
+     * @param board board of the game
+     */
+    private void showVariant(Variant board) {
+        if (!board.equals(shownVariant)) {
+            shownVariant = board;
+            Platform.runLater(() -> buildGrid(board));
+        }
+    }
 
-        // turn is valid
+    /**
+     * Shows the tokens of a board on the grid, in one pulse
+     * @param board the game as the server has it
+     * @param message prompt shown with the board
+     */
+    private void redraw(GameBoard board, String message) {
+        Variant shape = board.getVariant();
+        showVariant(shape);
         Platform.runLater(() -> {
-            prompt.setText("Waiting for " + (myToken == PLAYER_1? "player 2 " : "player 1 ") +
-                    "to make a move...");
+            for (int row = 0; row < shape.getRows(); row++) {
+                for (int col = 0; col < shape.getColumns(); col++) {
+                    cells[row][col].setValue(board.getToken(row, col));
+                }
+            }
+            prompt.setText(message);
         });
+    }
 
-        receiveInfoFromServer(); // status after my turn
-        receiveMove(myToken);
+    /**
+     * Sends the columns this player clicks until the server takes one,
+     * then shows the move. Hints asked for meanwhile are shown as they
+     * come.
+     * @throws IOException from server communication
+     * @throws InterruptedException due to Thread class
+     */
+    private void sendMove() throws IOException, InterruptedException {
+        while (true) {
+            Click click = clicks.take();
+            if (click.column == HINT_REQUEST) {
+                showHint();
+                continue;
+            }
+            server.writeMove(click.column);
+            clickToSend.record(System.nanoTime() - click.nanos);
+            if (server.readMoveResult() != INVALID_TURN) {
+                break;
+            }
+            Platform.runLater(() -> prompt.setText("Invalid Move - Please try again."));
+        }
         myTurn = false;
+        showTurn(myToken, server.readStatus());
     }
 
     /**
-     * Receives status from server
+     * Asks the server to score the columns and names the best one
+     * @throws IOException from server communication
      */
-    private void receiveInfoFromServer(){
-        try {
-            int status = fromServer.readInt();
-            // need to receive last move no matter what
-            if (!myTurn) {
-                receiveMove(otherToken);
-            }
-//            receiveMove(otherToken);
-            if (status == P1_WINNER) {
-                continueToPlay = false;
-                if (myToken == PLAYER_1) {
-                    Platform.runLater(() -> prompt.setText("You won!"));
-                } else {
-                    Platform.runLater(() -> prompt.setText("You lost!"));
-                }
-            } else if (status == P2_WINNER) {
-                continueToPlay = false;
-                if (myToken == PLAYER_1) {
-                    Platform.runLater(() -> prompt.setText("You lost!"));
-                } else {
-                    Platform.runLater(() -> prompt.setText("You won!"));
-                }
-            } else if (status == TIE) {
-                continueToPlay = false;
-                Platform.runLater(() -> prompt.setText("Tie game!"));
-            } else { //continue
-                if (!myTurn) {
-                    myTurn = true;
-                    Platform.runLater(() -> {
-                        prompt.setText("Your turn - please click on a column" +
-                                " to make a move.");
-                    });
-                }
+    private void showHint() throws IOException {
+        int[] scores = new int[0];
+        // only servers that speak protocol version 2 answer
+        if (server.hasVariants()) {
+            server.writeHintRequest();
+            scores = server.readHint();
+        }
+        int best = -1;
+        for (int col = 0; col < scores.length; col++) {
+            if (scores[col] != PositionAnalyzer.UNPLAYABLE
+                    && (best < 0 || scores[col] > scores[best])) {
+                best = col;
             }
-        } catch (IOException ex) {
-            ex.printStackTrace();
         }
+        String message;
+        if (best < 0) {
+            message = "No hint for this game.";
+        } else if (scores[best] > PositionAnalyzer.FORCED) {
+            message = "Hint: column " + (best + 1) + " wins.";
+        } else if (scores[best] < -PositionAnalyzer.FORCED) {
+            message = "Hint: column " + (best + 1) + " holds out longest.";
+        } else {
+            message = "Hint: try column " + (best + 1) + ".";
+        }
+        Platform.runLater(() -> prompt.setText(message));
     }
 
     /**
-     * Receive other players move
+     * Receives the other player's move from the server
      * @throws IOException due to server communication
      */
-    private void receiveMove(char token) throws IOException {
-        int row = fromServer.readInt();
-        int column = fromServer.readInt();
-        GameSpace temp = (GameSpace) getNodeFromGridPane(column, row);
+    private void receiveInfoFromServer() throws IOException {
+        int status = server.readStatus();
+        if (status == SERVER_BUSY) {
+            showServerBusy();
+            return;
+        }
+        showTurn(otherToken, status);
+        myTurn = status == CONTINUE;
+    }
+
+    /**
+     * Reads the move of a turn and shows it with the game's status, in one
+     * pulse
+     * @param token token of the player who moved
+     * @param status status of the game after the move
+     * @throws IOException due to server communication
+     */
+    private void showTurn(char token, int status) throws IOException {
+        int row = server.readRow();
+        int column = server.readColumn();
+        // player 2 learns the board and session with the first turn
+        showVariant(server.getVariant());
+        showSession();
+        String message;
+        if (status == P1_WINNER || status == P2_WINNER) {
+            continueToPlay = false;
+            boolean won = (status == P1_WINNER) == (myToken == PLAYER_1);
+            message = won ? "You won!" : "You lost!";
+        } else if (status == TIE) {
+            continueToPlay = false;
+            message = "Tie game!";
+        } else if (token == myToken) {
+            message = "Waiting for " + (myToken == PLAYER_1 ? "player 2 " : "player 1 ") +
+                    "to make a move...";
+        } else {
+            message = "Your turn - please click on a column to make a move.";
+        }
         Platform.runLater(() -> {
-            temp.setValue(token);
+            cells[row][column].setValue(token);
+            prompt.setText(message);
         });
+    }
 
+    /**
+     * Prints how long clicked moves took to leave for the server
+     */
+    private void reportClickToSend() {
+        if (clickToSend.getCount() > 0) {
+            System.out.printf("Click to send over %d moves: p50 %d us, p99 %d us, max %d us%n",
+                    clickToSend.getCount(), clickToSend.getPercentile(50) / 1000,
+                    clickToSend.getPercentile(99) / 1000, clickToSend.getMax() / 1000);
+        }
     }
 
+    /**
+     * Ends the game because the server could not start a session
+     */
+    private void showServerBusy() {
+        continueToPlay = false;
+        Platform.runLater(() -> prompt.setText("The server is busy. Please try again later."));
+    }
 
     /**
-     * Get the node from the specified index of the global gridpane
-     * @param col column of gridpane
-     * @param row row of gridpane
-     * @return Node in the specified index
+     * Nested class for a click, with when it happened
      */
-    private Node getNodeFromGridPane(int col, int row) {
-        for (Node node : grid.getChildren()) {
-            if (GridPane.getColumnIndex(node) == col && GridPane.getRowIndex(node) == row) {
-                return node;
-            }
+    private static class Click {
+
+        private final int column;
+        private final long nanos;
+
+        private Click(int column, long nanos) {
+            this.column = column;
+            this.nanos = nanos;
         }
-        return null;
     }
 
     /**
@@ -347,50 +632,39 @@ public class Connect4Client extends Application implements Connect4Constants {
         }
 
         /**
-         * Setter for value of GameSpace
+         * Setter for value of GameSpace, called on the FX thread
          * @param v new value
          */
         private void setValue(char v) {
+            if (v == value) {
+                return;
+            }
             //set new value
             value = v;
+            getChildren().clear();
+            if (value == BLANK) {
+                return;
+            }
 
-            // create chip object
-            Circle chip = new Circle(this.getWidth() / 2, this.getHeight() / 2,
-                    .9 * (this.getHeight() / 2));
+            // create chip object, sized with the space
+            Circle chip = new Circle();
             chip.centerXProperty().bind(this.widthProperty().divide(2));
             chip.centerYProperty().bind(this.heightProperty().divide(2));
             chip.radiusProperty().bind((this.heightProperty().divide(2)).multiply(.7));
 
             // set color according to player
-            if (value == PLAYER_1) {
-                chip.setStroke(Color.RED);
-                chip.setFill(Color.RED);
-                Platform.runLater(() -> {
-                    getChildren().add(chip);
-                });
-            }
-            else if (value == PLAYER_2) {
-                chip.setStroke(Color.YELLOW);
-                chip.setFill(Color.YELLOW);
-                Platform.runLater(() -> {
-                    getChildren().add(chip);
-                });
-            }
-            else {
-                Platform.runLater(() -> {
-                    getChildren().clear();
-                });
-            }
+            Color color = value == PLAYER_1 ? Color.RED : Color.YELLOW;
+            chip.setStroke(color);
+            chip.setFill(color);
+            getChildren().add(chip);
         }
 
         /**
-         * Handles clicks on the gameboard
+         * Handles clicks on the gameboard. The click only goes through if
+         * the game thread is waiting for this player's move.
          */
         private void handleMouseClick() {
-            if (myTurn) {
-                selectedColumn = column;
-                waiting = false;
-            }
+            clicks.offer(new Click(column, System.nanoTime()));
         }
 
     }
@@ -17,9 +17,50 @@ public interface Connect4Constants {
     int CONTINUE = 0;
     int INVALID_TURN = -2;
     int VALID_TURN = 0;
+    // sent instead of the start or first status when no session can start
+    int SERVER_BUSY = -3;
+    // read in place of a move when a framed player asks for a hint
+    int HINT_REQUEST = -4;
 
     int TWO_PLAYER_GAME = 2;
     int ONE_PLAYER_GAME = 1;
+    // two player game on another board, followed by its rows, columns and
+    // the tokens in a row that win, each as an int
+    int TWO_PLAYER_VARIANT = 3;
+    // one player game against a computer of the chosen difficulty
+    int ONE_PLAYER_EASY = 11;
+    int ONE_PLAYER_MEDIUM = 12;
+    int ONE_PLAYER_HARD = 13;
+
+    // sent by a client on connect to ask for the framed protocol, and echoed
+    // back by a server that speaks it ("C4F" and protocol version 1)
+    int PROTOCOL_HELLO = 0x43344601;
+    // the same from a client that can also play on other boards, protocol
+    // version 2; a server that cannot answers with PROTOCOL_HELLO
+    int PROTOCOL_HELLO_VARIANTS = 0x43344602;
+    // sent by a framed client in place of the hello to take back its seat in
+    // a session after losing the connection, followed by the long id the
+    // server gave it in MSG_SESSION
+    int PROTOCOL_RESUME = 0x43344652;
+    // sent by a framed client in place of the hello to watch a running
+    // session, followed by the int number of the session
+    int PROTOCOL_WATCH = 0x43344657;
+
+    // message types of the framed protocol
+    byte MSG_START = 1;
+    byte MSG_INVALID_TURN = 2;
+    byte MSG_TURN = 3;
+    byte MSG_MOVE = 4;
+    byte MSG_BUSY = 5;
+    byte MSG_SESSION = 6;
+    byte MSG_RESUMED = 7;
+    byte MSG_RESUME_FAILED = 8;
+    byte MSG_VARIANT = 9;
+    byte MSG_WATCHING = 10;
+    byte MSG_WATCH_FAILED = 11;
+    // sent by a player with no payload during their turn, and answered with
+    // a byte count and that many int scores, one per column
+    byte MSG_HINT = 12;
 
 
     char BLANK = ' ';
@@ -0,0 +1,281 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Connect4Solver class picks the computer's move in a one player
+ * game. It runs a negamax search with alpha-beta pruning, deepening one ply
+ * at a time until it reaches its depth or its deadline, trying the best
+ * move of the last depth first and otherwise the center columns first. It
+ * scores the positions it cannot see to the end of by counting open
+ * threats. Results are kept in a
+ * core.TranspositionTable so repeated positions are only searched once.
+ *
+ */
+
+public class Connect4Solver implements ComputerPlayer {
+
+    // columns in the order they are searched, center first
+    static final int[] MOVE_ORDER = {3, 2, 4, 1, 5, 0, 6};
+
+    // scores above this are forced wins, the sooner the win the higher
+    static final int WIN_SCORE = 1000;
+
+    // how many nodes are searched between checks of the clock
+    private static final int CLOCK_INTERVAL = 1024;
+
+    private static final long CENTER_MASK = 0x3FL << (3 * (Connect4Board.ROWS + 1));
+
+    // table size used when none is given
+    private static final long DEFAULT_TABLE_BYTES = 1 << 20;
+
+    private final int depth;
+    private final long timeLimitNanos;
+    private final TranspositionTable table;
+
+    private long nodes;
+    private long deadline;
+    private boolean outOfTime;
+
+    /**
+     * Constructor for a solver
+     * @param depth number of plies to look ahead
+     * @param timeLimitMillis longest time one call to bestMove may take
+     */
+    public Connect4Solver(int depth, long timeLimitMillis) {
+        this(depth, timeLimitMillis, new TranspositionTable(DEFAULT_TABLE_BYTES));
+    }
+
+    /**
+     * Constructor for a solver
+     * @param depth number of plies to look ahead
+     * @param timeLimitMillis longest time one call to bestMove may take
+     * @param table table of positions already searched
+     */
+    public Connect4Solver(int depth, long timeLimitMillis, TranspositionTable table) {
+        this.depth = depth;
+        this.timeLimitNanos = timeLimitMillis * 1000000L;
+        this.table = table;
+    }
+
+    /**
+     * Finds the best move for the player whose turn it is within the
+     * solver's time limit
+     * @param board current game, left unchanged
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board) {
+        return bestMove(board, System.nanoTime() + timeLimitNanos);
+    }
+
+    /**
+     * Finds the best move for the player whose turn it is. The search
+     * deepens one ply at a time up to the solver's depth, trying the best
+     * column of the last depth first. When the deadline comes the move of
+     * the deepest search finished is returned, or a better one the
+     * unfinished search has already proved.
+     * @param board current game, left unchanged
+     * @param deadline System.nanoTime() by which the move must be chosen
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board, long deadline) {
+        Connect4Board position = new Connect4Board(board);
+        startClock(deadline);
+
+        int[] order = new int[Connect4Board.COLUMNS];
+        int count = 0;
+        for (int col : MOVE_ORDER) {
+            if (!position.canPlay(col)) {
+                continue;
+            }
+            if (position.isWinningMove(col)) {
+                return col;
+            }
+            order[count++] = col;
+        }
+        if (count == 0) {
+            return -1;
+        }
+
+        // always have a legal move to fall back on
+        int bestCol = order[0];
+        for (int ply = 1; ply <= depth && !outOfTime; ply++) {
+            int alpha = -WIN_SCORE - 1;
+            int iterationCol = -1;
+            for (int i = 0; i < count; i++) {
+                int score = scoreMove(position, order[i], ply, alpha);
+                if (outOfTime) {
+                    break;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    iterationCol = i;
+                }
+            }
+            if (iterationCol < 0) {
+                // not even the first column was searched to this depth
+                break;
+            }
+            bestCol = order[iterationCol];
+            // search it first at the next depth
+            System.arraycopy(order, 0, order, 1, iterationCol);
+            order[0] = bestCol;
+            if (Math.abs(alpha) > WIN_SCORE - Connect4Board.CELLS) {
+                // a forced win or loss, looking deeper will not change it
+                break;
+            }
+        }
+        return bestCol;
+    }
+
+    /**
+     * Scores one move at the root of the search
+     * @param board position before the move, restored before returning
+     * @param col a playable column that does not win at once
+     * @param alpha score already guaranteed by another move
+     * @return score of the move, or at most alpha if it is no better
+     */
+    int scoreMove(Connect4Board board, int col, int alpha) {
+        return scoreMove(board, col, depth, alpha);
+    }
+
+    /**
+     * Scores one move at the root of a search of the given depth
+     */
+    int scoreMove(Connect4Board board, int col, int depth, int alpha) {
+        board.play(col);
+        int score = -negamax(board, depth - 1, -WIN_SCORE - 1, -alpha);
+        board.undo(col);
+        return score;
+    }
+
+    /**
+     * Starts the clock for a search run outside of bestMove
+     * @param deadline System.nanoTime() at which the search must stop
+     */
+    void startClock(long deadline) {
+        this.deadline = deadline;
+        outOfTime = false;
+    }
+
+    /**
+     * Scores a position from the point of view of the player to move
+     * @param board position to score, restored before returning
+     * @param depth plies left to search
+     * @param alpha score the player to move is already sure of
+     * @param beta score the opponent is already sure of
+     * @return score of the position
+     */
+    private int negamax(Connect4Board board, int depth, int alpha, int beta) {
+        nodes++;
+        if ((nodes % CLOCK_INTERVAL) == 0 && System.nanoTime() > deadline) {
+            outOfTime = true;
+        }
+        if (outOfTime) {
+            return 0;
+        }
+
+        int moves = board.getMoves();
+        if (moves == Connect4Board.CELLS) {
+            return 0;
+        }
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            if (board.canPlay(col) && board.isWinningMove(col)) {
+                return WIN_SCORE - moves;
+            }
+        }
+        if (depth <= 0) {
+            return evaluate(board);
+        }
+
+        long key = board.key();
+        int firstCol = TranspositionTable.NO_MOVE;
+        long entry = table.probe(key);
+        if (entry != TranspositionTable.NOT_FOUND) {
+            firstCol = TranspositionTable.move(entry);
+            if (TranspositionTable.depth(entry) >= depth) {
+                int score = TranspositionTable.score(entry);
+                int flag = TranspositionTable.flag(entry);
+                if (flag == TranspositionTable.EXACT
+                        || (flag == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (flag == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+
+        int originalAlpha = alpha;
+        int best = -WIN_SCORE - 1;
+        int bestCol = TranspositionTable.NO_MOVE;
+        // the best move found last time is tried before the usual order
+        for (int i = -1; i < MOVE_ORDER.length; i++) {
+            int col = i < 0 ? firstCol : MOVE_ORDER[i];
+            if ((i >= 0 && col == firstCol) || !board.canPlay(col)) {
+                continue;
+            }
+            board.play(col);
+            int score = -negamax(board, depth - 1, -beta, -alpha);
+            board.undo(col);
+
+            if (score > best) {
+                best = score;
+                bestCol = col;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+
+        // a search cut short by the clock is not worth remembering
+        if (!outOfTime) {
+            int flag = best <= originalAlpha ? TranspositionTable.UPPER_BOUND
+                    : best >= beta ? TranspositionTable.LOWER_BOUND : TranspositionTable.EXACT;
+            table.store(key, best, depth, flag, bestCol);
+        }
+        return best;
+    }
+
+    /**
+     * Scores a position the search cannot see to the end of, by comparing
+     * the open cells that would complete four for each player, with a
+     * small bonus for tokens in the center column
+     * @param board position to score
+     * @return score from the point of view of the player to move
+     */
+    static int evaluate(Connect4Board board) {
+        long mine = board.currentBits();
+        long theirs = board.opponentBits();
+        long occupied = board.occupiedBits();
+        int threats = Long.bitCount(Connect4Board.winningCells(mine, occupied))
+                - Long.bitCount(Connect4Board.winningCells(theirs, occupied));
+        int center = Long.bitCount(mine & CENTER_MASK) - Long.bitCount(theirs & CENTER_MASK);
+        return 4 * threats + center;
+    }
+
+    /**
+     * @return number of positions searched since the solver was created
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return table of positions already searched
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * @return true if the last call to bestMove ran out of time
+     */
+    public boolean wasOutOfTime() {
+        return outOfTime;
+    }
+}
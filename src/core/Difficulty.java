@@ -0,0 +1,65 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Difficulty enum lists the strengths of the computer opponent in a
+ * one player game, how deep the search looks ahead for each one and whether
+ * it plays its first moves from the opening book.
+ *
+ */
+
+public enum Difficulty implements Connect4Constants {
+
+    EASY(ONE_PLAYER_EASY, 2, false),
+    MEDIUM(ONE_PLAYER_MEDIUM, 6, true),
+    HARD(ONE_PLAYER_HARD, 12, true);
+
+    private final int code;
+    private final int depth;
+    private final boolean openingBook;
+
+    Difficulty(int code, int depth, boolean openingBook) {
+        this.code = code;
+        this.depth = depth;
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * @return the value a client sends to ask for this difficulty
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return number of plies the search looks ahead
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return true if the computer plays its first moves from the opening
+     *         book, whose moves are searched far deeper than EASY looks
+     */
+    public boolean playsOpeningBook() {
+        return openingBook;
+    }
+
+    /**
+     * Finds the difficulty a client asked for
+     * @param code value sent by the client
+     * @param defaultDifficulty used for a plain ONE_PLAYER_GAME
+     * @return the difficulty with that code, or the default
+     */
+    public static Difficulty fromCode(int code, Difficulty defaultDifficulty) {
+        for (Difficulty difficulty : values()) {
+            if (difficulty.code == code) {
+                return difficulty;
+            }
+        }
+        return defaultDifficulty;
+    }
+}
@@ -0,0 +1,376 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.EventLog class records server events without making the threads
+ * that report them wait. Each event is a fixed-size record, an event type,
+ * a time and up to three ints, kept in a ring buffer sized once at startup,
+ * so the log never holds more memory than that. Reporting threads claim a
+ * slot with a single compare and set. When the ring is full the event is
+ * dropped and counted instead of blocking.
+ *
+ * One background thread drains the ring, formats the events and writes them
+ * to standard output, a rolling log file and any listeners, such as the
+ * server window. Listeners get every drained batch as one string.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+public class EventLog {
+
+    /**
+     * The events a server reports, with how each is written out
+     */
+    public enum Event {
+        SERVER_STARTED("Server started at port %d in %d ms"),
+        NIO_SERVER_STARTED("Server started at port %d with %d event loops"),
+        BOOK_LOADED("Loaded opening book with %d positions"),
+        TABLEBASE_LOADED("Loaded endgame tablebase with %d positions of up to %d empty cells"),
+        PLAYER_CONNECTED("Player joined from %s, %d waiting for an opponent") {
+            @Override
+            String format(int a, int b, int c) {
+                return String.format(getPattern(), address(a), b);
+            }
+        },
+        PLAYER_JOINED("Player %2$d joined session %1$d"),
+        TWO_PLAYER_STARTED("Start 2 player session %d (%d still waiting for an opponent)"),
+        ONE_PLAYER_STARTED("Start 1 player session %d (%s)") {
+            @Override
+            String format(int a, int b, int c) {
+                return String.format(getPattern(), a, Difficulty.values()[b]);
+            }
+        },
+        SESSION_VARIANT("Session %d plays on %d rows and %d columns, connect %d") {
+            @Override
+            String format(int a, int b, int c) {
+                return String.format(getPattern(), a, b >>> 8, b & 0xFF, c);
+            }
+        },
+        SESSION_ENDED("Session %d ended with status %d"),
+        SESSION_ABORTED("Session %d aborted, a player disconnected"),
+        SESSION_SUSPENDED("Session %d waiting up to %3$d ms for player %2$d to reconnect"),
+        SESSION_RESUMED("Player %2$d reconnected to session %1$d"),
+        SPECTATOR_JOINED("Spectator joined session %d (%d watching)"),
+        SERVER_BUSY("Server busy, turned away a session (%d running)"),
+        MONITOR_ATTACHED("Monitor attached from %s") {
+            @Override
+            String format(int a, int b, int c) {
+                return String.format(getPattern(), address(a));
+            }
+        };
+
+        private final String pattern;
+
+        Event(String pattern) {
+            this.pattern = pattern;
+        }
+
+        String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the event as a line of text, without the time
+         */
+        String format(int a, int b, int c) {
+            return String.format(pattern, a, b, c);
+        }
+    }
+
+    private static final Event[] EVENTS = Event.values();
+
+    // how long the writer sleeps when the ring is empty
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final int mask;
+
+    // the ring, one slot per index. A slot's sequence says whose turn it
+    // is: equal to a position when free to write it, one past when written
+    private final AtomicLongArray sequences;
+    private final long[] times;
+    private final byte[] types;
+    private final int[] argsA;
+    private final int[] argsB;
+    private final int[] argsC;
+
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // only touched by the writer thread
+    private long head;
+    private long droppedReported;
+
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private final Path file;
+    private final long maxFileBytes;
+    private final int maxFiles;
+    private final boolean console;
+    private Writer fileWriter;
+    private long fileBytes;
+
+    /**
+     * Constructor for an event log
+     * @param capacity most events held before new ones are dropped, rounded
+     *                 up to a power of two
+     * @param file log file, or null to write no file
+     * @param maxFileBytes size at which the log file is rolled over
+     * @param maxFiles number of rolled over files kept besides the current one
+     * @param console true to also write every event to standard output
+     */
+    public EventLog(int capacity, Path file, long maxFileBytes, int maxFiles, boolean console) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        times = new long[size];
+        types = new byte[size];
+        argsA = new int[size];
+        argsB = new int[size];
+        argsC = new int[size];
+
+        this.file = file;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+        this.console = console;
+    }
+
+    /**
+     * Creates an event log from the server settings and starts its writer
+     * @param config server settings
+     * @return the running event log
+     */
+    public static EventLog start(ServerConfig config) {
+        String path = config.getLogPath();
+        EventLog log = new EventLog(config.getLogCapacity(),
+                path.isEmpty() ? null : Paths.get(path),
+                config.getLogMaxFileBytes(), config.getLogMaxFiles(), true);
+        Thread writer = new Thread(log::drainForever, "connect4-event-log");
+        writer.setDaemon(true);
+        writer.start();
+        return log;
+    }
+
+    /**
+     * Sends every later batch of formatted events to the listener as well.
+     * Listeners are called on the writer thread.
+     * @param listener receiver of lines, each ending in a line break
+     */
+    public void addListener(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Stops sending batches to the listener
+     * @param listener a listener added before
+     */
+    public void removeListener(Consumer<String> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Adds an event with no values, see record(Event, int, int, int)
+     */
+    public void record(Event event) {
+        record(event, 0, 0, 0);
+    }
+
+    /**
+     * Adds an event with one value, see record(Event, int, int, int)
+     */
+    public void record(Event event, int a) {
+        record(event, a, 0, 0);
+    }
+
+    /**
+     * Adds an event with two values, see record(Event, int, int, int)
+     */
+    public void record(Event event, int a, int b) {
+        record(event, a, b, 0);
+    }
+
+    /**
+     * Adds an event without waiting, or counts it as dropped if the ring is
+     * full
+     * @param event what happened
+     * @param a first value of the event
+     * @param b second value of the event
+     * @param c third value of the event
+     * @return false if the event was dropped
+     */
+    public boolean record(Event event, int a, int b, int c) {
+        long position;
+        int slot;
+        while (true) {
+            position = tail.get();
+            slot = (int) position & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // the writer has not freed this slot yet, so the ring is full
+                dropped.incrementAndGet();
+                return false;
+            }
+            // another thread claimed the position, try the next one
+        }
+        times[slot] = System.currentTimeMillis();
+        types[slot] = (byte) event.ordinal();
+        argsA[slot] = a;
+        argsB[slot] = b;
+        argsC[slot] = c;
+        // publish the record to the writer
+        sequences.set(slot, position + 1);
+        return true;
+    }
+
+    /**
+     * @return number of events dropped because the ring was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of events the ring holds
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Writes out every event recorded so far. The writer thread started by
+     * start(ServerConfig) calls this, so call it directly only on a log that
+     * was not started that way.
+     * @return the formatted events, or an empty string if there were none
+     */
+    public String drain() {
+        StringBuilder batch = new StringBuilder();
+        while (true) {
+            int slot = (int) head & mask;
+            if (sequences.get(slot) != head + 1) {
+                break;
+            }
+            batch.append(new Date(times[slot])).append(": ")
+                    .append(EVENTS[types[slot]].format(argsA[slot], argsB[slot], argsC[slot]))
+                    .append('\n');
+            // free the slot for the record one lap later
+            sequences.set(slot, head + mask + 1);
+            head++;
+        }
+
+        long droppedNow = dropped.get();
+        if (droppedNow != droppedReported) {
+            batch.append(new Date()).append(": ").append(droppedNow - droppedReported)
+                    .append(" events dropped, log buffer full\n");
+            droppedReported = droppedNow;
+        }
+
+        if (batch.length() > 0) {
+            write(batch.toString());
+        }
+        return batch.toString();
+    }
+
+    private void drainForever() {
+        while (true) {
+            if (drain().isEmpty()) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    private void write(String lines) {
+        if (console) {
+            System.out.print(lines);
+        }
+        if (file != null) {
+            writeFile(lines);
+        }
+        for (Consumer<String> listener : listeners) {
+            listener.accept(lines);
+        }
+    }
+
+    private void writeFile(String lines) {
+        try {
+            if (fileWriter == null) {
+                fileWriter = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+                fileBytes = Files.size(file);
+            }
+            fileWriter.write(lines);
+            fileWriter.flush();
+            fileBytes += lines.length();
+            if (fileBytes >= maxFileBytes) {
+                roll();
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Moves connect4.log to connect4.log.1, connect4.log.1 to connect4.log.2
+     * and so on, dropping the oldest file
+     */
+    private void roll() throws IOException {
+        fileWriter.close();
+        fileWriter = null;
+        for (int i = maxFiles; i > 0; i--) {
+            Path from = i == 1 ? file : rolled(i - 1);
+            if (Files.exists(from)) {
+                Files.move(from, rolled(i), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.deleteIfExists(file);
+    }
+
+    private Path rolled(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    /**
+     * Packs an IPv4 address into an int for an event
+     * @param address the address
+     * @return the address, or 0 if it is not IPv4
+     */
+    public static int pack(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length != 4) {
+            return 0;
+        }
+        return (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16
+                | (bytes[2] & 0xFF) << 8 | bytes[3] & 0xFF;
+    }
+
+    private static String address(int packed) {
+        if (packed == 0) {
+            return "an IPv6 address";
+        }
+        return (packed >>> 24) + "." + (packed >>> 16 & 0xFF) + "."
+                + (packed >>> 8 & 0xFF) + "." + (packed & 0xFF);
+    }
+}
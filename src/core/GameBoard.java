@@ -0,0 +1,71 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.GameBoard interface is what a game session needs from a board:
+ * dropping tokens, reading them back and the result after each move. Use
+ * create to get the fastest board for a variant.
+ *
+ */
+
+public interface GameBoard extends Connect4Constants {
+
+    /**
+     * Gets an empty board for a variant
+     * @param variant rows, columns and tokens in a row that win
+     * @return a Connect4Board for the standard game, otherwise a
+     *         VariantBoard
+     */
+    static GameBoard create(Variant variant) {
+        if (variant.isStandard()) {
+            return new Connect4Board();
+        }
+        return VariantBoard.create(variant);
+    }
+
+    /**
+     * @return rows, columns and tokens in a row that win
+     */
+    Variant getVariant();
+
+    /**
+     * Determines if the column specified is a valid move
+     * @param col the column, counting from 0
+     * @return true if the column is on the board and is not full
+     */
+    boolean canPlay(int col);
+
+    /**
+     * Drops a token for the player whose turn it is into the column. The
+     * caller is expected to have checked canPlay first.
+     * @param col the column, counting from 0
+     * @return the row the token landed in, counting from 0 at the top
+     */
+    int play(int col);
+
+    /**
+     * Checks if the last move won or filled the board
+     * @return P1_WINNER, P2_WINNER, CONTINUE if no winner yet, or TIE
+     */
+    int status();
+
+    /**
+     * @return number of tokens on the board
+     */
+    int getMoves();
+
+    /**
+     * @return true if it is player 1's turn
+     */
+    boolean isPlayer1Turn();
+
+    /**
+     * Gets the token in a cell
+     * @param row row counting from 0 at the top
+     * @param col column counting from 0
+     * @return PLAYER_1, PLAYER_2 or BLANK
+     */
+    char getToken(int row, int col);
+}
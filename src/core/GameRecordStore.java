@@ -0,0 +1,438 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.GameRecordStore class keeps every finished game on disk for
+ * audits and analysis. Sessions hand their game to append, which only puts
+ * it on a bounded queue, so the turn loop never waits on the disk. One
+ * writer thread takes everything queued, writes the batch with a single
+ * write and forces it to disk once for the whole batch.
+ *
+ * Games go to segment files named games-000001.seg and so on, each starting
+ * with a 16 byte header. A new segment is started when the server starts
+ * and whenever the current one reaches its size limit, so a segment is
+ * never reopened for writing. Each game is stored as
+ *   int     session id
+ *   long    start time in milliseconds since the epoch
+ *   int     duration in milliseconds
+ *   byte    status, P1_WINNER, P2_WINNER or TIE
+ *   byte    number of moves
+ *   byte    rows, columns and tokens in a row that win, one byte each
+ *   bytes   the columns played, counting from 0, two to a byte with the
+ *           earlier move in the high nibble
+ * so a full game on the standard board takes 42 bytes. Readers memory-map
+ * a segment and stop at a game cut short by a crash.
+ *
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+public class GameRecordStore implements Closeable, Connect4Constants {
+
+    static final int MAGIC = 0x43344752; // "C4GR"
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 16;
+    static final int FIXED_BYTES = 21;
+    static final int MAX_GAME_BYTES = FIXED_BYTES
+            + (Variant.MAX_ROWS * Variant.MAX_COLUMNS + 1) / 2;
+
+    // games written with one write and one force at most
+    private static final int BATCH = 256;
+
+    private static final String PREFIX = "games-";
+    private static final String SUFFIX = ".seg";
+
+    // queued after the last game to stop the writer
+    private static final Game END = new Game(0, 0, 0, 0, Variant.STANDARD, new byte[0], 0);
+
+    private final Path directory;
+    private final long maxSegmentBytes;
+    private final BlockingQueue<Game> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Thread writer;
+    // guarded by queue, so no game is queued after END
+    private boolean closed;
+
+    // only touched by the writer thread
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH * MAX_GAME_BYTES);
+    private final List<Game> batch = new ArrayList<>(BATCH);
+    private FileChannel segment;
+    private long segmentBytes;
+    private int segmentNumber;
+
+    /**
+     * Constructor for a store, which starts its writer thread
+     * @param directory directory of the segment files, created if missing
+     * @param maxSegmentBytes size at which a new segment is started
+     * @param queueCapacity most games waiting to be written before new ones
+     *                      are dropped
+     * @throws IOException if the directory cannot be created or read
+     */
+    public GameRecordStore(Path directory, long maxSegmentBytes, int queueCapacity)
+            throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        Files.createDirectories(directory);
+        for (Path existing : segments(directory)) {
+            segmentNumber = Math.max(segmentNumber, segmentNumber(existing));
+        }
+        writer = new Thread(this::writeUntilClosed, "connect4-game-records");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Opens the store named in the server config, if there is one
+     * @param config server settings
+     * @return the running store, or null if records.path is empty
+     * @throws IOException if the directory cannot be created or read
+     */
+    public static GameRecordStore openIfEnabled(ServerConfig config) throws IOException {
+        String path = config.getRecordsPath();
+        if (path.isEmpty()) {
+            return null;
+        }
+        return new GameRecordStore(Paths.get(path), config.getRecordsMaxSegmentBytes(),
+                config.getRecordsQueueCapacity());
+    }
+
+    /**
+     * Queues a finished game for writing without waiting, or counts it as
+     * dropped if the queue is full or the store is closed
+     * @param game the game
+     * @return false if the game was dropped
+     */
+    public boolean append(Game game) {
+        synchronized (queue) {
+            if (!closed && queue.offer(game)) {
+                return true;
+            }
+        }
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return number of games dropped because the queue was full, the
+     *         store was closed or a write failed
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of games written and forced to disk
+     */
+    public long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * Writes every game queued so far and stops the writer
+     * @throws IOException if the writer was interrupted
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (queue) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while closing game records", ex);
+        }
+    }
+
+    private void writeUntilClosed() {
+        try {
+            boolean ended = false;
+            while (!ended) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH - 1);
+                ended = batch.remove(END);
+                try {
+                    writeBatch();
+                } catch (IOException ex) {
+                    // the games of this batch are lost, later batches try again
+                    ex.printStackTrace();
+                    dropped.addAndGet(batch.size());
+                    closeSegment();
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        closeSegment();
+    }
+
+    /**
+     * Writes the batch with one write and one force
+     */
+    private void writeBatch() throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (segment == null || segmentBytes >= maxSegmentBytes) {
+            startSegment();
+        }
+        buffer.clear();
+        for (Game game : batch) {
+            game.encode(buffer);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentBytes += segment.write(buffer);
+        }
+        // group commit, one force covers every game in the batch
+        segment.force(false);
+        written.addAndGet(batch.size());
+    }
+
+    private void startSegment() throws IOException {
+        closeSegment();
+        segmentNumber++;
+        Path file = directory.resolve(String.format("%s%06d%s", PREFIX, segmentNumber, SUFFIX));
+        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segmentBytes = HEADER_BYTES;
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+        segment = null;
+    }
+
+    /**
+     * Lists the segment files of a store
+     * @param directory directory of the store
+     * @return the segments, oldest first, or none if the directory is missing
+     * @throws IOException if the directory cannot be read
+     */
+    public static List<Path> segments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                PREFIX + "[0-9]*" + SUFFIX)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        // numbers are zero padded, so names sort in the order written
+        segments.sort(null);
+        return segments;
+    }
+
+    private static int segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Memory-maps a segment and passes each game in it to the consumer
+     * @param segment segment file written by a store
+     * @param consumer receiver of the games, in the order they were written
+     * @throws IOException if the file cannot be read or is not a segment
+     */
+    public static void replay(Path segment, Consumer<Game> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                throw new IOException(segment + " is not a Connect4 game record segment");
+            }
+            buffer.position(HEADER_BYTES);
+            Game game;
+            while ((game = Game.decode(buffer)) != null) {
+                consumer.accept(game);
+            }
+        }
+    }
+
+    /**
+     * Passes every game of a store to the consumer, oldest first
+     * @param directory directory of the store
+     * @param consumer receiver of the games
+     * @throws IOException if a segment cannot be read
+     */
+    public static void replayAll(Path directory, Consumer<Game> consumer) throws IOException {
+        for (Path segment : segments(directory)) {
+            replay(segment, consumer);
+        }
+    }
+
+    /**
+     * Nested class for one finished game
+     */
+    public static final class Game {
+
+        private final int sessionId;
+        private final long startMillis;
+        private final int durationMillis;
+        private final int status;
+        private final Variant variant;
+        private final byte[] columns;
+
+        /**
+         * Constructor for a finished game on the standard board
+         * @param sessionId number of the session that played it
+         * @param startMillis when the game started
+         * @param durationMillis how long the game took
+         * @param status P1_WINNER, P2_WINNER or TIE
+         * @param columns columns played, counting from 0; the first
+         *                moveCount are copied
+         * @param moveCount number of moves played
+         */
+        public Game(int sessionId, long startMillis, int durationMillis, int status,
+                    byte[] columns, int moveCount) {
+            this(sessionId, startMillis, durationMillis, status, Variant.STANDARD, columns,
+                    moveCount);
+        }
+
+        /**
+         * Constructor for a finished game
+         * @param sessionId number of the session that played it
+         * @param startMillis when the game started
+         * @param durationMillis how long the game took
+         * @param status P1_WINNER, P2_WINNER or TIE
+         * @param variant board the game was played on
+         * @param columns columns played, counting from 0; the first
+         *                moveCount are copied
+         * @param moveCount number of moves played
+         */
+        public Game(int sessionId, long startMillis, int durationMillis, int status,
+                    Variant variant, byte[] columns, int moveCount) {
+            this.sessionId = sessionId;
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+            this.status = status;
+            this.variant = variant;
+            this.columns = Arrays.copyOf(columns, moveCount);
+        }
+
+        public int getSessionId() {
+            return sessionId;
+        }
+
+        public long getStartMillis() {
+            return startMillis;
+        }
+
+        public int getDurationMillis() {
+            return durationMillis;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Variant getVariant() {
+            return variant;
+        }
+
+        public int getMoveCount() {
+            return columns.length;
+        }
+
+        /**
+         * @param move number of the move, counting from 0
+         * @return column of the move, counting from 0
+         */
+        public int getColumn(int move) {
+            return columns[move];
+        }
+
+        /**
+         * @return a board with every move of the game played
+         */
+        public GameBoard toBoard() {
+            GameBoard board = GameBoard.create(variant);
+            for (byte column : columns) {
+                board.play(column);
+            }
+            return board;
+        }
+
+        private void encode(ByteBuffer out) {
+            out.putInt(sessionId).putLong(startMillis).putInt(durationMillis)
+                    .put((byte) status).put((byte) columns.length)
+                    .put((byte) variant.getRows()).put((byte) variant.getColumns())
+                    .put((byte) variant.getConnect());
+            for (int i = 0; i < columns.length; i += 2) {
+                int low = i + 1 < columns.length ? columns[i + 1] : 0;
+                out.put((byte) (columns[i] << 4 | low));
+            }
+        }
+
+        /**
+         * Reads the game at the buffer's position
+         * @return the game, or null at the end of the segment or at a game
+         *         cut short
+         */
+        private static Game decode(ByteBuffer in) {
+            if (in.remaining() < FIXED_BYTES) {
+                return null;
+            }
+            int start = in.position();
+            int sessionId = in.getInt();
+            long startMillis = in.getLong();
+            int durationMillis = in.getInt();
+            int status = in.get();
+            int moveCount = in.get() & 0xFF;
+            Variant variant = Variant.orStandard(in.get() & 0xFF, in.get() & 0xFF,
+                    in.get() & 0xFF);
+            if (moveCount > variant.getCells() || in.remaining() < (moveCount + 1) / 2) {
+                in.position(start);
+                return null;
+            }
+            byte[] columns = new byte[moveCount];
+            for (int i = 0; i < moveCount; i += 2) {
+                int packed = in.get() & 0xFF;
+                columns[i] = (byte) (packed >>> 4);
+                if (i + 1 < moveCount) {
+                    columns[i + 1] = (byte) (packed & 0xF);
+                }
+            }
+            return new Game(sessionId, startMillis, durationMillis, status, variant, columns,
+                    moveCount);
+        }
+    }
+}
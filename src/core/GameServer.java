@@ -0,0 +1,729 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.GameServer class runs the accept loop and game sessions of the
+ * Connect4 server without any JavaFX classes, so it starts quickly and needs
+ * no display. It can run on its own from the command line, or inside
+ * core.Connect4Server, which shows its log in a window.
+ *
+ * Events go to a core.EventLog, which writes them to standard output, the
+ * log file and every attached listener. When monitor.port is set, monitors
+ * such as core.Connect4Server can also attach over the network and receive
+ * the log as lines of text.
+ *
+ * Move round trips, computer think times, game results and session counts
+ * go to a core.ServerMetrics, read over JMX or, when metrics.port is set,
+ * from a local HTTP endpoint. Finished games are appended to a
+ * core.GameRecordStore when records.path is set.
+ *
+ * Each framed player is sent the id of their seat when the session starts.
+ * If their connection fails mid-game, the session waits up to
+ * server.resumeGraceMillis for them to reconnect with that id, sends them
+ * the moves so far and carries on. Sessions with legacy players end as
+ * soon as one disconnects, as before.
+ *
+ * Any framed client can watch a running session by its number. The
+ * session sends spectators the game after every move through
+ * core.Spectators, which never lets a slow spectator hold up the players.
+ *
+ * The computer always answers within the time a core.ThinkBudget gives
+ * it, which is cut for every session when the computer's thinking takes
+ * more than ai.cpuPercent of the cores.
+ *
+ * Players on the standard board can ask for a hint during their turn. The
+ * hint is a score for every column from a core.PositionAnalyzer shared by
+ * every session, so a position any session has reached is answered from
+ * its cache. Hints are searched within the same think budget.
+ *
+ * Usage: java core.GameServer
+ *
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class GameServer implements Connect4Constants {
+
+    // keeps track of how many sessions are running
+    private static final AtomicInteger sessionNum = new AtomicInteger(1);
+
+    // tunable server settings
+    private final ServerConfig config;
+
+    // connection and session events
+    private final EventLog eventLog;
+
+    // first moves of one player games, shared by every session
+    private OpeningBook openingBook;
+
+    // solved last moves of one player games, shared by every session
+    private Tablebase tablebase;
+
+    // positions the computer has searched, shared by every session
+    private SearchTables searchTables;
+
+    // threads shared by every HARD session when ai.threads is above 1
+    private ForkJoinPool searchPool;
+
+    // time the computer gets per move, cut when it takes too much CPU
+    private ThinkBudget thinkBudget;
+
+    // scores of the columns for hints, cached for every session
+    private PositionAnalyzer analyzer;
+
+    // runs sessions and caps how many run at once
+    private SessionExecutor sessions;
+
+    // matches new connections into sessions
+    private Lobby lobby;
+
+    // latencies, results and session counts
+    private ServerMetrics metrics;
+
+    // finished games, or null when they are not recorded
+    private GameRecordStore records;
+
+    // spectators of running sessions, by session number
+    private Spectators spectators;
+    private final Map<Integer, Spectators.Audience> audiences = new ConcurrentHashMap<>();
+
+    // seats of framed players in running sessions, by the id that resumes them
+    private final Map<Long, Seat> seats = new ConcurrentHashMap<>();
+    private final SecureRandom seatIds = new SecureRandom();
+
+    /**
+     * Constructor for a server
+     * @param config server settings
+     */
+    public GameServer(ServerConfig config) {
+        this.config = config;
+        eventLog = EventLog.start(config);
+    }
+
+    /**
+     * Main entry point for a headless server
+     * @param args command line parameters
+     * @throws IOException if the server cannot start
+     */
+    public static void main(String[] args) throws IOException {
+        new GameServer(ServerConfig.load()).run();
+    }
+
+    /**
+     * Sends every later batch of log lines to the listener as well
+     * @param listener receiver of log lines, each ending in a line break
+     */
+    public void addLogListener(Consumer<String> listener) {
+        eventLog.addListener(listener);
+    }
+
+    /**
+     * Starts the server and accepts players until the process ends
+     * @throws IOException if the port cannot be opened
+     */
+    public void run() throws IOException {
+        openingBook = OpeningBook.openIfPresent(config);
+        if (openingBook != null) {
+            eventLog.record(EventLog.Event.BOOK_LOADED, openingBook.size());
+        }
+        tablebase = Tablebase.openIfPresent(config);
+        if (tablebase != null) {
+            eventLog.record(EventLog.Event.TABLEBASE_LOADED, tablebase.size(),
+                    tablebase.getMaxEmpty());
+        }
+
+        records = GameRecordStore.openIfEnabled(config);
+
+        searchTables = new SearchTables(config);
+        if (config.getAiThreads() > 1) {
+            searchPool = new ForkJoinPool(config.getAiThreads());
+        }
+        thinkBudget = new ThinkBudget(config);
+        sessions = new SessionExecutor(config.getMaxSessions(), config.getMaxQueuedSessions());
+        lobby = new Lobby(new LobbyStarter(), SessionExecutor.newThreadPerTaskExecutor(),
+                config.getHandshakeTimeoutMillis(), config.getHelloTimeoutMillis());
+
+        metrics = new ServerMetrics(sessions::getActive, sessions::getQueued, lobby::getQueueDepth,
+                () -> spectators.getWatching(), lobby.getMatchTime(), lobby::getTimedOut);
+        spectators = new Spectators(config.getSpectatorsPerSession(),
+                config.getSpectatorWriteTimeoutMillis(), config.getSpectatorWriterThreads(),
+                metrics);
+        analyzer = new PositionAnalyzer(config, tablebase, searchTables, metrics);
+        metrics.registerMBean(config.getPort());
+        if (config.getMetricsPort() > 0) {
+            metrics.startScrapeEndpoint(config.getMetricsPort());
+        }
+
+        if (config.getMonitorPort() > 0) {
+            ServerSocket monitorSocket = new ServerSocket(config.getMonitorPort());
+            Thread monitors = new Thread(() -> acceptMonitors(monitorSocket), "connect4-monitors");
+            monitors.setDaemon(true);
+            monitors.start();
+        }
+
+        ServerSocket serverSocket = new ServerSocket(config.getPort());
+        eventLog.record(EventLog.Event.SERVER_STARTED, config.getPort(),
+                (int) ManagementFactory.getRuntimeMXBean().getUptime());
+
+        // the lobby reads handshakes off this thread, so accept never waits on a client
+        while (true) {
+            Socket player = serverSocket.accept();
+            eventLog.record(EventLog.Event.PLAYER_CONNECTED,
+                    EventLog.pack(player.getInetAddress()), lobby.getQueueDepth());
+            try {
+                lobby.arrived(player);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                player.close();
+            }
+        }
+    }
+
+    /**
+     * Attaches every monitor that connects to the monitor port
+     * @param monitorSocket the monitor port
+     */
+    private void acceptMonitors(ServerSocket monitorSocket) {
+        try {
+            while (true) {
+                Socket monitor = monitorSocket.accept();
+                addLogListener(new MonitorConnection(monitor));
+                eventLog.record(EventLog.Event.MONITOR_ATTACHED,
+                        EventLog.pack(monitor.getInetAddress()));
+            }
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Nested class that sends log lines to a monitor over the network
+     */
+    private class MonitorConnection implements Consumer<String> {
+
+        private final Socket socket;
+        private final OutputStream out;
+
+        private MonitorConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            out = socket.getOutputStream();
+        }
+
+        @Override
+        public void accept(String lines) {
+            try {
+                out.write(lines.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException ex) {
+                // the monitor went away, so stop sending to it
+                eventLog.removeListener(this);
+                try {
+                    socket.close();
+                } catch (IOException closeEx) {
+                    closeEx.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Nested class that starts the sessions matched by the lobby
+     */
+    private class LobbyStarter implements Lobby.SessionStarter {
+
+        @Override
+        public void startTwoPlayer(GameStream player1, GameStream player2) throws IOException {
+            int id = sessionNum.getAndIncrement();
+            // player 2 has to be able to play the board player 1 asked for
+            Variant variant = player2.hasVariants() ? player1.getVariant() : Variant.STANDARD;
+            eventLog.record(EventLog.Event.TWO_PLAYER_STARTED, id, lobby.getQueueDepth());
+            if (!variant.isStandard()) {
+                eventLog.record(EventLog.Event.SESSION_VARIANT, id,
+                        variant.getRows() << 8 | variant.getColumns(), variant.getConnect());
+            }
+            metrics.gameStarted();
+            startSession(new HandleSession(id, player1, player2, variant), player1, player2);
+        }
+
+        @Override
+        public void startOnePlayer(GameStream player1, int choice) throws IOException {
+            Difficulty difficulty = Difficulty.fromCode(choice, config.getDefaultDifficulty());
+            int id = sessionNum.getAndIncrement();
+            eventLog.record(EventLog.Event.ONE_PLAYER_STARTED, id, difficulty.ordinal());
+            metrics.gameStarted();
+            startSession(new HandleSession(id, player1, difficulty), player1);
+        }
+
+        @Override
+        public void resume(GameStream player) throws IOException {
+            Seat seat = seats.get(player.getResumeId());
+            if (seat == null || !seat.resume(player)) {
+                player.writeResumeFailed();
+                player.close();
+            }
+        }
+
+        @Override
+        public void watch(GameStream spectator) throws IOException {
+            int session = spectator.getWatchedSession();
+            Spectators.Audience audience = audiences.get(session);
+            if (audience == null || !audience.subscribe(spectator)) {
+                spectator.writeWatchFailed();
+                spectator.close();
+                return;
+            }
+            eventLog.record(EventLog.Event.SPECTATOR_JOINED, session, audience.size());
+        }
+    }
+
+    /**
+     * Runs a session, or tells its players the server is busy if the
+     * session cap and queue are both full
+     * @param session the session to run
+     * @param players streams of the session's players
+     * @throws IOException due to server communication
+     */
+    private void startSession(Runnable session, GameStream... players) throws IOException {
+        if (sessions.submit(session)) {
+            return;
+        }
+        eventLog.record(EventLog.Event.SERVER_BUSY, sessions.getActive());
+        metrics.busyRejection();
+        for (GameStream player : players) {
+            player.writeBusy();
+            player.close();
+        }
+    }
+
+    private static void closeQuietly(GameStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Nested class for a player's place in a session, which a framed client
+     * that lost its connection can take back with the seat's id
+     */
+    private static class Seat {
+
+        // id that takes back the seat, or 0 for a legacy player
+        private long id;
+        // connection the session talks to the player on
+        private volatile GameStream stream;
+        // connections of the player coming back, taken by the session
+        private final BlockingQueue<GameStream> replacements = new LinkedBlockingQueue<>();
+        private boolean closed;
+
+        private Seat(GameStream stream) {
+            this.stream = stream;
+        }
+
+        /**
+         * Hands the session a new connection for the seat
+         * @param replacement the player's new connection
+         * @return false if the session is already over
+         */
+        private synchronized boolean resume(GameStream replacement) {
+            if (closed) {
+                return false;
+            }
+            GameStream lost = stream;
+            replacements.add(replacement);
+            // the session may be blocked reading the lost connection, so wake it
+            closeQuietly(lost);
+            return true;
+        }
+
+        /**
+         * Turns away every player still waiting to take the seat back
+         */
+        private synchronized void close() {
+            closed = true;
+            GameStream replacement;
+            while ((replacement = replacements.poll()) != null) {
+                try {
+                    replacement.writeResumeFailed();
+                } catch (IOException ex) {
+                    // the player is gone anyway
+                }
+                closeQuietly(replacement);
+            }
+        }
+    }
+
+    /**
+     * Nested Inner Task class to manage a particular Connect4 game session
+     */
+    private class HandleSession implements Runnable, Connect4Constants {
+
+        private final int id;
+        private Seat player1;
+        private Seat player2;
+
+        private GameBoard board;
+        private int lastTurnRow;
+        private int lastTurnCol;
+
+        private boolean twoPlayerGame;
+        private ComputerPlayer solver;
+
+        // when the last valid move arrived, for its round trip
+        private long moveArrived;
+
+        // columns played so far and when the game started, for its record
+        private byte[] columns;
+        private long startMillis;
+
+        // clients watching the game
+        private Spectators.Audience audience;
+
+        // moves and latency of this session alone
+        private ServerMetrics.SessionStats stats;
+
+
+        /**
+         * Constructor for a thread to handle the Connect4 game
+         * with two players
+         * @param id number of the session
+         * @param p1 client stream for player 1
+         * @param p2 client stream for player 2
+         * @param variant board the game is played on
+         */
+        private HandleSession(int id, GameStream p1, GameStream p2, Variant variant) {
+            this.id = id;
+            // assign seats
+            player1 = new Seat(p1);
+            player2 = new Seat(p2);
+
+            twoPlayerGame = true;
+
+            // initialize new Connect4 game
+            board = GameBoard.create(variant);
+            columns = new byte[variant.getCells()];
+        }
+
+        /**
+         * Constructor for a thread to handle the Connect4 game
+         * with one player
+         * @param id number of the session
+         * @param p1 client stream for player 1
+         * @param difficulty strength of the computer opponent
+         */
+        private HandleSession(int id, GameStream p1, Difficulty difficulty) {
+            this.id = id;
+            player1 = new Seat(p1);
+            twoPlayerGame = false;
+            // the computer only plays the standard board
+            board = new Connect4Board();
+            columns = new byte[Connect4Board.CELLS];
+            solver = ComputerOpponent.create(difficulty, config, openingBook, tablebase,
+                    searchTables, searchPool);
+        }
+
+        /**
+         * The control method for the task
+         */
+        @Override
+        public void run() {
+
+            startMillis = System.currentTimeMillis();
+            stats = metrics.sessionStarted(id);
+            audience = spectators.newAudience(board.getVariant(), columns);
+            audiences.put(id, audience);
+            try {
+                open(player1);
+                if (twoPlayerGame) {
+                    open(player2);
+                }
+
+                // give player 1 ok to start game
+                try {
+                    player1.stream.writeStart(1);
+                } catch (IOException ex) {
+                    awaitResume(player1);
+                }
+
+                while (true) {
+                    // receive move from player 1 & ensure it is a valid move
+                    playerTurn(player1);
+
+                    // determine if p1 made winning move, else next player takes turn
+                    if (sendStatus(player1, checkForWin())) break; //game over
+
+                    if (twoPlayerGame) {
+                        // receive move from p2
+                        playerTurn(player2);
+
+                        // check if p2 made winning move
+                        if (sendStatus(player2, checkForWin())) break;
+                    } else {
+                        takeComputerTurn();
+
+                        if (sendStatus(null, checkForWin())) break;
+                    }
+                }
+            } catch (IOException ex) {
+                // a player disconnected for good, which is routine for a server
+                eventLog.record(EventLog.Event.SESSION_ABORTED, id);
+                metrics.gameAborted();
+            } finally {
+                metrics.sessionEnded(id);
+                audiences.remove(id);
+                audience.close();
+                close(player1);
+                if (twoPlayerGame) {
+                    close(player2);
+                }
+            }
+
+        }
+
+        /**
+         * Gives a framed player the id that takes back their seat, and the
+         * board if they can play other boards
+         * @param seat seat of the player
+         * @throws IOException due to server communication
+         */
+        private void open(Seat seat) throws IOException {
+            if (!seat.stream.isFramed()) {
+                return;
+            }
+            long seatId;
+            do {
+                seatId = seatIds.nextLong();
+            } while (seatId == 0 || seats.putIfAbsent(seatId, seat) != null);
+            seat.id = seatId;
+            seat.stream.writeSession(seatId, id);
+            seat.stream.writeVariant(board.getVariant());
+        }
+
+        private void close(Seat seat) {
+            if (seat.id != 0) {
+                seats.remove(seat.id);
+            }
+            seat.close();
+        }
+
+        /**
+         * Waits for a player whose connection failed to reconnect, then
+         * sends them every move so far
+         * @param seat seat of the player
+         * @throws IOException if the player is a legacy client or does not
+         *                     come back within the grace window
+         */
+        private void awaitResume(Seat seat) throws IOException {
+            closeQuietly(seat.stream);
+            int player = seat == player1 ? 1 : 2;
+            if (seat.id == 0) {
+                throw new IOException("player " + player + " cannot resume");
+            }
+            int graceMillis = config.getResumeGraceMillis();
+            eventLog.record(EventLog.Event.SESSION_SUSPENDED, id, player, graceMillis);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(graceMillis);
+            while (true) {
+                GameStream replacement;
+                try {
+                    replacement = seat.replacements.poll(deadline - System.nanoTime(),
+                            TimeUnit.NANOSECONDS);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("interrupted waiting for player " + player);
+                }
+                if (replacement == null) {
+                    throw new IOException("player " + player + " did not reconnect");
+                }
+                try {
+                    replacement.writeResumed(board.getVariant(), columns, board.getMoves());
+                    seat.stream = replacement;
+                    eventLog.record(EventLog.Event.SESSION_RESUMED, id, player);
+                    metrics.playerResumed();
+                    return;
+                } catch (IOException ex) {
+                    // lost again already, wait for the next try
+                    closeQuietly(replacement);
+                }
+            }
+        }
+
+        /**
+         * Reads moves from a player until one is valid and plays it
+         * @param seat seat of the player whose turn it is
+         * @throws IOException if the player disconnected for good
+         */
+        private void playerTurn(Seat seat) throws IOException {
+            while (true) {
+                try {
+                    int column = readMove(seat);
+                    while (takeTurn(column) == INVALID_TURN) {
+                        metrics.invalidTurn();
+                        seat.stream.writeInvalidTurn();
+                        column = readMove(seat);
+                    }
+                    moveArrived = System.nanoTime();
+                    return;
+                } catch (IOException ex) {
+                    awaitResume(seat);
+                }
+            }
+        }
+
+        /**
+         * Reads the player's next move, answering any hints they ask for
+         * first
+         * @return the column, counting from 1
+         */
+        private int readMove(Seat seat) throws IOException {
+            int column = seat.stream.readMove();
+            while (column == HINT_REQUEST && seat.stream.isFramed()) {
+                seat.stream.writeHint(hint());
+                column = seat.stream.readMove();
+            }
+            return column;
+        }
+
+        /**
+         * Scores the columns for the player whose turn it is
+         * @return the scores, or null on boards the analyzer cannot play
+         */
+        private int[] hint() {
+            if (!board.getVariant().isStandard()) {
+                return null;
+            }
+            long start = System.nanoTime();
+            int[] scores = analyzer.analyze((Connect4Board) board,
+                    start + thinkBudget.getMoveNanos());
+            thinkBudget.spent(System.nanoTime() - start);
+            metrics.hintSent();
+            return scores;
+        }
+
+        /**
+         * Method that sends the status of the game and the last move to every
+         * player. The mover's message also tells them their move was valid,
+         * and each player gets one write per turn. The method is called after
+         * each turn.
+         * @param mover seat of the player who just went, or null for the
+         *              computer
+         * @param status status of game
+         * @return true if the game is over due to tie or win
+         * @throws IOException if a player disconnected for good
+         */
+        private boolean sendStatus(Seat mover, int status) throws IOException {
+            sendTurn(player1, mover == player1, status);
+            if (twoPlayerGame) {
+                sendTurn(player2, mover == player2, status);
+            }
+            stats.moved(board.getMoves());
+            if (mover != null) {
+                long roundTrip = System.nanoTime() - moveArrived;
+                metrics.moveRoundTrip(roundTrip);
+                stats.roundTrip(roundTrip);
+            }
+            // spectators after the players, so they never slow a turn down
+            audience.publish(board.getMoves());
+            if (status != CONTINUE) {
+                eventLog.record(EventLog.Event.SESSION_ENDED, id, status);
+                metrics.gameEnded(status);
+                if (records != null) {
+                    records.append(new GameRecordStore.Game(id, startMillis,
+                            (int) (System.currentTimeMillis() - startMillis), status,
+                            board.getVariant(), columns, board.getMoves()));
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Sends the turn to one player. A player whose connection failed
+         * sees the turn in the moves sent when they resume, or misses it if
+         * the game is over.
+         */
+        private void sendTurn(Seat seat, boolean ownMove, int status) throws IOException {
+            try {
+                seat.stream.writeTurn(ownMove, status, lastTurnRow, lastTurnCol);
+            } catch (IOException ex) {
+                if (status == CONTINUE) {
+                    awaitResume(seat);
+                }
+            }
+        }
+
+        /**
+         * Determines if the column specified is a valid move
+         * @param col the column the user selected
+         * @return true if the column is within the bounds of the board and
+         *         has available spaces.
+         */
+        private boolean validTurn(int col) {
+            // adjust column for array indicies
+            return board.canPlay(col - 1);
+        }
+
+        /**
+         * Updates the board with the most recent turn (if valid) then switches
+         * turns
+         * @param col the column the user selected
+         */
+        private int takeTurn(int col) {
+            int result = CONTINUE;
+            if (validTurn(col)) {
+                // adjust column for array indicies
+                col -= 1;
+                // the board switches turns once the token is placed
+                lastTurnRow = board.play(col);
+                lastTurnCol = col;
+                columns[board.getMoves() - 1] = (byte) col;
+            }
+            else {
+                result = INVALID_TURN;
+            }
+            return result;
+        }
+
+        /**
+         * Searches for the computer's move and plays it
+         */
+        private void takeComputerTurn() {
+            long start = System.nanoTime();
+            long budget = thinkBudget.getMoveNanos();
+            int column = solver.bestMove((Connect4Board) board, start + budget);
+            long think = System.nanoTime() - start;
+            thinkBudget.spent(think);
+            metrics.aiThink(think, budget);
+            // adjust column from array index to the column a user would pick
+            takeTurn(column + 1);
+        }
+
+
+        /**
+         * Checks if there is a win
+         *
+         * @return 1 if player 1 won, 2 if player 2 won, 0 if no
+         * winner yet, -1 if tie
+         */
+        private int checkForWin() {
+            return board.status();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,765 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.GameStream class carries game messages between the server and
+ * one client, in either of two wire formats.
+ *
+ * The legacy format is the original sequence of bare ints. The framed
+ * format sends every game event as a single frame: an int length, a byte
+ * message type and the payload, where the length counts the type and
+ * payload. A client asks for frames by sending PROTOCOL_HELLO as soon as it
+ * connects, and the server answers with the same value after the token.
+ * Clients that never send it keep the legacy format.
+ *
+ * Output is buffered in both formats and flushed once per game event, so
+ * a whole turn result leaves in one write.
+ *
+ * A framed client is sent the id of its seat when its session starts. If
+ * the connection fails, the client can connect again, send PROTOCOL_RESUME
+ * and the id in place of the hello, and is sent the moves played so far.
+ *
+ * A client that says hello with PROTOCOL_HELLO_VARIANTS can ask for a two
+ * player game on another board with TWO_PLAYER_VARIANT, and is told the
+ * board of every game it starts or resumes in a MSG_VARIANT frame. Other
+ * clients only ever play on the standard board.
+ *
+ * A spectator sends PROTOCOL_WATCH and a session number in place of the
+ * hello. It is then sent the whole game in a MSG_WATCHING frame after
+ * every move. The session encodes that frame once and writes the same
+ * bytes to every spectator with writeShared.
+ *
+ * A player who said hello with PROTOCOL_HELLO_VARIANTS can send MSG_HINT
+ * during their turn, and is sent a score for every column of the position
+ * before they move.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+public class GameStream implements Connect4Constants {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private boolean framed;
+    // true if the other end can play on boards other than the standard one
+    private boolean variants;
+    // on the server the board player 1 asked for, on the client the board
+    // of the current game
+    private Variant variant = Variant.STANDARD;
+
+    // the seat id a client asked to resume, or on the client the id the
+    // server gave this session's seat
+    private long resumeId;
+
+    // the session a spectator asked to watch
+    private int watchedSession;
+    // on the client the number of the session the server sent
+    private int session;
+
+    // a turn frame read early by readMoveResult, kept for readStatus
+    private boolean turnPending;
+    private int status;
+    private int row;
+    private int column;
+
+    /**
+     * Constructor for a stream on a connected socket, in the legacy format
+     * until a hello is exchanged
+     * @param socket the connection
+     * @throws IOException if the socket streams cannot be opened
+     */
+    public GameStream(Socket socket) throws IOException {
+        this.socket = socket;
+        // every game event is flushed at once, so waiting for more data only adds delay
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * @return the connection
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * @return true if this stream uses the framed format
+     */
+    public boolean isFramed() {
+        return framed;
+    }
+
+    /**
+     * @return true if the other end said hello with PROTOCOL_HELLO_VARIANTS
+     *         and so can play on other boards
+     */
+    public boolean hasVariants() {
+        return variants;
+    }
+
+    /**
+     * @return on the server the board player 1 asked for, on the client the
+     *         board of the current game
+     */
+    public Variant getVariant() {
+        return variant;
+    }
+
+    /**
+     * @return on the server the seat id the client asked to resume, on the
+     *         client the seat id the server sent, or 0 if there is none
+     */
+    public long getResumeId() {
+        return resumeId;
+    }
+
+    /**
+     * @return on the server the number of the session a spectator asked to
+     *         watch
+     */
+    public int getWatchedSession() {
+        return watchedSession;
+    }
+
+    /**
+     * @return on the client the number of the session, once the server has
+     *         sent it, otherwise 0
+     */
+    public int getSession() {
+        return session;
+    }
+
+    /**
+     * Closes the connection
+     * @throws IOException if the socket cannot be closed
+     */
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    // ----- server side -----
+
+    /**
+     * Sends the player their token
+     * @param token PLAYER_1 or PLAYER_2
+     * @throws IOException due to server communication
+     */
+    public void writeToken(char token) throws IOException {
+        out.writeChar(token);
+        out.flush();
+    }
+
+    /**
+     * Reads the first int a client sends. A hello switches this stream to
+     * frames and is answered, then the int after it is returned. The board
+     * after TWO_PLAYER_VARIANT is kept for getVariant, and is only honoured
+     * from a client that can play it and when a Variant allows it.
+     * @return the first int after any hello, TWO_PLAYER_GAME for either
+     *         two player choice, PROTOCOL_RESUME if the client asked to
+     *         resume a seat or PROTOCOL_WATCH if it asked to watch a session
+     * @throws IOException due to server communication
+     */
+    public int readHandshakeInt() throws IOException {
+        int value = in.readInt();
+        if (value == PROTOCOL_HELLO || value == PROTOCOL_HELLO_VARIANTS) {
+            acceptHello(value);
+            value = in.readInt();
+        } else if (value == PROTOCOL_RESUME) {
+            acceptResume();
+        } else if (value == PROTOCOL_WATCH) {
+            acceptWatch();
+        }
+        if (value == TWO_PLAYER_VARIANT) {
+            int rows = in.readInt();
+            int columns = in.readInt();
+            int connect = in.readInt();
+            if (variants) {
+                variant = Variant.orStandard(rows, columns, connect);
+            }
+            value = TWO_PLAYER_GAME;
+        }
+        return value;
+    }
+
+    /**
+     * Checks whether a client that sends nothing in the legacy handshake,
+     * like player 2, has sent a hello. Waits at most the timeout for it.
+     * @param timeoutMillis how long to wait for the hello
+     * @return PROTOCOL_HELLO, PROTOCOL_HELLO_VARIANTS, PROTOCOL_RESUME or
+     *         PROTOCOL_WATCH if the client sent one, otherwise 0
+     * @throws IOException due to server communication
+     */
+    public int detectHello(int timeoutMillis) throws IOException {
+        socket.setSoTimeout(timeoutMillis);
+        try {
+            // mark the buffer so a legacy client's early bytes are not lost
+            in.mark(Integer.BYTES);
+            int value = in.readInt();
+            if (value == PROTOCOL_HELLO || value == PROTOCOL_HELLO_VARIANTS) {
+                acceptHello(value);
+                return value;
+            }
+            if (value == PROTOCOL_RESUME) {
+                acceptResume();
+                return value;
+            }
+            if (value == PROTOCOL_WATCH) {
+                acceptWatch();
+                return value;
+            }
+            in.reset();
+        } catch (java.net.SocketTimeoutException ex) {
+            // a legacy client sends nothing until its first move
+            in.reset();
+        } finally {
+            socket.setSoTimeout(0);
+        }
+        return 0;
+    }
+
+    private void acceptHello(int hello) throws IOException {
+        framed = true;
+        variants = hello == PROTOCOL_HELLO_VARIANTS;
+        out.writeInt(hello);
+        out.flush();
+    }
+
+    private void acceptResume() throws IOException {
+        // only clients that say hello with variants know how to resume
+        framed = true;
+        variants = true;
+        resumeId = in.readLong();
+    }
+
+    private void acceptWatch() throws IOException {
+        framed = true;
+        variants = true;
+        watchedSession = in.readInt();
+    }
+
+    /**
+     * Sends a framed player the id that takes back their seat, and does
+     * nothing for a legacy player. A player who can play other boards is
+     * also sent the number of the session, which spectators watch it by.
+     * @param id the seat id
+     * @param session number of the session
+     * @throws IOException due to server communication
+     */
+    public void writeSession(long id, int session) throws IOException {
+        if (variants) {
+            writeFrameHeader(MSG_SESSION, Long.BYTES + Integer.BYTES);
+            out.writeLong(id);
+            out.writeInt(session);
+            out.flush();
+        } else if (framed) {
+            writeFrameHeader(MSG_SESSION, Long.BYTES);
+            out.writeLong(id);
+            out.flush();
+        }
+    }
+
+    /**
+     * Tells a player who can play other boards which board their game is
+     * on, and does nothing for other players, who only play the standard one
+     * @param board rows, columns and tokens in a row that win
+     * @throws IOException due to server communication
+     */
+    public void writeVariant(Variant board) throws IOException {
+        if (variants) {
+            writeFrameHeader(MSG_VARIANT, 3);
+            writeVariantBytes(board);
+            out.flush();
+        }
+    }
+
+    private void writeVariantBytes(Variant board) throws IOException {
+        out.writeByte(board.getRows());
+        out.writeByte(board.getColumns());
+        out.writeByte(board.getConnect());
+    }
+
+    /**
+     * Sends a resumed player the board and every move played so far, two
+     * columns to a byte with the earlier move in the high nibble
+     * @param board rows, columns and tokens in a row that win
+     * @param columns columns played, counting from 0
+     * @param moves number of moves played
+     * @throws IOException due to server communication
+     */
+    public void writeResumed(Variant board, byte[] columns, int moves) throws IOException {
+        out.write(encodeGame(MSG_RESUMED, board, columns, moves));
+        out.flush();
+    }
+
+    /**
+     * Encodes a whole game as one frame: the board, the number of moves
+     * and the columns played, two to a byte with the earlier move in the
+     * high nibble
+     * @param type MSG_RESUMED or MSG_WATCHING
+     * @param board rows, columns and tokens in a row that win
+     * @param columns columns played, counting from 0
+     * @param moves number of moves played
+     * @return the frame, ready to write to any framed stream
+     */
+    public static byte[] encodeGame(byte type, Variant board, byte[] columns, int moves) {
+        int payloadBytes = 4 + (moves + 1) / 2;
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + 1 + payloadBytes);
+        frame.putInt(1 + payloadBytes).put(type);
+        frame.put((byte) board.getRows()).put((byte) board.getColumns())
+                .put((byte) board.getConnect()).put((byte) moves);
+        for (int i = 0; i < moves; i += 2) {
+            int low = i + 1 < moves ? columns[i + 1] : 0;
+            frame.put((byte) (columns[i] << 4 | low));
+        }
+        return frame.array();
+    }
+
+    /**
+     * Writes a frame encoded once for many streams, such as a spectator
+     * update, straight to the socket so it is never copied into this
+     * stream's buffer. The frame must not be changed afterwards.
+     * @param frame whole frame from encodeGame
+     * @throws IOException due to server communication
+     */
+    public void writeShared(byte[] frame) throws IOException {
+        out.flush();
+        socket.getOutputStream().write(frame);
+    }
+
+    /**
+     * Tells a spectator the session cannot be watched, because it is
+     * unknown, over or has too many spectators
+     * @throws IOException due to server communication
+     */
+    public void writeWatchFailed() throws IOException {
+        writeFrameHeader(MSG_WATCH_FAILED, 0);
+        out.flush();
+    }
+
+    /**
+     * Tells a client its seat cannot be resumed, because the id is unknown
+     * or the session is over
+     * @throws IOException due to server communication
+     */
+    public void writeResumeFailed() throws IOException {
+        writeFrameHeader(MSG_RESUME_FAILED, 0);
+        out.flush();
+    }
+
+    /**
+     * Sends the start signal, or SERVER_BUSY if the game cannot start
+     * @param signal 1 to start, or SERVER_BUSY
+     * @throws IOException due to server communication
+     */
+    public void writeStart(int signal) throws IOException {
+        if (framed) {
+            writeFrameHeader(signal == SERVER_BUSY ? MSG_BUSY : MSG_START, 0);
+        } else {
+            out.writeInt(signal);
+        }
+        out.flush();
+    }
+
+    /**
+     * Tells player 2 the game cannot start, in place of the first status
+     * @throws IOException due to server communication
+     */
+    public void writeBusy() throws IOException {
+        if (framed) {
+            writeFrameHeader(MSG_BUSY, 0);
+        } else {
+            out.writeInt(SERVER_BUSY);
+        }
+        out.flush();
+    }
+
+    /**
+     * Tells the player their move was not valid
+     * @throws IOException due to server communication
+     */
+    public void writeInvalidTurn() throws IOException {
+        if (framed) {
+            writeFrameHeader(MSG_INVALID_TURN, 0);
+        } else {
+            out.writeInt(INVALID_TURN);
+        }
+        out.flush();
+    }
+
+    /**
+     * Sends the result of a turn in one write
+     * @param ownMove true if this player made the move, which confirms it
+     *                was valid
+     * @param status status of the game after the move
+     * @param row row of the move
+     * @param col column of the move
+     * @throws IOException due to server communication
+     */
+    public void writeTurn(boolean ownMove, int status, int row, int col) throws IOException {
+        if (framed) {
+            writeFrameHeader(MSG_TURN, 3 * Integer.BYTES);
+        } else if (ownMove) {
+            out.writeInt(VALID_TURN);
+        }
+        out.writeInt(status);
+        out.writeInt(row);
+        out.writeInt(col);
+        out.flush();
+    }
+
+    /**
+     * Sends the scores of the columns a player asked for. The message
+     * means nothing to a legacy client and is never sent to one.
+     * @param scores one score per column from the player's point of view,
+     *               or null if there is no hint for this game
+     * @throws IOException due to server communication
+     */
+    public void writeHint(int[] scores) throws IOException {
+        int count = scores == null ? 0 : scores.length;
+        writeFrameHeader(MSG_HINT, 1 + count * Integer.BYTES);
+        out.writeByte(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(scores[i]);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads the column the player chose
+     * @return the column, counting from 1, or HINT_REQUEST if the player
+     *         asked for a hint first
+     * @throws IOException due to server communication
+     */
+    public int readMove() throws IOException {
+        if (!framed) {
+            return in.readInt();
+        }
+        while (true) {
+            int length = readFrameLength();
+            int type = in.readByte();
+            if (type == MSG_MOVE) {
+                if (length != 1 + Integer.BYTES) {
+                    throw new IOException("move frame of " + length + " bytes");
+                }
+                return in.readInt();
+            }
+            if (type == MSG_HINT) {
+                in.skipBytes(length - 1);
+                return HINT_REQUEST;
+            }
+            // skip messages this server does not understand
+            in.skipBytes(length - 1);
+        }
+    }
+
+    // ----- client side -----
+
+    /**
+     * Asks the server for the framed format and other boards, sent as soon
+     * as the client connects
+     * @throws IOException due to server communication
+     */
+    public void writeHello() throws IOException {
+        out.writeInt(PROTOCOL_HELLO_VARIANTS);
+        out.flush();
+    }
+
+    /**
+     * Asks the server for the seat this client lost the connection to, sent
+     * in place of the hello. The token the server sends next is read with
+     * readToken(false) and means nothing, then the game comes in
+     * readResumed.
+     * @param id seat id the server sent on the lost connection
+     * @throws IOException due to server communication
+     */
+    public void writeResume(long id) throws IOException {
+        framed = true;
+        variants = true;
+        resumeId = id;
+        out.writeInt(PROTOCOL_RESUME);
+        out.writeLong(id);
+        out.flush();
+    }
+
+    /**
+     * Reads the game a resumed seat rejoins
+     * @return a board with every move so far played, or null if the seat
+     *         could not be resumed
+     * @throws IOException due to server communication
+     */
+    public GameBoard readResumed() throws IOException {
+        if (readFrame() != MSG_RESUMED) {
+            return null;
+        }
+        return readGame();
+    }
+
+    /**
+     * Asks the server to watch a session, sent in place of the hello. The
+     * token the server sends next is read with readToken(false) and means
+     * nothing, then the game comes in readWatched.
+     * @param session number of the session
+     * @throws IOException due to server communication
+     */
+    public void writeWatch(int session) throws IOException {
+        framed = true;
+        variants = true;
+        out.writeInt(PROTOCOL_WATCH);
+        out.writeInt(session);
+        out.flush();
+    }
+
+    /**
+     * Reads the game being watched after its latest move. A spectator that
+     * falls behind skips straight to the latest move.
+     * @return a board with every move so far played, or null if the
+     *         session cannot be watched
+     * @throws IOException due to server communication, or at the end of
+     *                     the stream once the game is over
+     */
+    public GameBoard readWatched() throws IOException {
+        if (readFrame() != MSG_WATCHING) {
+            return null;
+        }
+        return readGame();
+    }
+
+    private GameBoard readGame() throws IOException {
+        readVariantBytes();
+        int moves = in.readUnsignedByte();
+        GameBoard board = GameBoard.create(variant);
+        for (int i = 0; i < moves; i += 2) {
+            int packed = in.readUnsignedByte();
+            board.play(packed >>> 4);
+            if (i + 1 < moves) {
+                board.play(packed & 0xF);
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Reads the player's token and, after a hello, the server's answer
+     * @param helloSent true if writeHello was called
+     * @return PLAYER_1 or PLAYER_2
+     * @throws IOException due to server communication
+     */
+    public char readToken(boolean helloSent) throws IOException {
+        char token = in.readChar();
+        if (helloSent) {
+            int answer = in.readInt();
+            framed = answer == PROTOCOL_HELLO || answer == PROTOCOL_HELLO_VARIANTS;
+            variants = answer == PROTOCOL_HELLO_VARIANTS;
+        }
+        return token;
+    }
+
+    /**
+     * Sends player 1's game choice
+     * @param choice TWO_PLAYER_GAME or a one player game type
+     * @throws IOException due to server communication
+     */
+    public void writeChoice(int choice) throws IOException {
+        out.writeInt(choice);
+        out.flush();
+    }
+
+    /**
+     * Asks for a two player game on a board. A server that cannot play
+     * other boards is asked for a standard game instead. Either way the
+     * board of the game is known from getVariant once it starts.
+     * @param board rows, columns and tokens in a row that win
+     * @throws IOException due to server communication
+     */
+    public void writeChoice(Variant board) throws IOException {
+        if (!variants || board.isStandard()) {
+            writeChoice(TWO_PLAYER_GAME);
+            return;
+        }
+        out.writeInt(TWO_PLAYER_VARIANT);
+        out.writeInt(board.getRows());
+        out.writeInt(board.getColumns());
+        out.writeInt(board.getConnect());
+        out.flush();
+    }
+
+    /**
+     * Reads the start signal
+     * @return 1 to start, or SERVER_BUSY
+     * @throws IOException due to server communication
+     */
+    public int readStart() throws IOException {
+        if (!framed) {
+            return in.readInt();
+        }
+        return readFrame() == MSG_BUSY ? SERVER_BUSY : 1;
+    }
+
+    /**
+     * Sends the column the player chose
+     * @param col the column, counting from 1
+     * @throws IOException due to server communication
+     */
+    public void writeMove(int col) throws IOException {
+        if (framed) {
+            writeFrameHeader(MSG_MOVE, Integer.BYTES);
+        }
+        out.writeInt(col);
+        out.flush();
+    }
+
+    /**
+     * Asks for the scores of the columns during this player's turn. Only
+     * servers that said hello with PROTOCOL_HELLO_VARIANTS answer, so ask
+     * only if hasVariants is true.
+     * @throws IOException due to server communication
+     */
+    public void writeHintRequest() throws IOException {
+        writeFrameHeader(MSG_HINT, 0);
+        out.flush();
+    }
+
+    /**
+     * Reads the answer to writeHintRequest
+     * @return a score for each column counting from 0, from this player's
+     *         point of view, or an empty array if the server has no hint
+     *         for this game
+     * @throws IOException due to server communication
+     */
+    public int[] readHint() throws IOException {
+        if (readFrame() != MSG_HINT) {
+            return new int[0];
+        }
+        int[] scores = new int[in.readUnsignedByte()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = in.readInt();
+        }
+        return scores;
+    }
+
+    /**
+     * Reads whether the player's move was valid
+     * @return VALID_TURN or INVALID_TURN
+     * @throws IOException due to server communication
+     */
+    public int readMoveResult() throws IOException {
+        if (!framed) {
+            return in.readInt();
+        }
+        if (readFrame() == MSG_INVALID_TURN) {
+            return INVALID_TURN;
+        }
+        // the turn frame both confirms the move and carries its result
+        turnPending = true;
+        return VALID_TURN;
+    }
+
+    /**
+     * Reads the status after a turn. The row and column of the turn are
+     * read next with readRow and readColumn.
+     * @return the game status, or SERVER_BUSY
+     * @throws IOException due to server communication
+     */
+    public int readStatus() throws IOException {
+        if (!framed) {
+            return in.readInt();
+        }
+        if (turnPending) {
+            turnPending = false;
+            return status;
+        }
+        return readFrame() == MSG_BUSY ? SERVER_BUSY : status;
+    }
+
+    /**
+     * @return row of the last turn
+     * @throws IOException due to server communication
+     */
+    public int readRow() throws IOException {
+        return framed ? row : in.readInt();
+    }
+
+    /**
+     * @return column of the last turn
+     * @throws IOException due to server communication
+     */
+    public int readColumn() throws IOException {
+        return framed ? column : in.readInt();
+    }
+
+    // ----- frames -----
+
+    private void writeFrameHeader(int type, int payloadBytes) throws IOException {
+        out.writeInt(1 + payloadBytes);
+        out.writeByte(type);
+    }
+
+    /**
+     * Reads the length that starts a frame
+     * @return the length, counting the type and payload
+     * @throws IOException due to server communication, or if the length
+     *                     cannot be a frame's, since the stream can no
+     *                     longer be followed
+     */
+    private int readFrameLength() throws IOException {
+        int length = in.readInt();
+        if (length < 1) {
+            throw new IOException("frame length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Reads the next frame the client understands
+     * @return the message type
+     * @throws IOException due to server communication
+     */
+    private int readFrame() throws IOException {
+        while (true) {
+            int length = readFrameLength();
+            int type = in.readByte();
+            if (type == MSG_TURN) {
+                status = in.readInt();
+                row = in.readInt();
+                column = in.readInt();
+                return type;
+            }
+            if (type == MSG_SESSION) {
+                resumeId = in.readLong();
+                if (length > 1 + Long.BYTES) {
+                    session = in.readInt();
+                }
+                continue;
+            }
+            if (type == MSG_VARIANT) {
+                readVariantBytes();
+                continue;
+            }
+            // the payload of a whole game is read by readGame
+            if (type == MSG_START || type == MSG_BUSY || type == MSG_INVALID_TURN
+                    || type == MSG_RESUMED || type == MSG_RESUME_FAILED
+                    || type == MSG_WATCHING || type == MSG_WATCH_FAILED || type == MSG_HINT) {
+                return type;
+            }
+            in.skipBytes(length - 1);
+        }
+    }
+
+    private void readVariantBytes() throws IOException {
+        int rows = in.readUnsignedByte();
+        int columns = in.readUnsignedByte();
+        int connect = in.readUnsignedByte();
+        variant = Variant.orStandard(rows, columns, connect);
+    }
+}
@@ -0,0 +1,127 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Histogram class counts how often values fall into buckets that
+ * grow with the value, like an HDR histogram. Values below 64 get a bucket
+ * each. Above that every power of two is split into 32 buckets, so any
+ * value is known to within about 3% and the whole range of a long fits in
+ * under 2000 buckets.
+ *
+ * Recording is one atomic increment on a fixed array, so it never allocates
+ * and never blocks, and can be called from any thread on the turn loop.
+ *
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class Histogram {
+
+    // values below 2^SUB_BITS get a bucket each, and every power of two
+    // above is split into 2^(SUB_BITS - 1) buckets
+    private static final int SUB_BITS = 6;
+    private static final int LINEAR = 1 << SUB_BITS;
+    private static final int HALF = LINEAR / 2;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS) * HALF;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts one value
+     * @param value the value, negative values count as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucket(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long seen = max.get();
+        while (value > seen && !max.compareAndSet(seen, value)) {
+            seen = max.get();
+        }
+    }
+
+    static int bucket(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BITS + 1;
+        // the top SUB_BITS bits of the value, from HALF to LINEAR - 1
+        int top = (int) (value >>> shift);
+        return LINEAR + (magnitude - SUB_BITS) * HALF + top - HALF;
+    }
+
+    /**
+     * @return the largest value that falls into the bucket
+     */
+    static long highestValue(int bucket) {
+        if (bucket < LINEAR) {
+            return bucket;
+        }
+        int magnitude = (bucket - LINEAR) / HALF + SUB_BITS;
+        int shift = magnitude - SUB_BITS + 1;
+        long top = (bucket - LINEAR) % HALF + HALF;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * @return number of values counted
+     */
+    public long getCount() {
+        return total.get();
+    }
+
+    /**
+     * @return largest value counted, or 0 if none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return total of the values counted
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * @return average of the values counted, or 0 if none
+     */
+    public double getMean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * Finds the value that the given share of values is at or below. Values
+     * recorded while this runs may or may not be included.
+     * @param percent share of values, from 0 to 100
+     * @return the highest value in the bucket holding that share, at most
+     *         the largest value counted, or 0 if none were counted
+     */
+    public long getPercentile(double percent) {
+        long count = total.get();
+        if (count == 0) {
+            return 0;
+        }
+        long wanted = Math.max(1, (long) Math.ceil(percent / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= wanted) {
+                return Math.min(highestValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+}
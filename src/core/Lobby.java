@@ -0,0 +1,246 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Lobby class takes new connections off the accept thread of
+ * core.GameServer and matches them into sessions. Each connection is
+ * given its token right away, and the game choice of player 1 is read on
+ * its own thread, so a slow or idle client never holds up anyone else.
+ *
+ * Players who ask for a two player game wait in a FIFO queue, and the next
+ * connection to arrive becomes player 2 of the longest waiting player.
+ * One player games start as soon as the choice is read.
+ *
+ * Each connection is wrapped in a core.GameStream, and the handshake
+ * threads also find out whether the client asked for the framed protocol.
+ * A client that asks to resume a seat or to watch a session instead is
+ * handed to the starter and never matched, and a player 1 it was paired
+ * with goes back to the front of the queue.
+ *
+ * The time each player 1 waits for an opponent goes into a
+ * core.Histogram, which core.ServerMetrics exports with the number of
+ * players dropped for taking too long to choose.
+ *
+ */
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Lobby implements Connect4Constants {
+
+    /**
+     * Starts the sessions the lobby matches up
+     */
+    public interface SessionStarter {
+
+        /**
+         * @param player1 stream of player 1
+         * @param player2 stream of player 2
+         * @throws IOException due to server communication
+         */
+        void startTwoPlayer(GameStream player1, GameStream player2) throws IOException;
+
+        /**
+         * @param player1 stream of the player
+         * @param choice game choice the player sent, including difficulty
+         * @throws IOException due to server communication
+         */
+        void startOnePlayer(GameStream player1, int choice) throws IOException;
+
+        /**
+         * @param player stream of a client asking for the seat with the id
+         *               in getResumeId
+         * @throws IOException due to server communication
+         */
+        void resume(GameStream player) throws IOException;
+
+        /**
+         * @param spectator stream of a client asking to watch the session
+         *                  numbered in getWatchedSession
+         * @throws IOException due to server communication
+         */
+        void watch(GameStream spectator) throws IOException;
+    }
+
+    private final SessionStarter starter;
+    private final ExecutorService handshakes;
+    private final int handshakeTimeoutMillis;
+    private final int helloTimeoutMillis;
+
+    // player 1 streams waiting for an opponent, oldest first
+    private final Deque<GameStream> waiting = new ArrayDeque<>();
+    private final Deque<Long> waitingSince = new ArrayDeque<>();
+
+    // time from player 1 choosing a two player game to being matched, in
+    // nanoseconds
+    private final Histogram matchTime = new Histogram();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    /**
+     * Constructor for a lobby
+     * @param starter starts matched sessions
+     * @param handshakes threads that read game choices
+     * @param handshakeTimeoutMillis how long player 1 may take to choose
+     * @param helloTimeoutMillis how long to wait for player 2 to ask for the
+     *                           framed protocol
+     */
+    public Lobby(SessionStarter starter, ExecutorService handshakes,
+                 int handshakeTimeoutMillis, int helloTimeoutMillis) {
+        this.starter = starter;
+        this.handshakes = handshakes;
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+        this.helloTimeoutMillis = helloTimeoutMillis;
+    }
+
+    /**
+     * Takes a newly accepted connection. Only the token is written on the
+     * calling thread, so this returns at once.
+     * @param player the new connection
+     * @throws IOException due to server communication
+     */
+    public void arrived(Socket player) throws IOException {
+        GameStream stream = new GameStream(player);
+        GameStream opponent;
+        long since = 0;
+        synchronized (this) {
+            opponent = waiting.poll();
+            if (opponent != null) {
+                since = waitingSince.poll();
+            }
+        }
+
+        if (opponent != null) {
+            // Notify player of their token
+            stream.writeToken(PLAYER_2);
+            long opponentSince = since;
+            handshakes.execute(() -> join(opponent, opponentSince, stream));
+            return;
+        }
+
+        // Notify player of their token
+        stream.writeToken(PLAYER_1);
+        handshakes.execute(() -> handshake(stream));
+    }
+
+    /**
+     * Reads player 1's game choice and queues or starts their game
+     * @param player stream of player 1
+     */
+    private void handshake(GameStream player) {
+        try {
+            player.getSocket().setSoTimeout(handshakeTimeoutMillis);
+            int choice = player.readHandshakeInt();
+            player.getSocket().setSoTimeout(0);
+
+            if (choice == PROTOCOL_RESUME) {
+                starter.resume(player);
+            } else if (choice == PROTOCOL_WATCH) {
+                starter.watch(player);
+            } else if (choice == TWO_PLAYER_GAME) {
+                synchronized (this) {
+                    waiting.add(player);
+                    waitingSince.add(System.nanoTime());
+                }
+            } else {
+                starter.startOnePlayer(player, choice);
+            }
+        } catch (SocketTimeoutException ex) {
+            timedOut.incrementAndGet();
+            closeQuietly(player);
+        } catch (IOException ex) {
+            closeQuietly(player);
+        }
+    }
+
+    /**
+     * Finds out which protocol player 2 speaks and starts their game
+     * @param player1 stream of the waiting player 1
+     * @param since System.nanoTime() when player 1 started waiting
+     * @param player2 stream of player 2
+     */
+    private void join(GameStream player1, long since, GameStream player2) {
+        int hello;
+        try {
+            hello = player2.detectHello(helloTimeoutMillis);
+        } catch (IOException ex) {
+            requeue(player1, since);
+            closeQuietly(player2);
+            return;
+        }
+
+        if (hello == PROTOCOL_RESUME || hello == PROTOCOL_WATCH) {
+            // not a new player after all, so player 1 keeps their place
+            requeue(player1, since);
+            try {
+                if (hello == PROTOCOL_RESUME) {
+                    starter.resume(player2);
+                } else {
+                    starter.watch(player2);
+                }
+            } catch (IOException ex) {
+                closeQuietly(player2);
+            }
+            return;
+        }
+
+        matchTime.record(System.nanoTime() - since);
+        try {
+            starter.startTwoPlayer(player1, player2);
+        } catch (IOException ex) {
+            closeQuietly(player1);
+            closeQuietly(player2);
+        }
+    }
+
+    /**
+     * Puts a player 1 whose match fell through back at the front of the queue
+     */
+    private synchronized void requeue(GameStream player1, long since) {
+        waiting.addFirst(player1);
+        waitingSince.addFirst(since);
+    }
+
+    private static void closeQuietly(GameStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * @return number of players waiting for an opponent
+     */
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    /**
+     * @return number of two player games matched
+     */
+    public long getMatches() {
+        return matchTime.getCount();
+    }
+
+    /**
+     * @return how long each matched player 1 waited for an opponent, in
+     *         nanoseconds
+     */
+    public Histogram getMatchTime() {
+        return matchTime;
+    }
+
+    /**
+     * @return number of players dropped for taking too long to choose
+     */
+    public long getTimedOut() {
+        return timedOut.get();
+    }
+}
@@ -0,0 +1,366 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.MonteCarloPlayer class picks the computer's move by Monte Carlo
+ * tree search. Each playout walks down a tree of the positions tried so
+ * far, choosing children by UCT, adds the children of the position it ends
+ * on and plays random moves from there to the end of the game. The column
+ * whose subtree was visited most is played. More playouts make a stronger
+ * player in small steps, so the number of playouts sets how much CPU each
+ * move costs.
+ *
+ * Every tree lives in arrays allocated with the player and reused for each
+ * move, and playouts play and undo on one board, so the search itself
+ * allocates nothing. With a pool every pool thread grows a tree of its own
+ * from the same position with its own random numbers, and the visits of
+ * the root columns are added up.
+ *
+ */
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+public class MonteCarloPlayer implements ComputerPlayer {
+
+    // weight of exploring little visited moves against exploiting good ones
+    private static final double EXPLORATION = 1.4;
+
+    // how many playouts run between checks of the clock
+    private static final int CLOCK_INTERVAL = 64;
+
+    private final long timeLimitNanos;
+    private final ForkJoinPool pool;
+    private final Tree[] trees;
+    private final Future<?>[] searches;
+
+    // visits of each root column, added up over the trees
+    private final long[] columnVisits = new long[Connect4Board.COLUMNS];
+
+    /**
+     * Constructor for a player that searches on the calling thread
+     * @param playouts playouts for each move
+     * @param timeLimitMillis longest time one call to bestMove may take
+     * @param seed seed of the random playouts
+     */
+    public MonteCarloPlayer(int playouts, long timeLimitMillis, long seed) {
+        this(playouts, timeLimitMillis, seed, null);
+    }
+
+    /**
+     * Constructor for a player
+     * @param playouts playouts for each move, shared out over the trees
+     * @param timeLimitMillis longest time one call to bestMove may take
+     * @param seed seed of the random playouts
+     * @param pool threads that each grow a tree, or null to search on the
+     *             calling thread
+     */
+    public MonteCarloPlayer(int playouts, long timeLimitMillis, long seed, ForkJoinPool pool) {
+        this.timeLimitNanos = timeLimitMillis * 1000000L;
+        this.pool = pool;
+        int count = pool == null ? 1 : pool.getParallelism();
+        trees = new Tree[count];
+        searches = new Future<?>[count];
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int i = 0; i < count; i++) {
+            trees[i] = new Tree(Math.max(1, playouts / count), random.split());
+        }
+    }
+
+    /**
+     * Finds the best move for the player whose turn it is within the
+     * player's time limit
+     * @param board current game, left unchanged
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board) {
+        return bestMove(board, System.nanoTime() + timeLimitNanos);
+    }
+
+    /**
+     * Finds the best move for the player whose turn it is, stopping early
+     * at the deadline with the playouts run so far
+     * @param board current game, left unchanged
+     * @param deadline System.nanoTime() by which the move must be chosen
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board, long deadline) {
+        int fallback = -1;
+        for (int col : Connect4Solver.MOVE_ORDER) {
+            if (board.canPlay(col)) {
+                if (board.isWinningMove(col)) {
+                    return col;
+                }
+                if (fallback == -1) {
+                    fallback = col;
+                }
+            }
+        }
+        if (fallback == -1) {
+            return -1;
+        }
+
+        for (Tree tree : trees) {
+            tree.reset(board, deadline);
+        }
+        if (pool == null) {
+            trees[0].run();
+        } else {
+            for (int i = 0; i < trees.length; i++) {
+                searches[i] = pool.submit(trees[i]);
+            }
+            for (Future<?> search : searches) {
+                join(search);
+            }
+        }
+
+        Arrays.fill(columnVisits, 0);
+        for (Tree tree : trees) {
+            tree.addRootVisits(columnVisits);
+        }
+        // ties go to the column nearer the center
+        int bestCol = fallback;
+        for (int col : Connect4Solver.MOVE_ORDER) {
+            if (columnVisits[col] > columnVisits[bestCol]) {
+                bestCol = col;
+            }
+        }
+        return bestCol;
+    }
+
+    private static void join(Future<?> search) {
+        try {
+            search.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * @return number of playouts run by the last call to bestMove
+     */
+    public long getPlayouts() {
+        long playouts = 0;
+        for (Tree tree : trees) {
+            playouts += tree.done;
+        }
+        return playouts;
+    }
+
+    /**
+     * Nested class for one search tree and the thread growing it. Node 0 is
+     * the root, and the children of a node are stored next to each other.
+     */
+    private static final class Tree implements Runnable {
+
+        private static final byte OPEN = 0;
+        private static final byte WON = 1;
+        private static final byte DRAWN = 2;
+
+        private final int playouts;
+        private final SplittableRandom random;
+
+        // one entry per node
+        private final int[] firstChild;
+        private final byte[] childCount;
+        private final byte[] column;
+        private final byte[] ending;
+        private final int[] visits;
+        // reward of the player who moved into the node, 1 a win, 0.5 a draw
+        private final float[] rewards;
+        private int size;
+
+        // nodes from the root down and columns played, for one playout
+        private final int[] path = new int[Connect4Board.CELLS + 1];
+        private final int[] played = new int[Connect4Board.CELLS];
+        private final int[] playable = new int[Connect4Board.COLUMNS];
+
+        private Connect4Board board;
+        private long deadline;
+        private int done;
+
+        private Tree(int playouts, SplittableRandom random) {
+            this.playouts = playouts;
+            this.random = random;
+            // every playout adds at most one node's children
+            int capacity = 1 + playouts * Connect4Board.COLUMNS;
+            firstChild = new int[capacity];
+            childCount = new byte[capacity];
+            column = new byte[capacity];
+            ending = new byte[capacity];
+            visits = new int[capacity];
+            rewards = new float[capacity];
+        }
+
+        private void reset(Connect4Board position, long deadline) {
+            board = new Connect4Board(position);
+            this.deadline = deadline;
+            done = 0;
+            size = 1;
+            clear(0);
+        }
+
+        private void clear(int node) {
+            firstChild[node] = -1;
+            childCount[node] = 0;
+            ending[node] = OPEN;
+            visits[node] = 0;
+            rewards[node] = 0;
+        }
+
+        @Override
+        public void run() {
+            while (done < playouts) {
+                if (done % CLOCK_INTERVAL == 0 && System.nanoTime() > deadline) {
+                    return;
+                }
+                playout();
+                done++;
+            }
+        }
+
+        /**
+         * Runs one playout from the root and leaves the board as it was
+         */
+        private void playout() {
+            int depth = 0;
+            int node = 0;
+            path[0] = 0;
+            // down the tree while every child has been tried
+            while (firstChild[node] >= 0 && ending[node] == OPEN) {
+                node = select(node);
+                board.play(column[node]);
+                path[++depth] = node;
+            }
+            if (ending[node] == OPEN && visits[node] > 0 || node == 0) {
+                expand(node);
+                if (firstChild[node] >= 0) {
+                    node = select(node);
+                    board.play(column[node]);
+                    path[++depth] = node;
+                }
+            }
+
+            // reward of the player who made the last move of the path
+            float reward;
+            if (ending[node] == WON) {
+                reward = 1;
+            } else if (ending[node] == DRAWN) {
+                reward = 0.5f;
+            } else {
+                reward = rollout();
+            }
+            for (int i = depth; i >= 0; i--) {
+                int step = path[i];
+                visits[step]++;
+                rewards[step] += reward;
+                reward = 1 - reward;
+            }
+            for (int i = depth; i > 0; i--) {
+                board.undo(column[path[i]]);
+            }
+        }
+
+        /**
+         * Picks the child with the highest upper confidence bound, any
+         * child not visited yet first
+         */
+        private int select(int node) {
+            int first = firstChild[node];
+            int last = first + childCount[node];
+            double logVisits = Math.log(Math.max(1, visits[node]));
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < last; child++) {
+                if (visits[child] == 0) {
+                    return child;
+                }
+                double value = rewards[child] / visits[child]
+                        + EXPLORATION * Math.sqrt(logVisits / visits[child]);
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Adds a child for every playable column, marking the ones that
+         * end the game. Does nothing once the arrays are full.
+         */
+        private void expand(int node) {
+            if (size + Connect4Board.COLUMNS > visits.length) {
+                return;
+            }
+            int first = size;
+            for (int col : Connect4Solver.MOVE_ORDER) {
+                if (!board.canPlay(col)) {
+                    continue;
+                }
+                int child = size++;
+                clear(child);
+                column[child] = (byte) col;
+                if (board.isWinningMove(col)) {
+                    ending[child] = WON;
+                } else if (board.getMoves() + 1 == Connect4Board.CELLS) {
+                    ending[child] = DRAWN;
+                }
+            }
+            if (size > first) {
+                firstChild[node] = first;
+                childCount[node] = (byte) (size - first);
+            }
+        }
+
+        /**
+         * Plays random moves to the end of the game and takes them back
+         * @return reward of the player who moved last before the rollout
+         */
+        private float rollout() {
+            int moves = 0;
+            float reward = 0.5f;
+            // the player to move now scores 1 for a win
+            boolean moverIsNext = true;
+            while (board.getMoves() < Connect4Board.CELLS) {
+                int count = 0;
+                for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+                    if (board.canPlay(col)) {
+                        playable[count++] = col;
+                    }
+                }
+                int col = playable[random.nextInt(count)];
+                if (board.isWinningMove(col)) {
+                    // the player to move wins, and the one who moved last
+                    // before the rollout is on the other side after an
+                    // even number of moves
+                    reward = moverIsNext ? 0 : 1;
+                    break;
+                }
+                board.play(col);
+                played[moves++] = col;
+                moverIsNext = !moverIsNext;
+            }
+            while (moves > 0) {
+                board.undo(played[--moves]);
+            }
+            return reward;
+        }
+
+        private void addRootVisits(long[] columnVisits) {
+            int first = firstChild[0];
+            for (int child = first; first >= 0 && child < first + childCount[0]; child++) {
+                columnVisits[column[child]] += visits[child];
+            }
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.NioConnect4Server class is a second server engine for Connect4
+ * that does not need a thread per session. A single acceptor hands every
+ * connection to one of a few event loop threads, and each loop drives the
+ * games of its connections from non-blocking socket reads. Computer moves
+ * are searched on a separate pool so a long search never stalls a loop,
+ * each within the time a core.ThinkBudget shared by every session gives.
+ * Once thinking takes more than ai.cpuPercent of the cores, more one
+ * player games make every move shorter rather than the server busier.
+ *
+ * It speaks the same protocols as core.GameServer, the legacy int/char
+ * protocol and the framed one described in core.GameStream, so every
+ * core.Connect4Client plays against it unchanged. It only plays the
+ * standard board, and tells clients so by answering every hello with
+ * PROTOCOL_HELLO. It keeps no seats to resume and no games to watch, so a
+ * client sending PROTOCOL_RESUME is answered with MSG_RESUME_FAILED and one
+ * sending PROTOCOL_WATCH with MSG_WATCH_FAILED, and either is let go.
+ *
+ * Usage: java core.NioConnect4Server
+ *
+ */
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NioConnect4Server implements Connect4Constants {
+
+    // bytes buffered per connection, far more than one turn needs
+    private static final int BUFFER_BYTES = 256;
+
+    private final ServerConfig config;
+    private final EventLoop[] loops;
+    private final ExecutorService computerMoves;
+    private final ScheduledExecutorService timers;
+    private final OpeningBook openingBook;
+    private final Tablebase tablebase;
+    private final SearchTables searchTables;
+    private final ForkJoinPool searchPool;
+    private final ThinkBudget thinkBudget;
+    private final EventLog eventLog;
+
+    // two player games whose player 1 is waiting for an opponent
+    private final Queue<GameSession> waitingForPlayer2 = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger sessionNum = new AtomicInteger(1);
+    private int nextLoop;
+
+    /**
+     * Constructor for the server
+     * @param config server settings
+     * @param openingBook book of opening moves, or null for none
+     * @param tablebase solved endgames, or null for none
+     * @throws IOException if a selector cannot be opened
+     */
+    public NioConnect4Server(ServerConfig config, OpeningBook openingBook, Tablebase tablebase)
+            throws IOException {
+        this.config = config;
+        this.openingBook = openingBook;
+        this.tablebase = tablebase;
+        eventLog = EventLog.start(config);
+        searchTables = new SearchTables(config);
+        searchPool = config.getAiThreads() > 1 ? new ForkJoinPool(config.getAiThreads()) : null;
+        thinkBudget = new ThinkBudget(config);
+        computerMoves = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        timers = Executors.newSingleThreadScheduledExecutor();
+
+        loops = new EventLoop[config.getEventLoops()];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop();
+            Thread thread = new Thread(loops[i], "connect4-loop-" + i);
+            thread.start();
+        }
+    }
+
+    /**
+     * Main entry point
+     * @param args command line parameters
+     * @throws IOException if the server cannot start
+     */
+    public static void main(String[] args) throws IOException {
+        ServerConfig config = ServerConfig.load();
+        new NioConnect4Server(config, OpeningBook.openIfPresent(config),
+                Tablebase.openIfPresent(config)).acceptLoop(config.getPort());
+    }
+
+    /**
+     * Accepts connections forever, handing each to an event loop
+     * @param port port to listen on
+     * @throws IOException if the port cannot be opened
+     */
+    public void acceptLoop(int port) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(port));
+        eventLog.record(EventLog.Event.NIO_SERVER_STARTED, port, loops.length);
+
+        while (true) {
+            SocketChannel channel = server.accept();
+            channel.configureBlocking(false);
+
+            // a waiting two player game takes the new connection as player 2
+            GameSession waiting = waitingForPlayer2.poll();
+            if (waiting != null) {
+                waiting.loop.execute(waiting, () -> waiting.join(channel));
+            } else {
+                EventLoop loop = loops[Math.floorMod(nextLoop++, loops.length)];
+                GameSession session = new GameSession(loop);
+                loop.execute(session, () -> session.start(channel));
+            }
+        }
+    }
+
+    /**
+     * Nested class for a thread that runs the games of many connections
+     */
+    private class EventLoop implements Runnable {
+
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        private EventLoop() throws IOException {
+            selector = Selector.open();
+        }
+
+        /**
+         * Runs a task of a game on this loop's thread
+         * @param session game the task belongs to, ended if the task fails
+         * @param task task to run
+         */
+        private void execute(GameSession session, Runnable task) {
+            tasks.add(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    // like a broken connection, a broken task ends only its game
+                    ex.printStackTrace();
+                    session.abort();
+                }
+            });
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                        } catch (RuntimeException ex) {
+                            // one broken game must not stop the other games on
+                            // this loop, and must not be selected again
+                            ex.printStackTrace();
+                            connection.session.abort();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                } catch (IOException | RuntimeException ex) {
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Nested class for one client socket and its buffers
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private final GameSession session;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        private final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        private boolean closeWhenFlushed;
+        // true once the first int is known not to be a hello, or after the hello
+        private boolean greeted;
+        private boolean framed;
+
+        private Connection(SocketChannel channel, GameSession session, Selector selector)
+                throws IOException {
+            this.channel = channel;
+            this.session = session;
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        }
+
+        /**
+         * Reads whatever the client has sent and lets the game use it
+         */
+        private void read() {
+            try {
+                if (channel.read(in) < 0) {
+                    lost();
+                    return;
+                }
+            } catch (IOException ex) {
+                lost();
+                return;
+            }
+            session.process();
+        }
+
+        /**
+         * Ends the game when the client goes away, unless nothing more was
+         * wanted from the client anyway
+         */
+        private void lost() {
+            if (closeWhenFlushed) {
+                close();
+            } else {
+                session.abort();
+            }
+        }
+
+        /**
+         * @return true if a whole int has been received
+         */
+        private boolean hasInt() {
+            return in.position() >= Integer.BYTES;
+        }
+
+        /**
+         * Takes the next int the client sent
+         * @return the int
+         */
+        private int readInt() {
+            in.flip();
+            int value = in.getInt();
+            in.compact();
+            // room in the buffer again, so keep reading
+            updateInterest();
+            return value;
+        }
+
+        /**
+         * Reads the client's hello if it sent one, and answers it
+         * @return false if more bytes are needed to tell
+         */
+        private boolean greet() {
+            if (!hasInt()) {
+                return false;
+            }
+            int hello = in.getInt(0);
+            if (hello == PROTOCOL_RESUME) {
+                // the seat id follows
+                if (in.position() < Integer.BYTES + Long.BYTES) {
+                    return false;
+                }
+                greeted = true;
+                refuse(Integer.BYTES + Long.BYTES, MSG_RESUME_FAILED);
+                return true;
+            }
+            if (hello == PROTOCOL_WATCH) {
+                // the session number follows
+                if (in.position() < 2 * Integer.BYTES) {
+                    return false;
+                }
+                greeted = true;
+                refuse(2 * Integer.BYTES, MSG_WATCH_FAILED);
+                return true;
+            }
+            greeted = true;
+            if (hello == PROTOCOL_HELLO || hello == PROTOCOL_HELLO_VARIANTS) {
+                readInt();
+                framed = true;
+                // only the standard board is played here, so never offer variants
+                writeInt(PROTOCOL_HELLO);
+                flush();
+            }
+            return true;
+        }
+
+        /**
+         * Turns down a request this server cannot serve, and lets the
+         * client go once it has the answer
+         * @param bytes length of the request
+         * @param type frame type of the answer
+         */
+        private void refuse(int bytes, byte type) {
+            in.flip();
+            in.position(bytes);
+            in.compact();
+            framed = true;
+            out.putInt(1).put(type);
+            closeWhenFlushed = true;
+            session.refused(this);
+            flush();
+        }
+
+        /**
+         * Drops frames of types the server does not read, in the framed
+         * format. A frame whose length cannot be right, or could never fit
+         * in the buffer, ends the session.
+         * @return true if a whole move has been received
+         */
+        private boolean hasMove() {
+            if (!framed) {
+                return hasInt();
+            }
+            while (hasInt()) {
+                int length = in.getInt(0);
+                if (length < 1 || length > BUFFER_BYTES - Integer.BYTES) {
+                    session.abort();
+                    return false;
+                }
+                if (in.position() < Integer.BYTES + length) {
+                    return false;
+                }
+                if (in.get(Integer.BYTES) == MSG_MOVE) {
+                    if (length != 1 + Integer.BYTES) {
+                        session.abort();
+                        return false;
+                    }
+                    return true;
+                }
+                in.flip();
+                in.position(Integer.BYTES + length);
+                in.compact();
+                updateInterest();
+            }
+            return false;
+        }
+
+        /**
+         * Takes the next move the client sent, after hasMove returned true
+         * @return the column, counting from 1
+         */
+        private int readMove() {
+            if (!framed) {
+                return readInt();
+            }
+            in.flip();
+            // skip the length and type
+            in.position(Integer.BYTES + 1);
+            int column = in.getInt();
+            in.compact();
+            updateInterest();
+            return column;
+        }
+
+        private void writeChar(char value) {
+            out.putChar(value);
+        }
+
+        private void writeInt(int value) {
+            out.putInt(value);
+        }
+
+        private void writeStart() {
+            if (framed) {
+                out.putInt(1).put(MSG_START);
+            } else {
+                out.putInt(1);
+            }
+        }
+
+        private void writeInvalidTurn() {
+            if (framed) {
+                out.putInt(1).put(MSG_INVALID_TURN);
+            } else {
+                out.putInt(INVALID_TURN);
+            }
+        }
+
+        private void writeTurn(boolean ownMove, int status, int row, int col) {
+            if (framed) {
+                out.putInt(1 + 3 * Integer.BYTES).put(MSG_TURN);
+            } else if (ownMove) {
+                out.putInt(VALID_TURN);
+            }
+            out.putInt(status).putInt(row).putInt(col);
+        }
+
+        /**
+         * Sends as much buffered output as the socket takes
+         */
+        private void flush() {
+            try {
+                out.flip();
+                channel.write(out);
+                out.compact();
+            } catch (IOException ex) {
+                lost();
+                return;
+            }
+            if (out.position() == 0 && closeWhenFlushed) {
+                close();
+            } else {
+                updateInterest();
+            }
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            // stop reading from a client that sends ahead of its turn
+            int ops = in.hasRemaining() ? SelectionKey.OP_READ : 0;
+            if (out.position() > 0) {
+                ops |= SelectionKey.OP_WRITE;
+            }
+            key.interestOps(ops);
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Nested class for the state of one game, only touched by its loop
+     */
+    private class GameSession {
+
+        private final EventLoop loop;
+        private final Connect4Board board = new Connect4Board();
+        private final int id = sessionNum.getAndIncrement();
+        private Connection player1;
+        private Connection player2;
+        private ComputerPlayer computer;
+
+        private State state = State.CHOOSING;
+
+        private GameSession(EventLoop loop) {
+            this.loop = loop;
+        }
+
+        /**
+         * Registers player 1 and sends their token
+         * @param channel player 1's socket
+         */
+        private void start(SocketChannel channel) {
+            try {
+                player1 = new Connection(channel, this, loop.selector);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return;
+            }
+            eventLog.record(EventLog.Event.PLAYER_JOINED, id, 1);
+            player1.writeChar(PLAYER_1);
+            player1.flush();
+        }
+
+        /**
+         * Registers player 2 and starts the two player game
+         * @param channel player 2's socket
+         */
+        private void join(SocketChannel channel) {
+            if (state == State.OVER) {
+                // player 1 left while waiting, so this player starts a new game
+                new GameSession(loop).start(channel);
+                return;
+            }
+            try {
+                player2 = new Connection(channel, this, loop.selector);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+                return;
+            }
+            eventLog.record(EventLog.Event.PLAYER_JOINED, id, 2);
+            player2.writeChar(PLAYER_2);
+            player2.flush();
+
+            // a legacy player 2 sends nothing before its turn, so wait a moment for a hello
+            state = State.GREETING;
+            timers.schedule(() -> loop.execute(this, this::begin),
+                    config.getHelloTimeoutMillis(), TimeUnit.MILLISECONDS);
+            process();
+        }
+
+        /**
+         * Starts a two player game once player 2's protocol is settled
+         */
+        private void begin() {
+            if (state != State.GREETING) {
+                return;
+            }
+            player2.greeted = true;
+            // give player 1 ok to start game
+            player1.writeStart();
+            player1.flush();
+            state = State.PLAYER_1_TURN;
+            process();
+        }
+
+        /**
+         * Consumes every int the expected player has sent
+         */
+        private void process() {
+            while (true) {
+                if (state == State.CHOOSING && !player1.greeted && player1.greet()) {
+                    continue;
+                } else if (state == State.CHOOSING && player1.greeted && player1.hasInt()) {
+                    choose(player1.readInt());
+                } else if (state == State.GREETING && player2.greet()) {
+                    begin();
+                } else if (state == State.PLAYER_1_TURN && player1.hasMove()) {
+                    turn(player1, player1.readMove());
+                } else if (state == State.PLAYER_2_TURN && player2.hasMove()) {
+                    turn(player2, player2.readMove());
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private void choose(int numPlayers) {
+            if (numPlayers == TWO_PLAYER_GAME) {
+                state = State.WAITING;
+                waitingForPlayer2.add(this);
+                return;
+            }
+            Difficulty difficulty = Difficulty.fromCode(numPlayers, config.getDefaultDifficulty());
+            computer = ComputerOpponent.create(difficulty, config, openingBook, tablebase,
+                    searchTables, searchPool);
+            eventLog.record(EventLog.Event.ONE_PLAYER_STARTED, id, difficulty.ordinal());
+
+            // give player 1 ok to start game
+            player1.writeStart();
+            player1.flush();
+            state = State.PLAYER_1_TURN;
+        }
+
+        private void turn(Connection player, int column) {
+            if (!board.canPlay(column - 1)) {
+                player.writeInvalidTurn();
+                player.flush();
+                return;
+            }
+            int row = board.play(column - 1);
+            int status = board.status();
+            sendStatus(player, status, row, column - 1);
+            if (status != CONTINUE) {
+                return;
+            }
+
+            if (player2 != null) {
+                state = player == player1 ? State.PLAYER_2_TURN : State.PLAYER_1_TURN;
+            } else {
+                state = State.COMPUTER_TURN;
+                Connect4Board position = new Connect4Board(board);
+                computerMoves.execute(() -> {
+                    long start = System.nanoTime();
+                    int col = computer.bestMove(position, start + thinkBudget.getMoveNanos());
+                    thinkBudget.spent(System.nanoTime() - start);
+                    loop.execute(this, () -> computerTurn(col));
+                });
+            }
+        }
+
+        private void computerTurn(int col) {
+            if (state != State.COMPUTER_TURN) {
+                return;
+            }
+            int row = board.play(col);
+            int status = board.status();
+            sendStatus(null, status, row, col);
+            if (status == CONTINUE) {
+                state = State.PLAYER_1_TURN;
+                process();
+            }
+        }
+
+        /**
+         * Sends the status and last move to every player
+         * @param mover player who just went, or null for the computer
+         */
+        private void sendStatus(Connection mover, int status, int row, int col) {
+            boolean over = status != CONTINUE;
+            if (over) {
+                state = State.OVER;
+                eventLog.record(EventLog.Event.SESSION_ENDED, id, status);
+            }
+            send(player1, mover == player1, status, row, col, over);
+            if (player2 != null) {
+                send(player2, mover == player2, status, row, col, over);
+            }
+        }
+
+        private void send(Connection player, boolean ownMove, int status, int row, int col,
+                          boolean over) {
+            player.writeTurn(ownMove, status, row, col);
+            player.closeWhenFlushed = over;
+            player.flush();
+        }
+
+        /**
+         * Lets go of a client that turned out not to be a new player. A
+         * player 2 like that leaves player 1 waiting for another.
+         * @param player the client
+         */
+        private void refused(Connection player) {
+            if (player == player2) {
+                player2 = null;
+                state = State.WAITING;
+                waitingForPlayer2.add(this);
+            } else {
+                state = State.OVER;
+            }
+        }
+
+        /**
+         * Ends the game when a player disconnects
+         */
+        private void abort() {
+            if (state != State.OVER) {
+                eventLog.record(EventLog.Event.SESSION_ABORTED, id);
+            }
+            state = State.OVER;
+            waitingForPlayer2.remove(this);
+            // a task can fail before player 1 is registered
+            if (player1 != null) {
+                player1.close();
+            }
+            if (player2 != null) {
+                player2.close();
+            }
+        }
+    }
+
+    /**
+     * What a game session is waiting for
+     */
+    private enum State {
+        CHOOSING, WAITING, GREETING, PLAYER_1_TURN, PLAYER_2_TURN, COMPUTER_TURN, OVER
+    }
+}
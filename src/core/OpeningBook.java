@@ -0,0 +1,124 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.OpeningBook class answers the computer's first moves from a book
+ * file written by core.OpeningBookGenerator, so the opening of a one player
+ * game never has to be searched.
+ *
+ * The file is memory-mapped read only and never copied onto the heap, so a
+ * single book is shared by every session. After a 16 byte header the file
+ * holds one long per position, sorted, with the position key in the high
+ * bits and the best column in the low 4 bits. A position and its mirror
+ * image share the entry of whichever has the smaller key.
+ *
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class OpeningBook {
+
+    static final int MAGIC = 0x43344B42; // "C4KB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int MOVE_BITS = 4;
+
+    private final MappedByteBuffer entries;
+    private final int plies;
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer entries, int plies, int size) {
+        this.entries = entries;
+        this.plies = plies;
+        this.size = size;
+    }
+
+    /**
+     * Maps a book file into memory
+     * @param file book written by core.OpeningBookGenerator
+     * @return the opening book
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public static OpeningBook open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a Connect4 opening book");
+            }
+            int plies = buffer.getInt(8);
+            int size = buffer.getInt(12);
+            if ((long) HEADER_BYTES + (long) size * Long.BYTES > buffer.capacity()) {
+                throw new IOException(file + " is truncated");
+            }
+            return new OpeningBook(buffer, plies, size);
+        }
+    }
+
+    /**
+     * Maps the book named in the server config, if the file exists
+     * @param config server settings
+     * @return the opening book, or null if there is no book file
+     * @throws IOException if the file exists but is not a book
+     */
+    public static OpeningBook openIfPresent(ServerConfig config) throws IOException {
+        Path file = Paths.get(config.getOpeningBookPath());
+        return Files.isReadable(file) ? open(file) : null;
+    }
+
+    /**
+     * Looks up the best move for the player whose turn it is
+     * @param board current game
+     * @return the column to play, counting from 0, or -1 if the position
+     *         is not in the book
+     */
+    public int lookup(Connect4Board board) {
+        if (board.getMoves() >= plies) {
+            return -1;
+        }
+        long key = board.key();
+        long mirroredKey = board.mirroredKey();
+        boolean mirrored = mirroredKey < key;
+
+        // binary search using absolute reads, which are safe to share
+        int low = 0;
+        int high = size - 1;
+        long target = Math.min(key, mirroredKey);
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long entry = entries.getLong(HEADER_BYTES + mid * Long.BYTES);
+            long entryKey = entry >>> MOVE_BITS;
+            if (entryKey < target) {
+                low = mid + 1;
+            } else if (entryKey > target) {
+                high = mid - 1;
+            } else {
+                int col = (int) (entry & ((1 << MOVE_BITS) - 1));
+                return mirrored ? Connect4Board.COLUMNS - 1 - col : col;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return number of moves from the start the book covers
+     */
+    public int getPlies() {
+        return plies;
+    }
+
+    /**
+     * @return number of positions in the book
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,127 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.OpeningBookGenerator class writes the book file read by
+ * core.OpeningBook. It visits every position reachable in fewer than the
+ * given number of moves, searches each one with core.Connect4Solver and
+ * writes the best moves sorted by position key.
+ *
+ * Usage: java core.OpeningBookGenerator [plies] [depth] [file]
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+public class OpeningBookGenerator {
+
+    // no time limit, the book is built offline
+    private static final long NO_TIME_LIMIT = 24L * 3600 * 1000;
+
+    private static final long TABLE_BYTES = 64L << 20;
+
+    private final int plies;
+    private final Connect4Solver solver;
+    private final Set<Long> visited = new HashSet<>();
+
+    private long[] entries = new long[1024];
+    private int size;
+
+    /**
+     * Constructor for a generator
+     * @param plies positions with fewer moves than this are put in the book
+     * @param depth search depth used for every position
+     */
+    public OpeningBookGenerator(int plies, int depth) {
+        this.plies = plies;
+        solver = new Connect4Solver(depth, NO_TIME_LIMIT, new TranspositionTable(TABLE_BYTES));
+    }
+
+    /**
+     * Main entry point
+     * @param args plies, search depth and output file
+     * @throws IOException if the book cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int plies = args.length > 0 ? Integer.parseInt(args[0]) : 6;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 14;
+        Path file = Paths.get(args.length > 2 ? args[2] : "connect4.book");
+
+        long start = System.currentTimeMillis();
+        int size = new OpeningBookGenerator(plies, depth).generate(file);
+        System.out.println("Wrote " + size + " positions to " + file + " in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Searches every opening position and writes the book
+     * @param file where to write the book
+     * @return number of positions written
+     * @throws IOException if the book cannot be written
+     */
+    public int generate(Path file) throws IOException {
+        visit(new Connect4Board());
+        long[] sorted = Arrays.copyOf(entries, size);
+        Arrays.sort(sorted);
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(plies);
+            out.writeInt(sorted.length);
+            for (long entry : sorted) {
+                out.writeLong(entry);
+            }
+        }
+        return sorted.length;
+    }
+
+    /**
+     * Adds a position and every position after it to the book
+     * @param board position to add, restored before returning
+     */
+    private void visit(Connect4Board board) {
+        if (board.getMoves() >= plies) {
+            return;
+        }
+        long key = board.key();
+        long mirroredKey = board.mirroredKey();
+        if (!visited.add(Math.min(key, mirroredKey))) {
+            return;
+        }
+
+        // store the move for whichever of the pair has the smaller key
+        int best = solver.bestMove(board);
+        if (mirroredKey < key) {
+            best = Connect4Board.COLUMNS - 1 - best;
+        }
+        add((Math.min(key, mirroredKey) << OpeningBook.MOVE_BITS) | best);
+
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            // games that are already won need no book move
+            if (board.canPlay(col) && !board.isWinningMove(col)) {
+                board.play(col);
+                visit(board);
+                board.undo(col);
+            }
+        }
+    }
+
+    private void add(long entry) {
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        entries[size++] = entry;
+    }
+}
@@ -0,0 +1,168 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.ParallelSolver class spreads the computer's search over several
+ * cores. Every column at the root is searched as its own fork-join task by
+ * a core.Connect4Solver, and all of them share one core.TranspositionTable
+ * so a position scored by one thread is not searched again by another. The
+ * search deepens one ply at a time until its deadline.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParallelSolver implements ComputerPlayer {
+
+    // what a root column scores when its search did not finish in time
+    private static final int OUT_OF_TIME = Integer.MIN_VALUE;
+    // what it scores when it is no better than a column already searched
+    private static final int NOT_BETTER = Integer.MIN_VALUE + 1;
+
+    private final int depth;
+    private final long timeLimitNanos;
+    private final TranspositionTable table;
+    private final ForkJoinPool pool;
+
+    private final AtomicLong nodes = new AtomicLong();
+
+    /**
+     * Constructor for a parallel solver
+     * @param depth number of plies to look ahead
+     * @param timeLimitMillis longest time one call to bestMove may take
+     * @param table table shared by all search threads
+     * @param pool threads that run the search
+     */
+    public ParallelSolver(int depth, long timeLimitMillis, TranspositionTable table, ForkJoinPool pool) {
+        this.depth = depth;
+        this.timeLimitNanos = timeLimitMillis * 1000000L;
+        this.table = table;
+        this.pool = pool;
+    }
+
+    /**
+     * Finds the best move for the player whose turn it is within the
+     * solver's time limit
+     * @param board current game, left unchanged
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board) {
+        return bestMove(board, System.nanoTime() + timeLimitNanos);
+    }
+
+    /**
+     * Finds the best move for the player whose turn it is, one ply deeper
+     * at a time like core.Connect4Solver. Each depth searches every root
+     * column at once, the best column of the last depth first.
+     * @param board current game, left unchanged
+     * @param deadline System.nanoTime() by which the move must be chosen
+     * @return the column to play, counting from 0, or -1 if the board is full
+     */
+    @Override
+    public int bestMove(Connect4Board board, long deadline) {
+        int[] order = new int[Connect4Board.COLUMNS];
+        int count = 0;
+        for (int col : Connect4Solver.MOVE_ORDER) {
+            if (!board.canPlay(col)) {
+                continue;
+            }
+            if (board.isWinningMove(col)) {
+                return col;
+            }
+            order[count++] = col;
+        }
+        if (count == 0) {
+            return -1;
+        }
+
+        int bestCol = order[0];
+        for (int ply = 1; ply <= depth && System.nanoTime() < deadline; ply++) {
+            // best score any finished column has proved so far, shared as alpha
+            AtomicInteger bestScore = new AtomicInteger(-Connect4Solver.WIN_SCORE - 1);
+            List<Future<Integer>> scores = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int col = order[i];
+                int rootDepth = ply;
+                scores.add(pool.submit(
+                        () -> searchRoot(board, col, rootDepth, deadline, bestScore)));
+            }
+
+            int best = Integer.MIN_VALUE;
+            int iterationCol = -1;
+            boolean finished = true;
+            for (int i = 0; i < count; i++) {
+                int score = join(scores.get(i));
+                if (score == OUT_OF_TIME) {
+                    finished = false;
+                } else if (score > best) {
+                    // ties go to the column earlier in the order
+                    best = score;
+                    iterationCol = i;
+                }
+            }
+            // a column beaten by one that finished is known to be worse,
+            // so an unfinished depth still counts if the first column finished
+            if (iterationCol < 0 || (!finished && join(scores.get(0)) == OUT_OF_TIME)) {
+                break;
+            }
+            bestCol = order[iterationCol];
+            System.arraycopy(order, 0, order, 1, iterationCol);
+            order[0] = bestCol;
+            if (!finished || Math.abs(best) > Connect4Solver.WIN_SCORE - Connect4Board.CELLS) {
+                break;
+            }
+        }
+        return bestCol;
+    }
+
+    /**
+     * Scores one root column on a pool thread
+     * @return the exact score, NOT_BETTER if the column is no better than
+     *         one already searched, or OUT_OF_TIME
+     */
+    private int searchRoot(Connect4Board board, int col, int depth, long deadline,
+                           AtomicInteger bestScore) {
+        Connect4Solver worker = new Connect4Solver(depth, 0, table);
+        worker.startClock(deadline);
+        int alpha = bestScore.get();
+        int score = worker.scoreMove(new Connect4Board(board), col, alpha);
+        nodes.addAndGet(worker.getNodes());
+
+        if (worker.wasOutOfTime()) {
+            return OUT_OF_TIME;
+        }
+        if (score <= alpha) {
+            return NOT_BETTER;
+        }
+        bestScore.accumulateAndGet(score, Math::max);
+        return score;
+    }
+
+    private static int join(Future<Integer> score) {
+        try {
+            return score.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return OUT_OF_TIME;
+        } catch (ExecutionException ex) {
+            ex.printStackTrace();
+            return OUT_OF_TIME;
+        }
+    }
+
+    /**
+     * @return number of positions searched by all threads
+     */
+    public long getNodes() {
+        return nodes.get();
+    }
+}
@@ -0,0 +1,255 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.PositionAnalyzer class scores every column of a position on the
+ * standard board, for the hints players can ask for. Players in different
+ * sessions keep reaching the same positions, the openings above all, so one
+ * analyzer is shared by every session of a server and keeps its results in
+ * a cache of bounded size.
+ *
+ * The cache is keyed on the smaller key of the position and its mirror
+ * image, so a position and its mirror share an entry, and the scores are
+ * turned around on the way in and out. Lookups go straight to a
+ * ConcurrentHashMap. Once the cache is full, adding a position evicts one
+ * by the CLOCK algorithm: a hand sweeps the entries in order, and an entry
+ * looked up since the hand last passed it is skipped once, so positions
+ * still being reached stay while the rest go in the order they came.
+ *
+ * Columns are scored by core.Connect4Solver with a full window, deepening
+ * one ply at a time, in a core.TranspositionTable shared by every analysis
+ * and by the HARD computer.
+ * Positions with few enough empty cells are answered from the
+ * core.Tablebase instead, to the end of the game. An analysis that runs
+ * out of time returns the deepest scores it finished and is not cached.
+ *
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PositionAnalyzer {
+
+    // score of a column that is full
+    public static final int UNPLAYABLE = Integer.MIN_VALUE;
+
+    // scores beyond this either way are forced wins or losses
+    public static final int FORCED = Connect4Solver.WIN_SCORE - Connect4Board.CELLS;
+
+    private final int depth;
+    private final TranspositionTable table;
+    private final Tablebase tablebase;
+    private final ServerMetrics metrics;
+
+    private final ConcurrentHashMap<Long, Entry> entries;
+    // every cached entry, in the order the hand sweeps them
+    private final Entry[] clock;
+    // guarded by clock
+    private int hand;
+    private int count;
+
+    /**
+     * Constructor for an analyzer
+     * @param depth plies each column is searched
+     * @param capacity most positions kept in the cache
+     * @param table table shared by the searches
+     * @param tablebase solved endgames, or null for none
+     * @param metrics where cache hits, misses and evictions are counted
+     */
+    public PositionAnalyzer(int depth, int capacity, TranspositionTable table,
+                            Tablebase tablebase, ServerMetrics metrics) {
+        this.depth = depth;
+        this.table = table;
+        this.tablebase = tablebase;
+        this.metrics = metrics;
+        entries = new ConcurrentHashMap<>(capacity * 4 / 3 + 1);
+        clock = new Entry[capacity];
+    }
+
+    /**
+     * Constructor for the analyzer set in the server settings
+     * @param config server settings
+     * @param tablebase solved endgames, or null for none
+     * @param tables tables of the computer's searches, whose HARD table the
+     *               hints search in as well
+     * @param metrics where cache hits, misses and evictions are counted
+     */
+    public PositionAnalyzer(ServerConfig config, Tablebase tablebase, SearchTables tables,
+                            ServerMetrics metrics) {
+        this(config.getHintDepth(), config.getHintCacheEntries(), tables.get(Difficulty.HARD),
+                tablebase, metrics);
+    }
+
+    /**
+     * Scores every column for the player whose turn it is
+     * @param board current game, left unchanged
+     * @param deadline System.nanoTime() by which the scores must be ready
+     * @return a score for each column counting from 0, from the point of
+     *         view of the player to move, or UNPLAYABLE for a full column.
+     *         Scores above 0 lean towards a win, and forced wins and losses
+     *         score beyond FORCED either way, the sooner the further.
+     */
+    public int[] analyze(Connect4Board board, long deadline) {
+        long key = board.key();
+        long mirroredKey = board.mirroredKey();
+        boolean mirrored = mirroredKey < key;
+        long canonical = mirrored ? mirroredKey : key;
+
+        Entry entry = entries.get(canonical);
+        if (entry != null) {
+            entry.referenced = true;
+            metrics.analysisHit();
+            return orient(entry.scores, mirrored);
+        }
+        metrics.analysisMissed();
+
+        Connect4Board position = new Connect4Board(board);
+        int[] scores = probe(position);
+        if (scores == null) {
+            scores = new int[Connect4Board.COLUMNS];
+            if (!search(position, deadline, scores)) {
+                // out of time, so the shallower scores are not cached
+                return scores;
+            }
+        }
+        add(canonical, orient(scores, mirrored));
+        return scores;
+    }
+
+    // ----- scoring -----
+
+    /**
+     * Scores each column from the tablebase
+     * @return the scores, or null if the position is not in it
+     */
+    private int[] probe(Connect4Board board) {
+        if (tablebase == null
+                || Connect4Board.CELLS - board.getMoves() > tablebase.getMaxEmpty() + 1) {
+            return null;
+        }
+        int moves = board.getMoves();
+        int[] scores = new int[Connect4Board.COLUMNS];
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            if (!board.canPlay(col)) {
+                scores[col] = UNPLAYABLE;
+            } else if (board.isWinningMove(col)) {
+                scores[col] = Connect4Solver.WIN_SCORE - moves;
+            } else if (moves + 1 == Connect4Board.CELLS) {
+                scores[col] = 0;
+            } else {
+                board.play(col);
+                int result = tablebase.probe(board);
+                board.undo(col);
+                if (result == Tablebase.NOT_FOUND) {
+                    return null;
+                }
+                // the distance counts the plies after this move, up to and
+                // including the one that ends the game
+                int end = moves + Tablebase.distance(result);
+                int outcome = Tablebase.outcome(result);
+                scores[col] = outcome == Tablebase.WIN ? end - Connect4Solver.WIN_SCORE
+                        : outcome == Tablebase.LOSS ? Connect4Solver.WIN_SCORE - end : 0;
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Scores each column with a full window, one ply deeper at a time
+     * @param scores filled with the scores of the deepest search finished,
+     *               or of the first one if even that ran out of time
+     * @return true if the search reached the analyzer's depth
+     */
+    private boolean search(Connect4Board board, long deadline, int[] scores) {
+        Connect4Solver solver = new Connect4Solver(depth, 0, table);
+        solver.startClock(deadline);
+        int moves = board.getMoves();
+        int[] iteration = new int[Connect4Board.COLUMNS];
+        for (int ply = 1; ply <= depth; ply++) {
+            for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+                if (!board.canPlay(col)) {
+                    iteration[col] = UNPLAYABLE;
+                } else if (board.isWinningMove(col)) {
+                    iteration[col] = Connect4Solver.WIN_SCORE - moves;
+                } else {
+                    iteration[col] = solver.scoreMove(board, col, ply,
+                            -Connect4Solver.WIN_SCORE - 1);
+                }
+            }
+            if (solver.wasOutOfTime()) {
+                if (ply == 1) {
+                    System.arraycopy(iteration, 0, scores, 0, scores.length);
+                }
+                return false;
+            }
+            System.arraycopy(iteration, 0, scores, 0, scores.length);
+        }
+        return true;
+    }
+
+    private static int[] orient(int[] scores, boolean mirrored) {
+        int[] oriented = new int[Connect4Board.COLUMNS];
+        for (int col = 0; col < Connect4Board.COLUMNS; col++) {
+            oriented[col] = scores[mirrored ? Connect4Board.COLUMNS - 1 - col : col];
+        }
+        return oriented;
+    }
+
+    // ----- cache -----
+
+    /**
+     * Adds the scores of a position, evicting another if the cache is full
+     */
+    private void add(long canonical, int[] scores) {
+        Entry entry = new Entry(canonical, scores);
+        synchronized (clock) {
+            // another session may have analyzed the same position meanwhile
+            if (entries.containsKey(canonical)) {
+                return;
+            }
+            int slot;
+            if (count < clock.length) {
+                slot = count++;
+            } else {
+                // give every entry looked up since the last sweep one more
+                // turn of the hand
+                while (clock[hand].referenced) {
+                    clock[hand].referenced = false;
+                    hand = (hand + 1) % clock.length;
+                }
+                slot = hand;
+                hand = (hand + 1) % clock.length;
+                entries.remove(clock[slot].key);
+                metrics.analysisEvicted();
+            }
+            clock[slot] = entry;
+            entries.put(canonical, entry);
+        }
+    }
+
+    /**
+     * @return number of positions in the cache
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Nested class for the scores of one position, as seen from the
+     * orientation with the smaller key
+     */
+    private static final class Entry {
+
+        private final long key;
+        private final int[] scores;
+        // set by lookups and cleared by the hand; a lost update only moves
+        // an eviction along
+        private volatile boolean referenced;
+
+        private Entry(long key, int[] scores) {
+            this.key = key;
+            this.scores = scores;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.SearchTables class holds the core.TranspositionTable of each
+ * difficulty, shared by every one player session of a server, so the
+ * memory the computer remembers positions in stays the same however many
+ * sessions run. The tables are lock-free, and sessions reach the same
+ * positions often, so sharing them also saves searches.
+ *
+ * Each difficulty has a table of its own, so a weak computer never plays
+ * from scores a deeper search stored. HARD gets half of ai.tableKilobytes,
+ * since its deeper searches store the most positions, and EASY and MEDIUM
+ * a quarter each.
+ *
+ */
+
+public class SearchTables {
+
+    private final TranspositionTable[] tables = new TranspositionTable[Difficulty.values().length];
+
+    /**
+     * Constructor for the tables of a server
+     * @param totalBytes memory of all the tables together
+     */
+    public SearchTables(long totalBytes) {
+        for (Difficulty difficulty : Difficulty.values()) {
+            long bytes = difficulty == Difficulty.HARD ? totalBytes / 2 : totalBytes / 4;
+            tables[difficulty.ordinal()] = new TranspositionTable(bytes);
+        }
+    }
+
+    /**
+     * Constructor for the tables set in the server settings
+     * @param config server settings
+     */
+    public SearchTables(ServerConfig config) {
+        this(config.getAiTableBytes());
+    }
+
+    /**
+     * @param difficulty strength of the computer
+     * @return the table every computer of that strength searches with
+     */
+    public TranspositionTable get(Difficulty difficulty) {
+        return tables[difficulty.ordinal()];
+    }
+}
@@ -0,0 +1,337 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.ServerConfig class holds the tunable settings of the Connect4
+ * servers. Settings are read from connect4.properties in the
+ * working directory (or the file named by -Dconnect4.config) and any
+ * -Dconnect4.<key>=value system property overrides the file.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class ServerConfig {
+
+    private static final String PREFIX = "connect4.";
+
+    private final Properties properties;
+    // a bad ai.difficulty is read for every game, but only reported once
+    private final AtomicBoolean badDifficultyReported = new AtomicBoolean();
+
+    /**
+     * Constructor for a config backed by the given properties
+     * @param properties settings without the connect4. prefix
+     */
+    public ServerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Loads the server config from disk and system properties
+     * @return the server config
+     */
+    public static ServerConfig load() {
+        Properties properties = new Properties();
+        Path file = Paths.get(System.getProperty(PREFIX + "config", "connect4.properties"));
+        if (Files.isReadable(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+        return new ServerConfig(properties);
+    }
+
+    /**
+     * Gets a setting as a string
+     * @param key name of the setting
+     * @param defaultValue value used when the setting is missing
+     * @return the setting
+     */
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        if (value == null) {
+            value = properties.getProperty(key);
+        }
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * Gets a setting as an int
+     * @param key name of the setting
+     * @param defaultValue value used when the setting is missing or invalid
+     * @return the setting
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            System.err.println("Ignoring invalid value for " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @return port the server listens on
+     */
+    public int getPort() {
+        return getInt("server.port", 8000);
+    }
+
+    /**
+     * @return most sessions core.GameServer runs at once
+     */
+    public int getMaxSessions() {
+        return Math.max(1, getInt("server.maxSessions", 10000));
+    }
+
+    /**
+     * @return most sessions that wait for a free slot before new ones are
+     *         turned away
+     */
+    public int getMaxQueuedSessions() {
+        return Math.max(0, getInt("server.maxQueuedSessions", 100));
+    }
+
+    /**
+     * @return how long player 1 may take to send their game choice
+     */
+    public int getHandshakeTimeoutMillis() {
+        return Math.max(0, getInt("server.handshakeTimeoutMillis", 60000));
+    }
+
+    /**
+     * @return how long to wait for player 2 to ask for the framed protocol
+     *         before treating them as a legacy client
+     */
+    public int getHelloTimeoutMillis() {
+        return Math.max(1, getInt("server.helloTimeoutMillis", 250));
+    }
+
+    /**
+     * @return how long a session keeps a framed player's seat after their
+     *         connection fails, waiting for them to resume
+     */
+    public int getResumeGraceMillis() {
+        return Math.max(0, getInt("server.resumeGraceMillis", 30000));
+    }
+
+    /**
+     * @return most spectators that can watch one session
+     */
+    public int getSpectatorsPerSession() {
+        return Math.max(0, getInt("spectators.maxPerSession", 500));
+    }
+
+    /**
+     * @return longest a spectator may take to accept one update before it
+     *         is dropped
+     */
+    public int getSpectatorWriteTimeoutMillis() {
+        return Math.max(1, getInt("spectators.writeTimeoutMillis", 5000));
+    }
+
+    /**
+     * @return threads writing to the spectators of every session; a
+     *         spectator stuck in a write holds one until it is dropped
+     */
+    public int getSpectatorWriterThreads() {
+        return Math.max(1, getInt("spectators.writerThreads", 4));
+    }
+
+    /**
+     * @return port monitors attach to for the server log, or 0 for none
+     */
+    public int getMonitorPort() {
+        return Math.max(0, getInt("monitor.port", 0));
+    }
+
+    /**
+     * @return port of the local metrics endpoint, or 0 to serve metrics
+     *         over JMX only
+     */
+    public int getMetricsPort() {
+        return Math.max(0, getInt("metrics.port", 0));
+    }
+
+    /**
+     * @return host:port of a running server for the monitor window to
+     *         attach to, or empty to start a server in the window's process
+     */
+    public String getMonitorAttach() {
+        return getString("monitor.attach", "");
+    }
+
+    /**
+     * @return most server events held in memory before new ones are dropped
+     */
+    public int getLogCapacity() {
+        return Math.max(2, getInt("log.capacity", 8192));
+    }
+
+    /**
+     * @return path of the server log file, or empty for no file
+     */
+    public String getLogPath() {
+        return getString("log.path", "connect4.log");
+    }
+
+    /**
+     * @return size at which the server log file is rolled over
+     */
+    public long getLogMaxFileBytes() {
+        return Math.max(1, getInt("log.maxFileKilobytes", 10240)) * 1024L;
+    }
+
+    /**
+     * @return number of rolled over log files kept
+     */
+    public int getLogMaxFiles() {
+        return Math.max(0, getInt("log.maxFiles", 3));
+    }
+
+    /**
+     * @return directory finished games are recorded in, or empty to record
+     *         no games
+     */
+    public String getRecordsPath() {
+        return getString("records.path", "games");
+    }
+
+    /**
+     * @return size at which a new game record segment is started
+     */
+    public long getRecordsMaxSegmentBytes() {
+        return Math.max(1, getInt("records.maxSegmentKilobytes", 16384)) * 1024L;
+    }
+
+    /**
+     * @return most finished games waiting to be written before new ones
+     *         are dropped
+     */
+    public int getRecordsQueueCapacity() {
+        return Math.max(1, getInt("records.queueCapacity", 4096));
+    }
+
+    /**
+     * @return number of event loop threads in core.NioConnect4Server
+     */
+    public int getEventLoops() {
+        return Math.max(1, getInt("nio.eventLoops", 2));
+    }
+
+    /**
+     * @return difficulty used when a client asks for a plain one player
+     *         game, MEDIUM if the setting is missing or invalid
+     */
+    public Difficulty getDefaultDifficulty() {
+        String value = getString("ai.difficulty", "MEDIUM");
+        try {
+            return Difficulty.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            if (badDifficultyReported.compareAndSet(false, true)) {
+                System.err.println("Ignoring invalid value for ai.difficulty: " + value);
+            }
+            return Difficulty.MEDIUM;
+        }
+    }
+
+    /**
+     * @return memory the computer may use to remember positions, in tables
+     *         shared by every one player session, however many sessions
+     *         run
+     */
+    public long getAiTableBytes() {
+        return getInt("ai.tableKilobytes", 65536) * 1024L;
+    }
+
+    /**
+     * @return number of threads searching HARD moves, 1 searches on the
+     *         session thread
+     */
+    public int getAiThreads() {
+        return Math.max(1, getInt("ai.threads", 1));
+    }
+
+    /**
+     * @return path of the opening book written by core.OpeningBookGenerator
+     */
+    public String getOpeningBookPath() {
+        return getString("book.path", "connect4.book");
+    }
+
+    /**
+     * @return path of the tablebase written by core.TablebaseGenerator, or
+     *         empty for none
+     */
+    public String getTablebasePath() {
+        return getString("tablebase.path", "connect4.endgame");
+    }
+
+    /**
+     * @return longest time the computer may think about one move
+     */
+    public int getAiTimeLimitMillis() {
+        return getInt("ai.timeLimitMillis", 1000);
+    }
+
+    /**
+     * @return how the computer chooses its moves: search for the alpha-beta
+     *         core.Connect4Solver, or mcts for the core.MonteCarloPlayer
+     */
+    public String getAiEngine() {
+        return getString("ai.engine", "search").toLowerCase();
+    }
+
+    /**
+     * @return playouts of a HARD core.MonteCarloPlayer for each move, a
+     *         quarter of that for MEDIUM and a sixteenth for EASY
+     */
+    public int getAiPlayouts() {
+        return Math.max(16, getInt("ai.playouts", 10000));
+    }
+
+    /**
+     * @return shortest time the computer is given for one move, however
+     *         busy the server is
+     */
+    public int getAiMinTimeLimitMillis() {
+        return Math.max(1, Math.min(getInt("ai.minTimeLimitMillis", 10), getAiTimeLimitMillis()));
+    }
+
+    /**
+     * @return share of all cores, in percent, the computer may think on
+     *         before moves are given less time
+     */
+    public int getAiCpuPercent() {
+        return Math.max(1, getInt("ai.cpuPercent", 50));
+    }
+
+    /**
+     * @return plies each column is searched for a hint
+     */
+    public int getHintDepth() {
+        return Math.max(1, getInt("hint.depth", Difficulty.HARD.getDepth()));
+    }
+
+    /**
+     * @return most positions whose hints are kept for every session
+     */
+    public int getHintCacheEntries() {
+        return Math.max(1, getInt("hint.cacheEntries", 65536));
+    }
+}
@@ -0,0 +1,604 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.ServerMetrics class keeps the numbers that show how the server
+ * is doing: histograms of move round trips, computer think times and
+ * the lobby's time to match, counters of game results and gauges of
+ * sessions and threads.
+ *
+ * Sessions record into it on every turn. Recording is an atomic update of
+ * fixed fields and never allocates. Each running session also has a
+ * SessionStats of its own with its move count, age and last move round
+ * trip, exported labelled by session number until the session ends. The
+ * numbers are read through JMX and, when metrics.port is set, as plain
+ * text from a local HTTP endpoint in the format Prometheus scrapes.
+ *
+ */
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+import javax.management.openmbean.OpenType;
+import javax.management.openmbean.SimpleType;
+import javax.management.openmbean.TabularData;
+import javax.management.openmbean.TabularDataSupport;
+import javax.management.openmbean.TabularType;
+
+public class ServerMetrics implements ServerMetricsMBean, Connect4Constants {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] QUANTILES = {"0.5", "0.9", "0.99", "0.999"};
+
+    // the JMX table of running sessions, one row per session
+    private static final String[] SESSION_COLUMNS = {"session", "moves", "ageMillis",
+            "lastMoveRoundTripMicros"};
+    private static final CompositeType SESSION_ROW;
+    private static final TabularType SESSION_TABLE;
+
+    static {
+        try {
+            SESSION_ROW = new CompositeType("Session", "A running session", SESSION_COLUMNS,
+                    new String[] {"Session number", "Moves played", "Time since it started",
+                            "Round trip of the last player move"},
+                    new OpenType<?>[] {SimpleType.INTEGER, SimpleType.INTEGER, SimpleType.LONG,
+                            SimpleType.LONG});
+            SESSION_TABLE = new TabularType("Sessions", "Running sessions", SESSION_ROW,
+                    new String[] {"session"});
+        } catch (OpenDataException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // from a valid move arriving to every player having its result, in nanoseconds
+    private final Histogram moveRoundTrip = new Histogram();
+    // time the computer spends choosing a move, in nanoseconds
+    private final Histogram aiThink = new Histogram();
+    // time the computer was given for its last move, in nanoseconds
+    private final AtomicLong aiMoveBudget = new AtomicLong();
+
+    private final AtomicLong gamesStarted = new AtomicLong();
+    private final AtomicLong player1Wins = new AtomicLong();
+    private final AtomicLong player2Wins = new AtomicLong();
+    private final AtomicLong ties = new AtomicLong();
+    private final AtomicLong abortedGames = new AtomicLong();
+    private final AtomicLong resumes = new AtomicLong();
+    private final AtomicLong invalidTurns = new AtomicLong();
+    private final AtomicLong busyRejections = new AtomicLong();
+    private final AtomicLong spectatorsDropped = new AtomicLong();
+    private final AtomicLong spectatorFramesSkipped = new AtomicLong();
+    private final AtomicLong hints = new AtomicLong();
+    private final AtomicLong analysisHits = new AtomicLong();
+    private final AtomicLong analysisMisses = new AtomicLong();
+    private final AtomicLong analysisEvictions = new AtomicLong();
+
+    // sessions running now, by session number
+    private final Map<Integer, SessionStats> sessions = new ConcurrentHashMap<>();
+
+    private final IntSupplier activeSessions;
+    private final IntSupplier queuedSessions;
+    private final IntSupplier waitingForOpponent;
+    private final IntSupplier spectators;
+    // time player 1 waited for an opponent, in nanoseconds, kept by the lobby
+    private final Histogram matchTime;
+    private final LongSupplier handshakeTimeouts;
+
+    /**
+     * Constructor for the metrics of a server without a lobby
+     * @param activeSessions reads the number of sessions running
+     * @param queuedSessions reads the number of sessions waiting for a slot
+     * @param waitingForOpponent reads the number of players waiting for an
+     *                           opponent
+     * @param spectators reads the number of spectators watching a session
+     */
+    public ServerMetrics(IntSupplier activeSessions, IntSupplier queuedSessions,
+                         IntSupplier waitingForOpponent, IntSupplier spectators) {
+        this(activeSessions, queuedSessions, waitingForOpponent, spectators, new Histogram(),
+                () -> 0);
+    }
+
+    /**
+     * Constructor for the metrics of a server
+     * @param activeSessions reads the number of sessions running
+     * @param queuedSessions reads the number of sessions waiting for a slot
+     * @param waitingForOpponent reads the number of players waiting for an
+     *                           opponent
+     * @param spectators reads the number of spectators watching a session
+     * @param matchTime time each matched player waited for an opponent
+     * @param handshakeTimeouts reads the number of players dropped for
+     *                          taking too long to choose a game
+     */
+    public ServerMetrics(IntSupplier activeSessions, IntSupplier queuedSessions,
+                         IntSupplier waitingForOpponent, IntSupplier spectators,
+                         Histogram matchTime, LongSupplier handshakeTimeouts) {
+        this.activeSessions = activeSessions;
+        this.queuedSessions = queuedSessions;
+        this.waitingForOpponent = waitingForOpponent;
+        this.spectators = spectators;
+        this.matchTime = matchTime;
+        this.handshakeTimeouts = handshakeTimeouts;
+    }
+
+    // ----- recording -----
+
+    /**
+     * @param nanos time from a valid move arriving to every player having
+     *              its result
+     */
+    public void moveRoundTrip(long nanos) {
+        moveRoundTrip.record(nanos);
+    }
+
+    /**
+     * @param nanos time the computer took to choose a move
+     * @param budgetNanos time the computer was given for it
+     */
+    public void aiThink(long nanos, long budgetNanos) {
+        aiThink.record(nanos);
+        aiMoveBudget.set(budgetNanos);
+    }
+
+    /**
+     * Counts a session that started
+     */
+    public void gameStarted() {
+        gamesStarted.incrementAndGet();
+    }
+
+    /**
+     * Starts the numbers of one running session
+     * @param session number of the session
+     * @return where the session records its moves
+     */
+    public SessionStats sessionStarted(int session) {
+        SessionStats stats = new SessionStats();
+        sessions.put(session, stats);
+        return stats;
+    }
+
+    /**
+     * Drops the numbers of a session that is over
+     * @param session number of the session
+     */
+    public void sessionEnded(int session) {
+        sessions.remove(session);
+    }
+
+    /**
+     * Counts the result of a finished game
+     * @param status P1_WINNER, P2_WINNER or TIE
+     */
+    public void gameEnded(int status) {
+        if (status == P1_WINNER) {
+            player1Wins.incrementAndGet();
+        } else if (status == P2_WINNER) {
+            player2Wins.incrementAndGet();
+        } else if (status == TIE) {
+            ties.incrementAndGet();
+        }
+    }
+
+    /**
+     * Counts a game that ended because a player disconnected
+     */
+    public void gameAborted() {
+        abortedGames.incrementAndGet();
+    }
+
+    /**
+     * Counts a player who reconnected to their seat in a session
+     */
+    public void playerResumed() {
+        resumes.incrementAndGet();
+    }
+
+    /**
+     * Counts a move the server refused
+     */
+    public void invalidTurn() {
+        invalidTurns.incrementAndGet();
+    }
+
+    /**
+     * Counts a session turned away because the server was full
+     */
+    public void busyRejection() {
+        busyRejections.incrementAndGet();
+    }
+
+    /**
+     * Counts a spectator dropped because it left or could not keep up
+     */
+    public void spectatorDropped() {
+        spectatorsDropped.incrementAndGet();
+    }
+
+    /**
+     * Counts a frame a slow spectator skipped for a later one
+     */
+    public void spectatorFrameSkipped() {
+        spectatorFramesSkipped.incrementAndGet();
+    }
+
+    /**
+     * Counts a hint sent to a player
+     */
+    public void hintSent() {
+        hints.incrementAndGet();
+    }
+
+    /**
+     * Counts a position whose analysis was already cached
+     */
+    public void analysisHit() {
+        analysisHits.incrementAndGet();
+    }
+
+    /**
+     * Counts a position that had to be analyzed
+     */
+    public void analysisMissed() {
+        analysisMisses.incrementAndGet();
+    }
+
+    /**
+     * Counts an analysis dropped from the cache to make room
+     */
+    public void analysisEvicted() {
+        analysisEvictions.incrementAndGet();
+    }
+
+    // ----- exporting -----
+
+    /**
+     * Makes the metrics readable through the platform MBean server
+     * @param port port of the server, which tells servers in one JVM apart
+     */
+    public void registerMBean(int port) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("core:type=ServerMetrics,port=" + port));
+        } catch (JMException ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Serves the metrics as plain text to GET requests on the loopback
+     * address, from a thread of its own
+     * @param port port to listen on
+     * @throws IOException if the port cannot be opened
+     */
+    public void startScrapeEndpoint(int port) throws IOException {
+        HttpServer server = HttpServer.create(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", exchange -> {
+            byte[] body = format().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    /**
+     * @return every metric in the Prometheus text format
+     */
+    public String format() {
+        StringBuilder out = new StringBuilder();
+        gauge(out, "connect4_active_sessions", getActiveSessions());
+        gauge(out, "connect4_queued_sessions", getQueuedSessions());
+        gauge(out, "connect4_waiting_for_opponent", getWaitingForOpponent());
+        gauge(out, "connect4_spectators", getSpectators());
+        gauge(out, "connect4_threads", getThreads());
+        out.append("# TYPE connect4_ai_move_budget_seconds gauge\n");
+        out.append("connect4_ai_move_budget_seconds ").append(aiMoveBudget.get() / 1e9).append('\n');
+        counter(out, "connect4_games_started_total", getGamesStarted());
+        counter(out, "connect4_matches_total", getMatches());
+        counter(out, "connect4_handshake_timeouts_total", getHandshakeTimeouts());
+        out.append("# TYPE connect4_games_ended_total counter\n");
+        ended(out, "player1", getPlayer1Wins());
+        ended(out, "player2", getPlayer2Wins());
+        ended(out, "tie", getTies());
+        ended(out, "aborted", getAbortedGames());
+        counter(out, "connect4_resumes_total", getResumes());
+        counter(out, "connect4_invalid_turns_total", getInvalidTurns());
+        counter(out, "connect4_busy_rejections_total", getBusyRejections());
+        counter(out, "connect4_spectators_dropped_total", getSpectatorsDropped());
+        counter(out, "connect4_spectator_frames_skipped_total", getSpectatorFramesSkipped());
+        counter(out, "connect4_hints_total", getHints());
+        counter(out, "connect4_analysis_cache_hits_total", getAnalysisHits());
+        counter(out, "connect4_analysis_cache_misses_total", getAnalysisMisses());
+        counter(out, "connect4_analysis_cache_evictions_total", getAnalysisEvictions());
+        summary(out, "connect4_move_round_trip_seconds", moveRoundTrip);
+        summary(out, "connect4_ai_think_seconds", aiThink);
+        summary(out, "connect4_time_to_match_seconds", matchTime);
+        formatSessions(out);
+        return out.toString();
+    }
+
+    private void formatSessions(StringBuilder out) {
+        long now = System.nanoTime();
+        StringBuilder moves = new StringBuilder("# TYPE connect4_session_moves gauge\n");
+        StringBuilder age = new StringBuilder("# TYPE connect4_session_age_seconds gauge\n");
+        StringBuilder roundTrip = new StringBuilder(
+                "# TYPE connect4_session_last_move_round_trip_seconds gauge\n");
+        for (Map.Entry<Integer, SessionStats> session : sessions.entrySet()) {
+            String label = "{session=\"" + session.getKey() + "\"} ";
+            SessionStats stats = session.getValue();
+            moves.append("connect4_session_moves").append(label).append(stats.moves).append('\n');
+            age.append("connect4_session_age_seconds").append(label)
+                    .append((now - stats.startNanos) / 1e9).append('\n');
+            roundTrip.append("connect4_session_last_move_round_trip_seconds").append(label)
+                    .append(stats.lastRoundTrip / 1e9).append('\n');
+        }
+        out.append(moves).append(age).append(roundTrip);
+    }
+
+    private static void gauge(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder out, String name, long value) {
+        out.append("# TYPE ").append(name).append(" counter\n");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void ended(StringBuilder out, String result, long value) {
+        out.append("connect4_games_ended_total{result=\"").append(result).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static void summary(StringBuilder out, String name, Histogram histogram) {
+        out.append("# TYPE ").append(name).append(" summary\n");
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            out.append(name).append("{quantile=\"").append(QUANTILES[i]).append("\"} ")
+                    .append(histogram.getPercentile(PERCENTILES[i]) / 1e9).append('\n');
+        }
+        out.append(name).append("_max ").append(histogram.getMax() / 1e9).append('\n');
+        out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+        out.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+    }
+
+    // ----- JMX attributes -----
+
+    @Override
+    public int getActiveSessions() {
+        return activeSessions.getAsInt();
+    }
+
+    @Override
+    public int getQueuedSessions() {
+        return queuedSessions.getAsInt();
+    }
+
+    @Override
+    public int getWaitingForOpponent() {
+        return waitingForOpponent.getAsInt();
+    }
+
+    @Override
+    public int getSpectators() {
+        return spectators.getAsInt();
+    }
+
+    @Override
+    public TabularData getSessions() {
+        TabularDataSupport table = new TabularDataSupport(SESSION_TABLE);
+        long now = System.nanoTime();
+        for (Map.Entry<Integer, SessionStats> session : sessions.entrySet()) {
+            SessionStats stats = session.getValue();
+            try {
+                table.put(new CompositeDataSupport(SESSION_ROW, SESSION_COLUMNS, new Object[] {
+                        session.getKey(), stats.moves, (now - stats.startNanos) / 1000000,
+                        stats.lastRoundTrip / 1000}));
+            } catch (OpenDataException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public int getThreads() {
+        return threads.getThreadCount();
+    }
+
+    @Override
+    public long getGamesStarted() {
+        return gamesStarted.get();
+    }
+
+    @Override
+    public long getMatches() {
+        return matchTime.getCount();
+    }
+
+    @Override
+    public long getHandshakeTimeouts() {
+        return handshakeTimeouts.getAsLong();
+    }
+
+    @Override
+    public long getTimeToMatchP50Millis() {
+        return matchTime.getPercentile(50) / 1000000;
+    }
+
+    @Override
+    public long getTimeToMatchP99Millis() {
+        return matchTime.getPercentile(99) / 1000000;
+    }
+
+    @Override
+    public long getTimeToMatchMaxMillis() {
+        return matchTime.getMax() / 1000000;
+    }
+
+    @Override
+    public long getPlayer1Wins() {
+        return player1Wins.get();
+    }
+
+    @Override
+    public long getPlayer2Wins() {
+        return player2Wins.get();
+    }
+
+    @Override
+    public long getTies() {
+        return ties.get();
+    }
+
+    @Override
+    public long getAbortedGames() {
+        return abortedGames.get();
+    }
+
+    @Override
+    public long getResumes() {
+        return resumes.get();
+    }
+
+    @Override
+    public long getInvalidTurns() {
+        return invalidTurns.get();
+    }
+
+    @Override
+    public long getBusyRejections() {
+        return busyRejections.get();
+    }
+
+    @Override
+    public long getSpectatorsDropped() {
+        return spectatorsDropped.get();
+    }
+
+    @Override
+    public long getSpectatorFramesSkipped() {
+        return spectatorFramesSkipped.get();
+    }
+
+    @Override
+    public long getHints() {
+        return hints.get();
+    }
+
+    @Override
+    public long getAnalysisHits() {
+        return analysisHits.get();
+    }
+
+    @Override
+    public long getAnalysisMisses() {
+        return analysisMisses.get();
+    }
+
+    @Override
+    public long getAnalysisEvictions() {
+        return analysisEvictions.get();
+    }
+
+    @Override
+    public int getAnalysisHitPercent() {
+        long hits = analysisHits.get();
+        long lookups = hits + analysisMisses.get();
+        return lookups == 0 ? 0 : (int) (100 * hits / lookups);
+    }
+
+    @Override
+    public long getMoveRoundTripCount() {
+        return moveRoundTrip.getCount();
+    }
+
+    @Override
+    public long getMoveRoundTripP50Micros() {
+        return moveRoundTrip.getPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getMoveRoundTripP99Micros() {
+        return moveRoundTrip.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getMoveRoundTripMaxMicros() {
+        return moveRoundTrip.getMax() / 1000;
+    }
+
+    @Override
+    public long getAiThinkCount() {
+        return aiThink.getCount();
+    }
+
+    @Override
+    public long getAiThinkP50Micros() {
+        return aiThink.getPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getAiThinkP99Micros() {
+        return aiThink.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getAiThinkMaxMicros() {
+        return aiThink.getMax() / 1000;
+    }
+
+    @Override
+    public long getAiMoveBudgetMillis() {
+        return aiMoveBudget.get() / 1000000;
+    }
+
+    /**
+     * Nested class for the numbers of one running session, written by the
+     * session's thread and read by exports
+     */
+    public static final class SessionStats {
+
+        private final long startNanos = System.nanoTime();
+        private volatile int moves;
+        private volatile long lastRoundTrip;
+
+        private SessionStats() {
+        }
+
+        /**
+         * @param moves moves played in the session so far
+         */
+        public void moved(int moves) {
+            this.moves = moves;
+        }
+
+        /**
+         * @param nanos round trip of the last valid player move
+         */
+        public void roundTrip(long nanos) {
+            lastRoundTrip = nanos;
+        }
+    }
+}
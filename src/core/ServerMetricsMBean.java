@@ -0,0 +1,87 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.ServerMetricsMBean interface lists what core.ServerMetrics shows
+ * through JMX. Times are in microseconds unless their name says otherwise.
+ *
+ */
+
+import javax.management.openmbean.TabularData;
+
+public interface ServerMetricsMBean {
+
+    int getActiveSessions();
+
+    int getQueuedSessions();
+
+    int getWaitingForOpponent();
+
+    int getSpectators();
+
+    // one row per running session with its number, moves, age and last
+    // move round trip
+    TabularData getSessions();
+
+    int getThreads();
+
+    long getGamesStarted();
+
+    long getMatches();
+
+    long getHandshakeTimeouts();
+
+    long getTimeToMatchP50Millis();
+
+    long getTimeToMatchP99Millis();
+
+    long getTimeToMatchMaxMillis();
+
+    long getPlayer1Wins();
+
+    long getPlayer2Wins();
+
+    long getTies();
+
+    long getAbortedGames();
+
+    long getResumes();
+
+    long getInvalidTurns();
+
+    long getBusyRejections();
+
+    long getSpectatorsDropped();
+
+    long getSpectatorFramesSkipped();
+
+    long getHints();
+
+    long getAnalysisHits();
+
+    long getAnalysisMisses();
+
+    long getAnalysisEvictions();
+
+    int getAnalysisHitPercent();
+
+    long getMoveRoundTripCount();
+
+    long getMoveRoundTripP50Micros();
+
+    long getMoveRoundTripP99Micros();
+
+    long getMoveRoundTripMaxMicros();
+
+    long getAiThinkCount();
+
+    long getAiThinkP50Micros();
+
+    long getAiThinkP99Micros();
+
+    long getAiThinkMaxMicros();
+
+    long getAiMoveBudgetMillis();
+}
@@ -0,0 +1,119 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.SessionExecutor class runs game sessions for core.GameServer
+ * and bounds how many run at once. Sessions run on virtual threads when the
+ * JVM has them (Java 21 and later), so a session blocked reading a socket
+ * does not hold an OS thread, and on a cached thread pool otherwise.
+ *
+ * Once the cap is reached new sessions wait in a queue, and once the queue
+ * is full they are rejected so the server can tell the players it is busy.
+ *
+ */
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class SessionExecutor {
+
+    private final ExecutorService executor;
+    private final int maxSessions;
+    private final int maxQueued;
+
+    private final Queue<Runnable> queued = new ArrayDeque<>();
+    private int active;
+    private long rejected;
+
+    /**
+     * Constructor for a session executor
+     * @param maxSessions most sessions that may run at once
+     * @param maxQueued most sessions that may wait for a free slot
+     */
+    public SessionExecutor(int maxSessions, int maxQueued) {
+        this.maxSessions = maxSessions;
+        this.maxQueued = maxQueued;
+        executor = newThreadPerTaskExecutor();
+    }
+
+    /**
+     * Starts a session now, or queues it if the cap is reached
+     * @param session the session to run
+     * @return false if the session was rejected because the queue is full
+     */
+    public synchronized boolean submit(Runnable session) {
+        if (active < maxSessions) {
+            active++;
+            start(session);
+            return true;
+        }
+        if (queued.size() < maxQueued) {
+            queued.add(session);
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    private void start(Runnable session) {
+        executor.execute(() -> {
+            try {
+                session.run();
+            } finally {
+                finished();
+            }
+        });
+    }
+
+    /**
+     * Hands the slot of a finished session to the next queued one
+     */
+    private synchronized void finished() {
+        Runnable next = queued.poll();
+        if (next != null) {
+            start(next);
+        } else {
+            active--;
+        }
+    }
+
+    /**
+     * @return number of sessions running
+     */
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * @return number of sessions waiting for a free slot
+     */
+    public synchronized int getQueued() {
+        return queued.size();
+    }
+
+    /**
+     * @return number of sessions turned away since the server started
+     */
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Creates a virtual thread per task executor when the running JVM has
+     * one. It is looked up by reflection so the project still builds for
+     * older Java versions.
+     * @return executor starting one thread per task
+     */
+    static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
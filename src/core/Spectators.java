@@ -0,0 +1,293 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Spectators class sends running games to the clients watching
+ * them. Each session has an Audience, and after every move the session
+ * encodes the whole game once into a MSG_WATCHING frame that every
+ * spectator is sent as is, without a copy per spectator.
+ *
+ * Publishing never waits on a spectator. Each spectator keeps only the
+ * latest frame it has not been sent yet, since that frame holds every move
+ * before it, and has it written by a small fixed pool of writer threads,
+ * one frame per turn, so however many watch, the server runs only that
+ * many writes at once. A spectator that cannot keep up skips the frames it
+ * missed and is sent the latest one, and a spectator stuck in one write
+ * for longer than the write timeout is dropped, giving its writer back.
+ *
+ */
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class Spectators implements Connect4Constants {
+
+    private final int maxPerSession;
+    private final long writeTimeoutNanos;
+    private final ServerMetrics metrics;
+
+    // writes to spectators, a frame at a time from each
+    private final ExecutorService writers;
+    // every spectator of every session, looked over for stuck writes
+    private final Set<Spectator> watching = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor for the spectators of a server, which starts a thread
+     * that drops stuck spectators
+     * @param maxPerSession most spectators of one session
+     * @param writeTimeoutMillis longest a spectator may take to accept one
+     *                           frame before it is dropped
+     * @param writerThreads threads writing to every spectator of the server
+     * @param metrics counts dropped spectators and skipped frames
+     */
+    public Spectators(int maxPerSession, int writeTimeoutMillis, int writerThreads,
+                      ServerMetrics metrics) {
+        this.maxPerSession = maxPerSession;
+        writers = Executors.newFixedThreadPool(writerThreads, task -> {
+            Thread writer = new Thread(task, "connect4-spectator-writer");
+            writer.setDaemon(true);
+            return writer;
+        });
+        writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.metrics = metrics;
+        Thread sweeper = new Thread(() -> sweep(Math.max(10, writeTimeoutMillis / 4)),
+                "connect4-spectators");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    /**
+     * Starts the audience of a new session
+     * @param board board the session is played on
+     * @param columns columns the session plays, counting from 0; entries
+     *                are read up to the number of moves published and must
+     *                not change after that
+     * @return the audience
+     */
+    public Audience newAudience(Variant board, byte[] columns) {
+        return new Audience(board, columns);
+    }
+
+    /**
+     * @return number of spectators watching a session
+     */
+    public int getWatching() {
+        return watching.size();
+    }
+
+    /**
+     * Drops every spectator stuck in one write for too long. Closing the
+     * socket also ends the blocked write.
+     */
+    private void sweep(long periodMillis) {
+        try {
+            while (true) {
+                Thread.sleep(periodMillis);
+                long now = System.nanoTime();
+                for (Spectator spectator : watching) {
+                    long since = spectator.writingSince;
+                    if (since != 0 && now - since > writeTimeoutNanos) {
+                        spectator.drop();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Nested class for the spectators of one session
+     */
+    public final class Audience {
+
+        private final Variant board;
+        private final byte[] columns;
+        private final List<Spectator> spectators = new CopyOnWriteArrayList<>();
+        private int moves;
+        private boolean over;
+
+        private Audience(Variant board, byte[] columns) {
+            this.board = board;
+            this.columns = columns;
+        }
+
+        /**
+         * Adds a spectator and sends them the game so far
+         * @param stream connection of the spectator
+         * @return false if the session is over or has too many spectators
+         */
+        public synchronized boolean subscribe(GameStream stream) {
+            if (over || spectators.size() >= maxPerSession) {
+                return false;
+            }
+            Spectator spectator = new Spectator(this, stream);
+            spectators.add(spectator);
+            watching.add(spectator);
+            spectator.offer(encode());
+            return true;
+        }
+
+        /**
+         * Sends every spectator the game after a move, encoded once. Called
+         * by the session after the players have the move.
+         * @param moves number of moves played so far
+         */
+        public synchronized void publish(int moves) {
+            this.moves = moves;
+            if (spectators.isEmpty()) {
+                return;
+            }
+            byte[] frame = encode();
+            for (Spectator spectator : spectators) {
+                spectator.offer(frame);
+            }
+        }
+
+        /**
+         * Ends the session for its spectators. Each is closed once sent the
+         * last frame.
+         */
+        public synchronized void close() {
+            over = true;
+            for (Spectator spectator : spectators) {
+                spectator.finish();
+            }
+        }
+
+        /**
+         * @return number of spectators
+         */
+        public int size() {
+            return spectators.size();
+        }
+
+        private byte[] encode() {
+            return GameStream.encodeGame(MSG_WATCHING, board, columns, moves);
+        }
+    }
+
+    /**
+     * Nested class for one spectator and the frame it is due
+     */
+    private final class Spectator implements Runnable {
+
+        private final Audience audience;
+        private final GameStream stream;
+
+        // latest frame not yet written, and what the writer is doing
+        private byte[] pending;
+        private boolean writing;
+        private boolean finishing;
+        private boolean closed;
+
+        // when the write in progress started, or 0 between writes
+        private volatile long writingSince;
+
+        private Spectator(Audience audience, GameStream stream) {
+            this.audience = audience;
+            this.stream = stream;
+        }
+
+        /**
+         * Makes a frame the next one written, in place of any older one not
+         * written yet
+         */
+        private void offer(byte[] frame) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                if (pending != null) {
+                    metrics.spectatorFrameSkipped();
+                }
+                pending = frame;
+                if (writing) {
+                    return;
+                }
+                writing = true;
+            }
+            writers.execute(this);
+        }
+
+        /**
+         * Closes the spectator once the frame it is due is written
+         */
+        private void finish() {
+            synchronized (this) {
+                finishing = true;
+                if (writing) {
+                    return;
+                }
+            }
+            close(false);
+        }
+
+        /**
+         * Writes the frame due, then goes to the back of the writers' queue
+         * in case another is due by then, so one spectator never keeps a
+         * writer from the others
+         */
+        @Override
+        public void run() {
+            byte[] frame;
+            boolean done = false;
+            synchronized (this) {
+                frame = closed ? null : pending;
+                pending = null;
+                if (frame == null) {
+                    writing = false;
+                    done = finishing && !closed;
+                }
+            }
+            if (frame == null) {
+                if (done) {
+                    close(false);
+                }
+                return;
+            }
+            writingSince = System.nanoTime();
+            try {
+                stream.writeShared(frame);
+            } catch (IOException ex) {
+                drop();
+                return;
+            } finally {
+                writingSince = 0;
+            }
+            writers.execute(this);
+        }
+
+        private void drop() {
+            close(true);
+        }
+
+        private void close(boolean dropped) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                pending = null;
+            }
+            watching.remove(this);
+            audience.spectators.remove(this);
+            if (dropped) {
+                metrics.spectatorDropped();
+            }
+            try {
+                stream.close();
+            } catch (IOException ex) {
+                // the spectator is gone anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Tablebase class answers the last moves of a one player game
+ * from a file of solved endgames written by core.TablebaseGenerator. Every
+ * position in it is solved to the end, so the answer is the perfect move
+ * and whether it wins, loses or draws in how many plies.
+ *
+ * The file is memory-mapped read only, so one tablebase is shared by every
+ * session. Positions are stored under the smaller key of the position and
+ * its mirror image, sorted, in blocks of BLOCK_SIZE. An index holds the
+ * first key and the offset of every block, and inside a block each key is
+ * stored as a varint of its distance from the one before, followed by a
+ * two byte result. A lookup binary searches the index and decodes at most
+ * one block.
+ *
+ * Positions where the player to move wins at once are left out of the file
+ * and answered without it.
+ *
+ */
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class Tablebase {
+
+    static final int MAGIC = 0x43345442; // "C4TB"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+    static final int INDEX_BYTES = Long.BYTES + Integer.BYTES;
+    static final int BLOCK_SIZE = 64;
+
+    public static final int NOT_FOUND = -1;
+
+    // results for the player to move
+    public static final int WIN = 1;
+    public static final int LOSS = 2;
+    public static final int DRAW = 3;
+
+    private final MappedByteBuffer file;
+    private final int maxEmpty;
+    private final int size;
+    private final int blocks;
+    private final int dataStart;
+
+    private Tablebase(MappedByteBuffer file, int maxEmpty, int size, int blocks) {
+        this.file = file;
+        this.maxEmpty = maxEmpty;
+        this.size = size;
+        this.blocks = blocks;
+        dataStart = HEADER_BYTES + blocks * INDEX_BYTES;
+    }
+
+    /**
+     * Maps a tablebase file into memory
+     * @param path tablebase written by core.TablebaseGenerator
+     * @return the tablebase
+     * @throws IOException if the file cannot be read or is not a tablebase
+     */
+    public static Tablebase open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION || buffer.getInt(20) != BLOCK_SIZE) {
+                throw new IOException(path + " is not a Connect4 tablebase");
+            }
+            int maxEmpty = buffer.getInt(8);
+            int size = buffer.getInt(12);
+            int blocks = buffer.getInt(16);
+            if ((long) HEADER_BYTES + (long) blocks * INDEX_BYTES > buffer.capacity()
+                    || blocks != (size + BLOCK_SIZE - 1) / BLOCK_SIZE) {
+                throw new IOException(path + " is truncated");
+            }
+            return new Tablebase(buffer, maxEmpty, size, blocks);
+        }
+    }
+
+    /**
+     * Maps the tablebase named in the server config, if the file exists
+     * @param config server settings
+     * @return the tablebase, or null if there is no tablebase file
+     * @throws IOException if the file exists but is not a tablebase
+     */
+    public static Tablebase openIfPresent(ServerConfig config) throws IOException {
+        if (config.getTablebasePath().isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(config.getTablebasePath());
+        return Files.isRegularFile(path) ? open(path) : null;
+    }
+
+    /**
+     * Looks up the perfect move for the player whose turn it is
+     * @param board current game
+     * @return the packed result, read with outcome, distance and move, or
+     *         NOT_FOUND if the position is not in the tablebase
+     */
+    public int probe(Connect4Board board) {
+        int empty = Connect4Board.CELLS - board.getMoves();
+        if (empty > maxEmpty || empty == 0) {
+            return NOT_FOUND;
+        }
+        for (int col : Connect4Solver.MOVE_ORDER) {
+            if (board.canPlay(col) && board.isWinningMove(col)) {
+                return pack(WIN, 1, col);
+            }
+        }
+        long key = board.key();
+        long mirroredKey = board.mirroredKey();
+        int result = find(Math.min(key, mirroredKey));
+        if (result == NOT_FOUND || mirroredKey >= key) {
+            return result;
+        }
+        return (result & ~0xF) | (Connect4Board.COLUMNS - 1 - move(result));
+    }
+
+    /**
+     * Finds a key in the file, using absolute reads, which are safe to share
+     */
+    private int find(long target) {
+        // the last block whose first key is not above the target
+        int low = 0;
+        int high = blocks - 1;
+        int block = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (file.getLong(HEADER_BYTES + mid * INDEX_BYTES) <= target) {
+                block = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (block < 0) {
+            return NOT_FOUND;
+        }
+
+        long key = file.getLong(HEADER_BYTES + block * INDEX_BYTES);
+        int offset = dataStart + file.getInt(HEADER_BYTES + block * INDEX_BYTES + Long.BYTES);
+        int entries = Math.min(BLOCK_SIZE, size - block * BLOCK_SIZE);
+        for (int i = 0; ; ) {
+            if (key == target) {
+                return file.getShort(offset) & 0xFFFF;
+            }
+            offset += Short.BYTES;
+            if (++i == entries) {
+                return NOT_FOUND;
+            }
+            // the next key, as a varint of its distance from this one
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = file.get(offset++);
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            key += delta;
+            if (key > target) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    /**
+     * Packs a result the way the file stores it
+     * @param outcome WIN, LOSS or DRAW for the player to move
+     * @param distance plies until the game ends with perfect play
+     * @param move the perfect column, counting from 0
+     * @return the packed result
+     */
+    static int pack(int outcome, int distance, int move) {
+        return distance << 6 | outcome << 4 | move;
+    }
+
+    /**
+     * @param result a result found by probe
+     * @return WIN, LOSS or DRAW for the player to move
+     */
+    public static int outcome(int result) {
+        return (result >>> 4) & 0x3;
+    }
+
+    /**
+     * @param result a result found by probe
+     * @return plies until the game ends with perfect play, counting both
+     *         players and the last move
+     */
+    public static int distance(int result) {
+        return result >>> 6;
+    }
+
+    /**
+     * @param result a result found by probe
+     * @return the column to play, counting from 0
+     */
+    public static int move(int result) {
+        return result & 0xF;
+    }
+
+    /**
+     * @return most empty cells of a position in the tablebase
+     */
+    public int getMaxEmpty() {
+        return maxEmpty;
+    }
+
+    /**
+     * @return number of positions in the tablebase
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,290 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.TablebaseGenerator class writes the tablebase file read by
+ * core.Tablebase. Every endgame with up to the given number of empty cells
+ * is far too many to solve, so it solves the endgames games actually reach:
+ * games the computer plays against itself after a few random moves, and
+ * the games in a core.GameRecordStore directory if one is given. Each game
+ * is followed until it has the given number of empty cells left, and that
+ * position and every position after it are solved to the end.
+ *
+ * Usage: java core.TablebaseGenerator [empty] [games] [file] [records]
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class TablebaseGenerator {
+
+    // random moves at the start of each game the computer plays itself
+    private static final int RANDOM_PLIES = 4;
+
+    // scores while solving, a win in d plies scores WIN_SCORE - d
+    private static final int WIN_SCORE = 100;
+
+    private final int maxEmpty;
+
+    // solved positions by smaller key of the position and its mirror, with
+    // the result packed as core.Tablebase stores it
+    private long[] keys = new long[1 << 16];
+    private short[] results = new short[1 << 16];
+    private int size;
+
+    /**
+     * Constructor for a generator
+     * @param maxEmpty positions with at most this many empty cells are solved
+     */
+    public TablebaseGenerator(int maxEmpty) {
+        this.maxEmpty = maxEmpty;
+    }
+
+    /**
+     * Main entry point
+     * @param args empty cells, games to play, output file and records
+     *             directory
+     * @throws IOException if the tablebase cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int maxEmpty = args.length > 0 ? Integer.parseInt(args[0]) : 12;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Path file = Paths.get(args.length > 2 ? args[2] : "connect4.endgame");
+
+        long start = System.currentTimeMillis();
+        TablebaseGenerator generator = new TablebaseGenerator(maxEmpty);
+        if (args.length > 3) {
+            GameRecordStore.replayAll(Paths.get(args[3]), game -> {
+                if (game.getVariant().isStandard()) {
+                    generator.addGame(game);
+                }
+            });
+        }
+        generator.addSelfPlay(games, 1);
+        int size = generator.write(file);
+        System.out.println("Wrote " + size + " positions to " + file + " ("
+                + Files.size(file) + " bytes) in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Solves the endgame of a recorded game, if it lasted long enough. A
+     * player who missed a win leads the game out of the positions solved
+     * so far, so every position of the endgame is solved.
+     * @param game a game on the standard board
+     */
+    public void addGame(GameRecordStore.Game game) {
+        Connect4Board board = new Connect4Board();
+        for (int i = 0; ; i++) {
+            if (Connect4Board.CELLS - board.getMoves() <= maxEmpty) {
+                solve(board);
+            }
+            if (i == game.getMoveCount()) {
+                return;
+            }
+            int col = game.getColumn(i);
+            if (!board.canPlay(col) || board.isWinningMove(col)) {
+                return;
+            }
+            board.play(col);
+        }
+    }
+
+    /**
+     * Plays the computer against itself and solves the endgame of every
+     * game that lasts long enough
+     * @param games number of games to play
+     * @param seed seed of the random first moves
+     */
+    public void addSelfPlay(int games, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Connect4Solver solver = new Connect4Solver(Difficulty.MEDIUM.getDepth(), 1000);
+        for (int game = 0; game < games; game++) {
+            Connect4Board board = new Connect4Board();
+            while (Connect4Board.CELLS - board.getMoves() > maxEmpty) {
+                int col;
+                if (board.getMoves() < RANDOM_PLIES) {
+                    do {
+                        col = random.nextInt(Connect4Board.COLUMNS);
+                    } while (!board.canPlay(col));
+                } else {
+                    col = solver.bestMove(board);
+                }
+                if (board.isWinningMove(col)) {
+                    break;
+                }
+                board.play(col);
+            }
+            if (Connect4Board.CELLS - board.getMoves() == maxEmpty) {
+                solve(board);
+            }
+        }
+    }
+
+    /**
+     * Solves a position and every position after it, keeping the results
+     * @param board position to solve, restored before returning
+     * @return score for the player to move, WIN_SCORE - d for a win in d
+     *         plies, d - WIN_SCORE for a loss and 0 for a draw
+     */
+    int solve(Connect4Board board) {
+        for (int col : Connect4Solver.MOVE_ORDER) {
+            if (board.canPlay(col) && board.isWinningMove(col)) {
+                // found by core.Tablebase without the file
+                return WIN_SCORE - 1;
+            }
+        }
+        if (board.getMoves() == Connect4Board.CELLS) {
+            return 0;
+        }
+        long key = board.key();
+        long mirroredKey = board.mirroredKey();
+        long canonical = Math.min(key, mirroredKey);
+        int slot = slot(canonical);
+        if (keys[slot] == canonical) {
+            return score(results[slot]);
+        }
+
+        int best = Integer.MIN_VALUE;
+        int bestCol = -1;
+        for (int col : Connect4Solver.MOVE_ORDER) {
+            if (!board.canPlay(col)) {
+                continue;
+            }
+            board.play(col);
+            int reply = solve(board);
+            board.undo(col);
+            // one ply further from the end, for the other player
+            int score = reply > 0 ? 1 - reply : reply < 0 ? -reply - 1 : 0;
+            if (score > best) {
+                best = score;
+                bestCol = col;
+            }
+        }
+
+        int outcome = best > 0 ? Tablebase.WIN : best < 0 ? Tablebase.LOSS : Tablebase.DRAW;
+        int distance = best > 0 ? WIN_SCORE - best : best < 0 ? WIN_SCORE + best
+                : Connect4Board.CELLS - board.getMoves();
+        if (mirroredKey < key) {
+            bestCol = Connect4Board.COLUMNS - 1 - bestCol;
+        }
+        put(canonical, (short) Tablebase.pack(outcome, distance, bestCol));
+        return best;
+    }
+
+    private static int score(short result) {
+        int outcome = Tablebase.outcome(result);
+        int distance = Tablebase.distance(result);
+        return outcome == Tablebase.WIN ? WIN_SCORE - distance
+                : outcome == Tablebase.LOSS ? distance - WIN_SCORE : 0;
+    }
+
+    /**
+     * Writes every solved position
+     * @param file where to write the tablebase
+     * @return number of positions written
+     * @throws IOException if the tablebase cannot be written
+     */
+    public int write(Path file) throws IOException {
+        // key in the high bits, so sorting the entries sorts the keys
+        long[] entries = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                entries[count++] = keys[i] << 12 | results[i];
+            }
+        }
+        Arrays.sort(entries);
+
+        int blocks = (size + Tablebase.BLOCK_SIZE - 1) / Tablebase.BLOCK_SIZE;
+        ByteArrayOutputStream index = new ByteArrayOutputStream(blocks * Tablebase.INDEX_BYTES);
+        DataOutputStream indexOut = new DataOutputStream(index);
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(data);
+        long last = 0;
+        for (int i = 0; i < size; i++) {
+            long key = entries[i] >>> 12;
+            if (i % Tablebase.BLOCK_SIZE == 0) {
+                indexOut.writeLong(key);
+                indexOut.writeInt(data.size());
+            } else {
+                writeVarint(dataOut, key - last);
+            }
+            dataOut.writeShort((int) (entries[i] & 0xFFF));
+            last = key;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(Tablebase.MAGIC);
+            out.writeInt(Tablebase.VERSION);
+            out.writeInt(maxEmpty);
+            out.writeInt(size);
+            out.writeInt(blocks);
+            out.writeInt(Tablebase.BLOCK_SIZE);
+            index.writeTo(out);
+            data.writeTo(out);
+        }
+        return size;
+    }
+
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    /**
+     * @return number of positions solved so far
+     */
+    public int size() {
+        return size;
+    }
+
+    // ----- open addressing map from key to result -----
+
+    /**
+     * @return the slot holding the key, or the empty slot it would go in
+     */
+    private int slot(long key) {
+        int mask = keys.length - 1;
+        int slot = (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        while (keys[slot] != 0 && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void put(long key, short result) {
+        if (size * 2 >= keys.length) {
+            long[] oldKeys = keys;
+            short[] oldResults = results;
+            keys = new long[oldKeys.length * 2];
+            results = new short[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    results[slot] = oldResults[i];
+                }
+            }
+        }
+        int slot = slot(key);
+        if (keys[slot] == 0) {
+            size++;
+        }
+        keys[slot] = key;
+        results[slot] = result;
+    }
+}
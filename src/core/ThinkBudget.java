@@ -0,0 +1,91 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.ThinkBudget class decides how long the computer may think about
+ * one move, across every one player session of a server. Moves start with
+ * the full time limit. The time the computer spends thinking is added up
+ * over one second windows, and when it comes to more than its share of the
+ * cores the time of every move is cut by the excess, down to the minimum.
+ * Once thinking drops below half its share the time grows back by a quarter
+ * a window.
+ *
+ * Think time is measured on the clock, so a HARD search spread over
+ * ai.threads counts once, and a search slowed down by a busy machine counts
+ * for more than the CPU it used, which only cuts the budget sooner.
+ *
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ThinkBudget {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long maxNanos;
+    private final long minNanos;
+    // thinking allowed per nanosecond of a window, over all cores
+    private final double share;
+
+    private final AtomicLong thinking = new AtomicLong();
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private volatile long moveNanos;
+
+    /**
+     * Constructor for the budget of a server
+     * @param maxMillis time a move gets when the server is not busy
+     * @param minMillis time a move gets however busy the server is
+     * @param cpuPercent share of all cores the computer may think on
+     * @param cores number of cores of the machine
+     */
+    public ThinkBudget(long maxMillis, long minMillis, int cpuPercent, int cores) {
+        minNanos = TimeUnit.MILLISECONDS.toNanos(minMillis);
+        maxNanos = Math.max(minNanos, TimeUnit.MILLISECONDS.toNanos(maxMillis));
+        share = cpuPercent / 100.0 * cores;
+        moveNanos = maxNanos;
+    }
+
+    /**
+     * Constructor for the budget set in the server settings
+     * @param config server settings
+     */
+    public ThinkBudget(ServerConfig config) {
+        this(config.getAiTimeLimitMillis(), config.getAiMinTimeLimitMillis(),
+                config.getAiCpuPercent(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return time the next move may take, in nanoseconds
+     */
+    public long getMoveNanos() {
+        return moveNanos;
+    }
+
+    /**
+     * Counts the time the computer took for a move, and sets the time of
+     * the next moves once a window is over
+     * @param nanos time the move took
+     */
+    public void spent(long nanos) {
+        thinking.addAndGet(nanos);
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            adjust(thinking.getAndSet(0), now - start);
+        }
+    }
+
+    private void adjust(long used, long window) {
+        double allowed = window * share;
+        long budget = moveNanos;
+        if (used > allowed) {
+            budget = (long) (budget * (allowed / used));
+        } else if (used < allowed / 2) {
+            budget += budget / 4;
+        }
+        moveNanos = Math.max(minNanos, Math.min(maxNanos, budget));
+    }
+}
@@ -0,0 +1,183 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.TranspositionTable class remembers positions the AI search has
+ * already scored, so a position reached again through a different order of
+ * moves is not searched twice.
+ *
+ * The table is one preallocated long[] that never grows. Each bucket holds
+ * two entries of two longs (position key, packed result). The first entry
+ * keeps whichever result came from the deepest search, the second is always
+ * overwritten, so deep results survive while recent ones are still cached.
+ *
+ * One table can be shared by several search threads without locking. The
+ * key is stored XORed with its result, so an entry torn by two threads
+ * writing at once no longer matches its key and reads as a miss. The
+ * counters are not synchronized and are approximate when shared.
+ *
+ */
+
+import java.util.Arrays;
+
+public class TranspositionTable {
+
+    // bound types stored with a score
+    public static final int EXACT = 1;
+    public static final int LOWER_BOUND = 2;
+    public static final int UPPER_BOUND = 3;
+
+    // returned by probe when the position is not in the table
+    public static final long NOT_FOUND = 0;
+
+    // no best move stored with the entry
+    public static final int NO_MOVE = 7;
+
+    private static final int LONGS_PER_BUCKET = 4;
+    private static final int BYTES_PER_BUCKET = LONGS_PER_BUCKET * Long.BYTES;
+
+    private final long[] table;
+    private final int bucketMask;
+
+    private long hits;
+    private long misses;
+    private long collisions;
+
+    /**
+     * Constructor for a table using at most the given memory
+     * @param maxBytes memory budget, rounded down to a power of two buckets
+     */
+    public TranspositionTable(long maxBytes) {
+        long buckets = Long.highestOneBit(Math.max(maxBytes / BYTES_PER_BUCKET, 1));
+        // keep the long[] within the largest array Java allows
+        buckets = Math.min(buckets, 1L << 28);
+        table = new long[(int) buckets * LONGS_PER_BUCKET];
+        bucketMask = (int) buckets - 1;
+    }
+
+    /**
+     * Looks up a position
+     * @param key key of the position, never 0
+     * @return the packed result, or NOT_FOUND
+     */
+    public long probe(long key) {
+        int index = bucket(key);
+        long data = table[index + 1];
+        if ((table[index] ^ data) == key) {
+            hits++;
+            return data;
+        }
+        data = table[index + 3];
+        if ((table[index + 2] ^ data) == key) {
+            hits++;
+            return data;
+        }
+        misses++;
+        if (table[index] != 0 || table[index + 2] != 0) {
+            collisions++;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Stores the result of searching a position
+     * @param key key of the position, never 0
+     * @param score score of the position
+     * @param depth plies the position was searched to
+     * @param flag EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param move best column found, or NO_MOVE
+     */
+    public void store(long key, int score, int depth, int flag, int move) {
+        int index = bucket(key);
+        long data = pack(score, depth, flag, move);
+        long stored = table[index + 1];
+        if ((table[index] ^ stored) == key || stored == 0 || depth >= depth(stored)) {
+            table[index] = key ^ data;
+            table[index + 1] = data;
+        } else {
+            table[index + 2] = key ^ data;
+            table[index + 3] = data;
+        }
+    }
+
+    /**
+     * Empties the table and resets the counters
+     */
+    public void clear() {
+        Arrays.fill(table, 0);
+        hits = 0;
+        misses = 0;
+        collisions = 0;
+    }
+
+    private int bucket(long key) {
+        // multiplicative hash spreads keys that differ in only a few bits
+        return ((int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & bucketMask) * LONGS_PER_BUCKET;
+    }
+
+    private static long pack(int score, int depth, int flag, int move) {
+        return ((long) score << 32) | ((long) (depth & 0xFF) << 8) | (flag << 4) | move;
+    }
+
+    /**
+     * @param data packed result from probe
+     * @return the stored score
+     */
+    public static int score(long data) {
+        return (int) (data >> 32);
+    }
+
+    /**
+     * @param data packed result from probe
+     * @return plies the position was searched to
+     */
+    public static int depth(long data) {
+        return (int) (data >>> 8) & 0xFF;
+    }
+
+    /**
+     * @param data packed result from probe
+     * @return EXACT, LOWER_BOUND or UPPER_BOUND
+     */
+    public static int flag(long data) {
+        return (int) (data >>> 4) & 0xF;
+    }
+
+    /**
+     * @param data packed result from probe
+     * @return the best column found, or NO_MOVE
+     */
+    public static int move(long data) {
+        return (int) data & 0xF;
+    }
+
+    /**
+     * @return number of probes that found their position
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of probes that did not find their position
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of misses where the bucket held other positions
+     */
+    public long getCollisions() {
+        return collisions;
+    }
+
+    /**
+     * @return memory used by the table in bytes
+     */
+    public long getSizeBytes() {
+        return (long) table.length * Long.BYTES;
+    }
+}
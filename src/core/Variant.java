@@ -0,0 +1,118 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.Variant class describes the board of a game: how many rows and
+ * columns it has and how many tokens in a row win. STANDARD is Connect4 on
+ * six rows and seven columns.
+ *
+ * Columns are sent and stored in four bits and a game's moves are counted
+ * in a byte, so boards are limited to MAX_ROWS by MAX_COLUMNS.
+ *
+ */
+
+public final class Variant {
+
+    public static final int MIN_SIZE = 2;
+    public static final int MAX_ROWS = 16;
+    public static final int MAX_COLUMNS = 15;
+
+    public static final Variant STANDARD = new Variant(Connect4Board.ROWS, Connect4Board.COLUMNS, 4);
+
+    private final int rows;
+    private final int columns;
+    private final int connect;
+
+    private Variant(int rows, int columns, int connect) {
+        this.rows = rows;
+        this.columns = columns;
+        this.connect = connect;
+    }
+
+    /**
+     * Gets the variant with the given board
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param connect tokens in a row that win
+     * @return the variant
+     * @throws IllegalArgumentException if the board is too small or too
+     *         large, or no line on it is long enough to win
+     */
+    public static Variant of(int rows, int columns, int connect) {
+        if (rows < MIN_SIZE || rows > MAX_ROWS || columns < MIN_SIZE || columns > MAX_COLUMNS) {
+            throw new IllegalArgumentException("board of " + rows + " rows and " + columns
+                    + " columns is outside " + MAX_ROWS + " by " + MAX_COLUMNS);
+        }
+        if (connect < MIN_SIZE || connect > Math.max(rows, columns)) {
+            throw new IllegalArgumentException("connect " + connect + " cannot be made on "
+                    + rows + " by " + columns);
+        }
+        if (rows == STANDARD.rows && columns == STANDARD.columns && connect == STANDARD.connect) {
+            return STANDARD;
+        }
+        return new Variant(rows, columns, connect);
+    }
+
+    /**
+     * Gets the variant with the given board, or the standard one if the
+     * board is not allowed
+     * @param rows number of rows
+     * @param columns number of columns
+     * @param connect tokens in a row that win
+     * @return the variant
+     */
+    public static Variant orStandard(int rows, int columns, int connect) {
+        try {
+            return of(rows, columns, connect);
+        } catch (IllegalArgumentException ex) {
+            return STANDARD;
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getConnect() {
+        return connect;
+    }
+
+    /**
+     * @return number of cells on the board
+     */
+    public int getCells() {
+        return rows * columns;
+    }
+
+    /**
+     * @return true if this is Connect4 on the standard board
+     */
+    public boolean isStandard() {
+        return this == STANDARD;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Variant)) {
+            return false;
+        }
+        Variant variant = (Variant) other;
+        return rows == variant.rows && columns == variant.columns && connect == variant.connect;
+    }
+
+    @Override
+    public int hashCode() {
+        return (rows * 31 + columns) * 31 + connect;
+    }
+
+    @Override
+    public String toString() {
+        return rows + "x" + columns + " connect " + connect;
+    }
+}
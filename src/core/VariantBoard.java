@@ -0,0 +1,228 @@
+package core;
+
+/**
+ * @version 1.0
+ * @author Kaysi Pilcher
+ *
+ * The core.VariantBoard class holds a game on any board a Variant allows,
+ * with any number of tokens in a row to win. It is laid out like
+ * Connect4Board: bit (col * (rows + 1) + h) is the cell h spaces up from
+ * the bottom of column col, and the extra bit on top of every column is
+ * always empty so a line never wraps into the next column.
+ *
+ * Boards of up to 64 bits keep each player in a single long; larger ones
+ * use an array of longs. Either way status() only walks the four lines
+ * through the last token and stops after connect - 1 tokens each way, so
+ * a move costs the same on a large board as on a small one.
+ *
+ */
+
+public abstract class VariantBoard implements GameBoard {
+
+    private final Variant variant;
+    private final int rows;
+    private final int connect;
+    // bits used by one column including the empty sentinel bit on top
+    private final int columnBits;
+    // shifts that move a cell to its neighbour along each line direction
+    private final int[] directions;
+    private final byte[] heights;
+    private int moves;
+    private int lastMove;
+
+    private VariantBoard(Variant variant) {
+        this.variant = variant;
+        rows = variant.getRows();
+        connect = variant.getConnect();
+        columnBits = rows + 1;
+        directions = new int[] {1, columnBits, columnBits + 1, columnBits - 1};
+        heights = new byte[variant.getColumns()];
+    }
+
+    /**
+     * Gets an empty board for a variant, in a single word when it fits
+     * @param variant rows, columns and tokens in a row that win
+     * @return the board
+     */
+    public static VariantBoard create(Variant variant) {
+        int bits = variant.getColumns() * (variant.getRows() + 1);
+        return bits <= Long.SIZE ? new SingleWord(variant) : new MultiWord(variant, bits);
+    }
+
+    @Override
+    public Variant getVariant() {
+        return variant;
+    }
+
+    @Override
+    public boolean canPlay(int col) {
+        return col >= 0 && col < heights.length && heights[col] < rows;
+    }
+
+    @Override
+    public int play(int col) {
+        int index = col * columnBits + heights[col];
+        set(isPlayer1Turn(), index);
+        heights[col]++;
+        moves++;
+        lastMove = index;
+        return rows - heights[col];
+    }
+
+    @Override
+    public int status() {
+        if (moves > 0 && lastMoveWins()) {
+            // the turn has already switched to the other player
+            return isPlayer1Turn() ? P2_WINNER : P1_WINNER;
+        }
+        return moves == variant.getCells() ? TIE : CONTINUE;
+    }
+
+    @Override
+    public int getMoves() {
+        return moves;
+    }
+
+    @Override
+    public boolean isPlayer1Turn() {
+        return (moves & 1) == 0;
+    }
+
+    @Override
+    public char getToken(int row, int col) {
+        int index = col * columnBits + (rows - 1 - row);
+        if (isSet(true, index)) {
+            return PLAYER_1;
+        }
+        if (isSet(false, index)) {
+            return PLAYER_2;
+        }
+        return BLANK;
+    }
+
+    /**
+     * Checks the four lines through the last token for connect in a row
+     * @return true if the player who moved last has won
+     */
+    private boolean lastMoveWins() {
+        boolean player1 = !isPlayer1Turn();
+        for (int shift : directions) {
+            if (runLength(player1, lastMove, shift, connect - 1) >= connect) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Counts the tokens in an unbroken run through a cell, looking at most
+     * limit cells each way
+     * @param player1 whose tokens to count
+     * @param index bit of the cell, which must hold one of them
+     * @param shift direction of the line
+     * @param limit most cells to look at on each side
+     * @return length of the run
+     */
+    abstract int runLength(boolean player1, int index, int shift, int limit);
+
+    abstract boolean isSet(boolean player1, int index);
+
+    abstract void set(boolean player1, int index);
+
+    /**
+     * Nested class for boards of up to 64 bits, one long per player
+     */
+    static final class SingleWord extends VariantBoard {
+
+        private long p1Bits;
+        private long p2Bits;
+
+        SingleWord(Variant variant) {
+            super(variant);
+        }
+
+        @Override
+        int runLength(boolean player1, int index, int shift, int limit) {
+            long bits = player1 ? p1Bits : p2Bits;
+            long start = 1L << index;
+            int count = 1;
+            // bits shifted off either end are zero, so no bounds checks
+            long bit = start << shift;
+            for (int i = 0; i < limit && (bits & bit) != 0; i++) {
+                count++;
+                bit <<= shift;
+            }
+            bit = start >>> shift;
+            for (int i = 0; i < limit && (bits & bit) != 0; i++) {
+                count++;
+                bit >>>= shift;
+            }
+            return count;
+        }
+
+        @Override
+        boolean isSet(boolean player1, int index) {
+            return ((player1 ? p1Bits : p2Bits) & 1L << index) != 0;
+        }
+
+        @Override
+        void set(boolean player1, int index) {
+            if (player1) {
+                p1Bits |= 1L << index;
+            } else {
+                p2Bits |= 1L << index;
+            }
+        }
+    }
+
+    /**
+     * Nested class for boards of more than 64 bits, an array of longs per
+     * player
+     */
+    static final class MultiWord extends VariantBoard {
+
+        private final long[] p1Words;
+        private final long[] p2Words;
+        private final int bits;
+
+        MultiWord(Variant variant, int bits) {
+            super(variant);
+            this.bits = bits;
+            p1Words = new long[(bits + Long.SIZE - 1) / Long.SIZE];
+            p2Words = new long[p1Words.length];
+        }
+
+        @Override
+        int runLength(boolean player1, int index, int shift, int limit) {
+            long[] words = player1 ? p1Words : p2Words;
+            int count = 1;
+            int cell = index + shift;
+            for (int i = 0; i < limit && cell < bits && isSet(words, cell); i++) {
+                count++;
+                cell += shift;
+            }
+            cell = index - shift;
+            for (int i = 0; i < limit && cell >= 0 && isSet(words, cell); i++) {
+                count++;
+                cell -= shift;
+            }
+            return count;
+        }
+
+        @Override
+        boolean isSet(boolean player1, int index) {
+            return isSet(player1 ? p1Words : p2Words, index);
+        }
+
+        private static boolean isSet(long[] words, int index) {
+            // the shift only uses the low six bits of index
+            return (words[index >>> 6] & 1L << index) != 0;
+        }
+
+        @Override
+        void set(boolean player1, int index) {
+            long[] words = player1 ? p1Words : p2Words;
+            words[index >>> 6] |= 1L << index;
+        }
+    }
+}